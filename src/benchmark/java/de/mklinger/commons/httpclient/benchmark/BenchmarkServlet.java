@@ -0,0 +1,53 @@
+package de.mklinger.commons.httpclient.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves GET requests with a body of the size given in the {@code size}
+ * parameter and consumes POST request bodies.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class BenchmarkServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	private static final Map<Integer, byte[]> PAYLOADS = new ConcurrentHashMap<>();
+
+	@Override
+	protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+		final String sizeParameter = req.getParameter("size");
+		final byte[] payload = payload(sizeParameter == null ? 0 : Integer.parseInt(sizeParameter));
+		resp.setContentType("text/plain;charset=UTF-8");
+		resp.setContentLength(payload.length);
+		resp.getOutputStream().write(payload);
+	}
+
+	@Override
+	protected void doPost(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+		final byte[] buf = new byte[8192];
+		try (InputStream in = req.getInputStream()) {
+			while (in.read(buf) != -1) {
+				// Discard
+			}
+		}
+		resp.setContentType("text/plain;charset=UTF-8");
+		resp.getWriter().print("ok");
+	}
+
+	private static byte[] payload(final int size) {
+		return PAYLOADS.computeIfAbsent(size, unused -> {
+			final byte[] payload = new byte[size];
+			Arrays.fill(payload, (byte) 'x');
+			return payload;
+		});
+	}
+}
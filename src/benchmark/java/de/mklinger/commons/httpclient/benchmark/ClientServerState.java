@@ -0,0 +1,164 @@
+package de.mklinger.commons.httpclient.benchmark;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.Servlet;
+
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Server;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import de.mklinger.commons.httpclient.BodyHandlers;
+import de.mklinger.commons.httpclient.ClientServerTestBase;
+import de.mklinger.commons.httpclient.HttpClient;
+import de.mklinger.commons.httpclient.HttpRequest;
+
+/**
+ * Benchmark state holding a local HTTP/2 server and a client connected to it.
+ * <p>
+ * Throughput benchmarks keep up to {@code concurrency} requests in flight.
+ * Latency benchmarks measure single requests while {@code concurrency - 1}
+ * other requests are kept in flight in the background.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+@State(Scope.Benchmark)
+public abstract class ClientServerState extends ClientServerTestBase {
+	@Param({ "1", "10", "100", "1000", "10000" })
+	public int concurrency;
+
+	@Param({ "1024" })
+	public int bodySize;
+
+	private HttpClient httpClient;
+	private Semaphore inFlight;
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+	private volatile boolean backgroundLoad;
+	private CountDownLatch backgroundLoadStopped;
+
+	@Override
+	protected Class<? extends Servlet> getServletClass() {
+		return BenchmarkServlet.class;
+	}
+
+	@Setup(Level.Trial)
+	public void setUpTrial() throws Throwable {
+		tmp.create();
+		setUpServer();
+		allowConcurrentStreams(getServers().get(0), concurrency);
+
+		httpClient = newHttpClient();
+		setUpRequests();
+
+		// Establish the HTTP/2 session up front. Otherwise all requests of the
+		// first invocation would be queued while connecting.
+		httpClient.sendAsync(HttpRequest.newBuilder(getBaseUri()).build(), BodyHandlers.discard())
+		.get(30, SECONDS);
+
+		inFlight = new Semaphore(concurrency);
+	}
+
+	@Setup(Level.Iteration)
+	public void setUpIteration(final BenchmarkParams params) {
+		if (params.getMode() == Mode.SampleTime && concurrency > 1) {
+			startBackgroundLoad(concurrency - 1);
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDownIteration() throws Throwable {
+		stopBackgroundLoad();
+		inFlight.acquire(concurrency);
+		inFlight.release(concurrency);
+		final Throwable e = failure.get();
+		if (e != null) {
+			throw e;
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDownTrial() throws Exception {
+		try {
+			httpClient.close();
+		} finally {
+			tearDownServer();
+			tmp.delete();
+		}
+	}
+
+	protected HttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	protected abstract void setUpRequests() throws Exception;
+
+	/**
+	 * Send a single request of the benchmarked variant.
+	 */
+	protected abstract CompletableFuture<?> send();
+
+	/**
+	 * Send a request, waiting while {@code concurrency} requests are in flight.
+	 */
+	public void sendPipelined() throws InterruptedException {
+		inFlight.acquire();
+		send().whenComplete((response, e) -> {
+			if (e != null) {
+				failure.compareAndSet(null, e);
+			}
+			inFlight.release();
+		});
+	}
+
+	private void startBackgroundLoad(final int requests) {
+		backgroundLoad = true;
+		backgroundLoadStopped = new CountDownLatch(requests);
+		for (int i = 0; i < requests; i++) {
+			sendBackgroundLoad();
+		}
+	}
+
+	private void sendBackgroundLoad() {
+		send().whenComplete((response, e) -> {
+			if (e != null) {
+				failure.compareAndSet(null, e);
+			}
+			if (backgroundLoad && failure.get() == null) {
+				sendBackgroundLoad();
+			} else {
+				backgroundLoadStopped.countDown();
+			}
+		});
+	}
+
+	private void stopBackgroundLoad() throws InterruptedException {
+		if (backgroundLoadStopped != null) {
+			backgroundLoad = false;
+			backgroundLoadStopped.await();
+			backgroundLoadStopped = null;
+		}
+	}
+
+	private static void allowConcurrentStreams(final Server server, final int streams) {
+		// Only applies to new connections, so no server restart is needed.
+		for (final Connector connector : server.getConnectors()) {
+			final AbstractHTTP2ServerConnectionFactory h2 = connector.getConnectionFactory(AbstractHTTP2ServerConnectionFactory.class);
+			if (h2 != null && h2.getMaxConcurrentStreams() < streams) {
+				h2.setMaxConcurrentStreams(streams);
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package de.mklinger.commons.httpclient.benchmark;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mklinger.commons.httpclient.BodyHandlers;
+import de.mklinger.commons.httpclient.HttpRequest;
+import de.mklinger.commons.httpclient.HttpResponse.BodyHandler;
+
+/**
+ * GET requests with each {@link BodyHandlers} variant.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class GetBenchmark {
+	@State(Scope.Benchmark)
+	public static class GetState extends ClientServerState {
+		@Param({ "byteArray", "string", "file", "discard" })
+		public String bodyHandler;
+
+		private HttpRequest request;
+		private BodyHandler<?> handler;
+		/** Files not used by an in-flight request, only for the file handler */
+		private Queue<Path> files;
+
+		@Override
+		protected void setUpRequests() throws Exception {
+			request = HttpRequest.newBuilder(getBaseUri().resolve("/?size=" + bodySize))
+					.build();
+			if ("file".equals(bodyHandler)) {
+				// Every in-flight request needs its own file
+				files = new ConcurrentLinkedQueue<>();
+			} else {
+				handler = requireSuccess(newBodyHandler());
+			}
+		}
+
+		private BodyHandler<?> newBodyHandler() throws Exception {
+			switch (bodyHandler) {
+			case "byteArray":
+				return BodyHandlers.asByteArray();
+			case "string":
+				return BodyHandlers.asString();
+			case "discard":
+				return BodyHandlers.discard();
+			default:
+				throw new IllegalArgumentException("Unknown body handler: " + bodyHandler);
+			}
+		}
+
+		@Override
+		protected CompletableFuture<?> send() {
+			if (files == null) {
+				return getHttpClient().sendAsync(request, handler);
+			}
+			final Path file = takeFile();
+			return getHttpClient().sendAsync(request, requireSuccess(BodyHandlers.asFile(file)))
+					.whenComplete((response, e) -> files.add(file));
+		}
+
+		/**
+		 * Take a file that is not in use. At most as many files are created as
+		 * requests are in flight at the same time.
+		 */
+		private Path takeFile() {
+			final Path file = files.poll();
+			if (file != null) {
+				return file;
+			}
+			try {
+				return tmp.newFile().toPath();
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(SECONDS)
+	public void throughput(final GetState state) throws InterruptedException {
+		state.sendPipelined();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(MILLISECONDS)
+	public Object latency(final GetState state) throws Exception {
+		return state.send().get();
+	}
+}
@@ -0,0 +1,97 @@
+package de.mklinger.commons.httpclient.benchmark;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.mklinger.commons.httpclient.BodyHandlers;
+import de.mklinger.commons.httpclient.BodyProviders;
+import de.mklinger.commons.httpclient.HttpRequest;
+import de.mklinger.commons.httpclient.HttpRequest.BodyProvider;
+import de.mklinger.commons.httpclient.HttpResponse.BodyHandler;
+
+/**
+ * POST requests with each {@link BodyProviders} variant.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class PostBenchmark {
+	@State(Scope.Benchmark)
+	public static class PostState extends ClientServerState {
+		@Param({ "noBody", "byteArray", "byteBuffer", "file", "inputStream" })
+		public String bodyProvider;
+
+		private byte[] body;
+		private Path file;
+		private BodyHandler<Void> handler;
+
+		@Override
+		protected void setUpRequests() throws Exception {
+			body = new byte[bodySize];
+			Arrays.fill(body, (byte) 'x');
+			file = tmp.newFile().toPath();
+			Files.write(file, body);
+			handler = requireSuccess(BodyHandlers.discard());
+		}
+
+		private BodyProvider newBodyProvider() {
+			switch (bodyProvider) {
+			case "noBody":
+				return BodyProviders.noBody();
+			case "byteArray":
+				return BodyProviders.fromByteArray(body);
+			case "byteBuffer":
+				return BodyProviders.fromByteBuffer(ByteBuffer.wrap(body));
+			case "file":
+				return BodyProviders.fromFile(file);
+			case "inputStream":
+				return BodyProviders.fromInputStream(new ByteArrayInputStream(body));
+			default:
+				throw new IllegalArgumentException("Unknown body provider: " + bodyProvider);
+			}
+		}
+
+		@Override
+		protected CompletableFuture<?> send() {
+			// Not all body providers are reproducible, so build a new request each time
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri())
+					.POST(newBodyProvider())
+					.build();
+			return getHttpClient().sendAsync(request, handler);
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(SECONDS)
+	public void throughput(final PostState state) throws InterruptedException {
+		state.sendPipelined();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(MILLISECONDS)
+	public Object latency(final PostState state) throws Exception {
+		return state.send().get();
+	}
+}
@@ -1,13 +1,25 @@
 package de.mklinger.commons.httpclient;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.reactivestreams.Publisher;
 
 import de.mklinger.commons.httpclient.HttpResponse.BodyHandler;
+import de.mklinger.commons.httpclient.internal.AsyncFileCompleteListener;
 import de.mklinger.commons.httpclient.internal.ByteArrayCompleteListener;
+import de.mklinger.commons.httpclient.internal.CharSequenceCompleteListener;
 import de.mklinger.commons.httpclient.internal.DiscardBodyCompleteListener;
 import de.mklinger.commons.httpclient.internal.FileCompleteListener;
+import de.mklinger.commons.httpclient.internal.InputStreamCompleteListener;
+import de.mklinger.commons.httpclient.internal.PooledByteBuffersCompleteListener;
+import de.mklinger.commons.httpclient.internal.PublisherCompleteListener;
+import de.mklinger.commons.httpclient.internal.RawBodyHandler;
+import de.mklinger.commons.httpclient.internal.SharedByteBufferPool;
 import de.mklinger.commons.httpclient.internal.StringBodyHandler;
 
 /**
@@ -25,14 +37,93 @@ public class BodyHandlers {
 		return asFile(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
 	}
 
+	/**
+	 * Returns a body handler that writes the body to the given file without
+	 * blocking network threads. In addition to standard open options,
+	 * {@link FileSinkOption}s are supported.
+	 */
+	public static BodyHandler<Path> asFileAsync(final Path file, final OpenOption... openOptions) {
+		return (statusCode, responseHeaders) -> new AsyncFileCompleteListener(file, ByteArrayCompleteListener.contentLength(responseHeaders), openOptions);
+	}
+
+	public static BodyHandler<Path> asFileAsync(final Path file) {
+		return asFileAsync(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+	}
+
 	public static BodyHandler<byte[]> asByteArray() {
-		return (statusCode, responseHeaders) -> new ByteArrayCompleteListener();
+		return (statusCode, responseHeaders) -> new ByteArrayCompleteListener(ByteArrayCompleteListener.contentLength(responseHeaders));
+	}
+
+	/**
+	 * Returns a body handler that collects the body into pooled buffers.
+	 * Content is copied once, from the network buffer into a pooled buffer,
+	 * instead of into a growing array. The caller must close the returned
+	 * {@link PooledByteBuffers} to return the buffers to the pool.
+	 */
+	public static BodyHandler<PooledByteBuffers> asByteBuffers() {
+		return (statusCode, responseHeaders) -> new PooledByteBuffersCompleteListener(SharedByteBufferPool.getInstance());
 	}
 
 	public static BodyHandler<String> asString() {
 		return new StringBodyHandler();
 	}
 
+	/**
+	 * Returns a body handler that decodes the body while it is received.
+	 * Compared to {@link #asString()}, this does not hold the body bytes and
+	 * chars in memory at the same time, and spreads decoding over the
+	 * transfer. The chars are not copied into a String; calling
+	 * {@code toString()} on the body creates that copy.
+	 */
+	public static BodyHandler<CharSequence> asCharSequence() {
+		return (statusCode, responseHeaders) -> new CharSequenceCompleteListener(
+				StringBodyHandler.findCharset(responseHeaders),
+				ByteArrayCompleteListener.contentLength(responseHeaders));
+	}
+
+	/**
+	 * Returns a body handler that exposes the body as a Reactive Streams
+	 * {@link Publisher}. The response completes as soon as the headers are
+	 * received. Content is only read from the connection as requested by the
+	 * subscriber. Only a single subscriber is supported.
+	 *
+	 * <p>On Java 9 and later, use
+	 * {@code org.reactivestreams.FlowAdapters.toFlowPublisher(Publisher)} to
+	 * get a {@code java.util.concurrent.Flow.Publisher}.
+	 */
+	public static BodyHandler<Publisher<List<ByteBuffer>>> ofPublisher() {
+		return (statusCode, responseHeaders) -> new PublisherCompleteListener();
+	}
+
+	/**
+	 * Returns a body handler that exposes the body as an {@link InputStream}
+	 * that can be read while the body is received. The response completes as
+	 * soon as the headers are received. At most 16 chunks of content are
+	 * buffered; reading slower than that slows down the sender.
+	 *
+	 * <p>The caller must close the stream. Closing it before the end of the
+	 * body aborts the exchange.
+	 */
+	public static BodyHandler<InputStream> asInputStream() {
+		return asInputStream(16);
+	}
+
+	/**
+	 * Like {@link #asInputStream()}, buffering at most the given number of
+	 * content chunks.
+	 */
+	public static BodyHandler<InputStream> asInputStream(final int maxQueuedChunks) {
+		return (statusCode, responseHeaders) -> new InputStreamCompleteListener(maxQueuedChunks);
+	}
+
+	/**
+	 * Returns a body handler that receives the body as sent by the server,
+	 * without decompression, even if decompression is enabled for the client.
+	 */
+	public static <T> BodyHandler<T> raw(final BodyHandler<T> bodyHandler) {
+		return new RawBodyHandler<>(bodyHandler);
+	}
+
 	public static <U> BodyHandler<U> discard(final U value) {
 		return (statusCode, responseHeaders) -> new DiscardBodyCompleteListener<>(value);
 	}
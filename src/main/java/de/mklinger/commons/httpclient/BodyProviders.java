@@ -4,19 +4,38 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
+
+import org.reactivestreams.Publisher;
 
 import de.mklinger.commons.httpclient.HttpRequest.BodyProvider;
+import de.mklinger.commons.httpclient.internal.AsyncBodyProvider;
+import de.mklinger.commons.httpclient.internal.BlockingIoExecutor;
 import de.mklinger.commons.httpclient.internal.ByteArrayBodyProvider;
 import de.mklinger.commons.httpclient.internal.ByteBufferBodyProvider;
+import de.mklinger.commons.httpclient.internal.ChunkIteratorBodyProvider;
 import de.mklinger.commons.httpclient.internal.FileBodyProvider;
+import de.mklinger.commons.httpclient.internal.GzipAsyncBodyProvider;
+import de.mklinger.commons.httpclient.internal.GzipBodyProvider;
 import de.mklinger.commons.httpclient.internal.InputStreamBodyProvider;
+import de.mklinger.commons.httpclient.internal.MappedFileBodyProvider;
 import de.mklinger.commons.httpclient.internal.NoBodyProvider;
+import de.mklinger.commons.httpclient.internal.PublisherBodyProvider;
+import de.mklinger.commons.httpclient.internal.ReadAheadInputStreamBodyProvider;
 
 /**
  * @author Marc Klinger - mklinger[at]mklinger[dot]de
  */
 public class BodyProviders {
+	private static final int DEFAULT_MAPPED_CHUNK_SIZE = 64 * 1024;
+	private static final int DEFAULT_MAX_PENDING_OFFERS = 5;
+	private static final int DEFAULT_READ_AHEAD_CHUNK_SIZE = 16 * 1024;
+
 	private BodyProviders() {
 	}
 
@@ -56,6 +75,30 @@ public class BodyProviders {
 		}
 	}
 
+	/**
+	 * Returns a body provider that sends the whole file from memory-mapped
+	 * regions instead of reading it into heap buffers.
+	 */
+	public static BodyProvider fromFileMapped(final Path file) {
+		try {
+			return fromFileMapped("application/octet-stream", file, 0, Files.size(file), DEFAULT_MAPPED_CHUNK_SIZE);
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Returns a body provider that sends the given byte range of the file from
+	 * memory-mapped regions, in chunks of the given size.
+	 */
+	public static BodyProvider fromFileMapped(final String contentType, final Path file, final long offset, final long length, final int chunkSize) {
+		try {
+			return new MappedFileBodyProvider(contentType, file, offset, length, chunkSize);
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	public static BodyProvider fromInputStream(final InputStream inputStream) {
 		return new InputStreamBodyProvider(inputStream);
 	}
@@ -63,4 +106,92 @@ public class BodyProviders {
 	public static BodyProvider fromInputStream(String contentType, final InputStream inputStream) {
 		return new InputStreamBodyProvider(contentType, inputStream);
 	}
+
+	/**
+	 * Returns a body provider that reads the given stream on a shared pool of
+	 * I/O threads instead of network threads. Up to 5 chunks are read ahead.
+	 * The stream is closed when the body was sent or the request failed. The
+	 * body can only be sent once.
+	 */
+	public static BodyProvider fromInputStreamAsync(final InputStream inputStream) {
+		return fromInputStreamAsync("application/octet-stream", inputStream, BlockingIoExecutor.getInstance());
+	}
+
+	/**
+	 * Like {@link #fromInputStreamAsync(InputStream)}, reading on the given
+	 * executor.
+	 */
+	public static BodyProvider fromInputStreamAsync(final String contentType, final InputStream inputStream, final Executor executor) {
+		return new ReadAheadInputStreamBodyProvider(contentType, inputStream, executor, DEFAULT_READ_AHEAD_CHUNK_SIZE, DEFAULT_MAX_PENDING_OFFERS);
+	}
+
+	/**
+	 * Returns a body provider that sends chunks produced asynchronously. The
+	 * next chunk future is taken from the iterator only when fewer than 5
+	 * chunks are waiting to be written. A failed chunk future aborts the
+	 * request. The body can only be sent once.
+	 */
+	public static BodyProvider fromChunks(final Iterator<CompletableFuture<ByteBuffer>> chunks) {
+		return fromChunks("application/octet-stream", -1, DEFAULT_MAX_PENDING_OFFERS, chunks);
+	}
+
+	/**
+	 * Like {@link #fromChunks(Iterator)}.
+	 *
+	 * @param contentLength The content length or -1 if unknown
+	 * @param maxPendingOffers The maximum number of chunks waiting to be written
+	 */
+	public static BodyProvider fromChunks(final String contentType, final long contentLength, final int maxPendingOffers, final Iterator<CompletableFuture<ByteBuffer>> chunks) {
+		return new ChunkIteratorBodyProvider(contentType, contentLength, maxPendingOffers, chunks);
+	}
+
+	/**
+	 * Returns a body provider that sends the chunks of the given publisher.
+	 * Demand is limited to 5 chunks waiting to be written. An error of the
+	 * publisher aborts the request, and a failed request cancels the
+	 * subscription. The body can only be sent once.
+	 */
+	public static BodyProvider fromPublisher(final Publisher<ByteBuffer> publisher) {
+		return fromPublisher("application/octet-stream", -1, DEFAULT_MAX_PENDING_OFFERS, publisher);
+	}
+
+	/**
+	 * Like {@link #fromPublisher(Publisher)}.
+	 *
+	 * @param contentLength The content length or -1 if unknown
+	 * @param maxPendingOffers The maximum number of chunks waiting to be written
+	 */
+	public static BodyProvider fromPublisher(final String contentType, final long contentLength, final int maxPendingOffers, final Publisher<ByteBuffer> publisher) {
+		return new PublisherBodyProvider(contentType, contentLength, maxPendingOffers, publisher);
+	}
+
+	/**
+	 * Returns a body provider that sends the content of the given body
+	 * provider gzip compressed, with a {@code Content-Encoding: gzip} header.
+	 * Content is compressed chunk by chunk while it is sent, so the
+	 * compressed body is never held in memory as a whole. The content length
+	 * is unknown.
+	 */
+	public static BodyProvider gzip(final BodyProvider bodyProvider) {
+		return gzip(bodyProvider, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Like {@link #gzip(BodyProvider)}, using the given compression level.
+	 *
+	 * @param level The compression level from 0 to 9, or
+	 *        {@link Deflater#DEFAULT_COMPRESSION}
+	 */
+	public static BodyProvider gzip(final BodyProvider bodyProvider, final int level) {
+		if ((level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level: " + level);
+		}
+		if (bodyProvider instanceof NoBodyProvider) {
+			return bodyProvider;
+		}
+		if (bodyProvider instanceof AsyncBodyProvider) {
+			return new GzipAsyncBodyProvider((AsyncBodyProvider) bodyProvider, level);
+		}
+		return new GzipBodyProvider(bodyProvider, level);
+	}
 }
@@ -0,0 +1,109 @@
+package de.mklinger.commons.httpclient;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.List;
+
+/**
+ * Listener for request and connection lifecycle events of a
+ * {@link HttpClient}. Register it with
+ * {@link HttpClient.Builder#eventListener(EventListener)}.
+ *
+ * <p> All timestamps are taken from {@link System#nanoTime()}, so
+ * differences between them give the duration of each phase. Methods are
+ * called on network threads and must return quickly. Exceptions thrown by
+ * listener methods are logged and otherwise ignored.
+ *
+ * <p> Connection events are not associated with a request, because with
+ * HTTP/2 a single connection serves many requests.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public interface EventListener {
+	/**
+	 * Address resolution for the given host started.
+	 */
+	default void dnsStart(final String host, final long nanoTime) {
+	}
+
+	/**
+	 * Address resolution for the given host finished.
+	 *
+	 * @param addresses the resolved addresses, empty on failure
+	 * @param failure the failure, or {@code null} on success
+	 */
+	default void dnsEnd(final String host, final List<InetSocketAddress> addresses, final Throwable failure, final long nanoTime) {
+	}
+
+	/**
+	 * The TCP connection to the given peer is established and the TLS handshake
+	 * starts.
+	 */
+	default void tlsHandshakeStart(final String peerHost, final int peerPort, final long nanoTime) {
+	}
+
+	/**
+	 * The TLS handshake with the given peer finished.
+	 *
+	 * @param failure the failure, or {@code null} on success
+	 */
+	default void tlsHandshakeEnd(final String peerHost, final int peerPort, final Throwable failure, final long nanoTime) {
+	}
+
+	/**
+	 * A HTTP/2 session to the given address was established.
+	 */
+	default void connectionOpened(final SocketAddress remoteAddress, final long nanoTime) {
+	}
+
+	/**
+	 * A HTTP/2 session to the given address was closed.
+	 */
+	default void connectionClosed(final SocketAddress remoteAddress, final long nanoTime) {
+	}
+
+	/**
+	 * The request was queued, waiting for a connection or stream.
+	 */
+	default void requestQueued(final HttpRequest request, final long nanoTime) {
+	}
+
+	/**
+	 * The request left the queue and is about to be sent on a connection.
+	 */
+	default void requestBegin(final HttpRequest request, final long nanoTime) {
+	}
+
+	/**
+	 * The request headers were sent.
+	 */
+	default void requestHeadersSent(final HttpRequest request, final long nanoTime) {
+	}
+
+	/**
+	 * The request, including its body, was sent completely.
+	 */
+	default void requestSent(final HttpRequest request, final long nanoTime) {
+	}
+
+	/**
+	 * The response headers were received.
+	 */
+	default void responseHeadersReceived(final HttpRequest request, final int statusCode, final long nanoTime) {
+	}
+
+	/**
+	 * The first chunk of the response body was received. Not called for
+	 * responses without a body.
+	 */
+	default void responseFirstByte(final HttpRequest request, final long nanoTime) {
+	}
+
+	/**
+	 * The exchange completed.
+	 *
+	 * @param failure the failure, or {@code null} on success
+	 */
+	default void requestCompleted(final HttpRequest request, final Throwable failure, final long nanoTime) {
+	}
+}
@@ -0,0 +1,25 @@
+package de.mklinger.commons.httpclient;
+
+import java.nio.file.OpenOption;
+
+/**
+ * Additional options for {@link BodyHandlers#asFileAsync(java.nio.file.Path, OpenOption...)}.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public enum FileSinkOption implements OpenOption {
+	/**
+	 * Allocate the file to the response Content-Length by writing zeros
+	 * before the body is written. A full disk fails the response up front and
+	 * the file system can allocate the blocks at once, at the cost of writing
+	 * the file twice. The file is truncated to the actual body length on
+	 * completion.
+	 */
+	PREALLOCATE,
+
+	/**
+	 * Force file content and metadata to the storage device before the
+	 * response completes.
+	 */
+	FSYNC_ON_COMPLETE
+}
@@ -0,0 +1,108 @@
+package de.mklinger.commons.httpclient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Path;
+
+import de.mklinger.commons.httpclient.internal.BlockingIoExecutor;
+import de.mklinger.commons.httpclient.internal.cache.DiskCacheStore;
+import de.mklinger.commons.httpclient.internal.cache.HttpCacheImpl;
+import de.mklinger.commons.httpclient.internal.cache.OffHeapCacheStore;
+
+/**
+ * A private HTTP response cache following RFC 7234. Only responses to GET
+ * requests are stored. Stale responses are revalidated with conditional
+ * requests, and may be served while revalidating or on errors if the
+ * server allows it with {@code stale-while-revalidate} or
+ * {@code stale-if-error} (RFC 5861).
+ *
+ * <p> A cache can be shared by several clients.
+ *
+ * @see HttpClient.Builder#cache(HttpCache)
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public interface HttpCache {
+	/**
+	 * Returns the number of bytes currently stored, including an estimate
+	 * for headers.
+	 *
+	 * @return the stored bytes
+	 */
+	long size();
+
+	/**
+	 * Returns the number of stored responses.
+	 *
+	 * @return the number of entries
+	 */
+	long entryCount();
+
+	/**
+	 * Returns the number of requests that were answered from the cache
+	 * without contacting the server.
+	 *
+	 * @return the number of hits
+	 */
+	long hitCount();
+
+	/**
+	 * Returns the number of cacheable requests that were sent to the server,
+	 * including revalidations.
+	 *
+	 * @return the number of misses
+	 */
+	long missCount();
+
+	/**
+	 * Removes the stored response for the given URI, if any.
+	 *
+	 * @param uri the request URI
+	 */
+	void invalidate(URI uri);
+
+	/**
+	 * Removes all stored responses.
+	 */
+	void clear();
+
+	/**
+	 * Creates a cache that keeps response bodies in memory outside of the Java
+	 * heap. When the given size is exceeded, the least recently used
+	 * responses are evicted. Responses larger than a quarter of the size are
+	 * not stored.
+	 *
+	 * @param maxSize the maximum number of bytes to store
+	 * @return a new cache
+	 */
+	static HttpCache newOffHeapCache(final long maxSize) {
+		return new HttpCacheImpl(new OffHeapCacheStore(maxSize, maxSize / 4));
+	}
+
+	/**
+	 * Creates a cache that stores responses in files in the given directory,
+	 * so that they survive restarts. Entries already present in the directory
+	 * are loaded. Files are written in the background and atomically replaced,
+	 * so an interrupted write does not corrupt the cache. When the given size
+	 * is exceeded, the least recently used responses are evicted. Responses
+	 * larger than a quarter of the size are not stored.
+	 *
+	 * <p> Stored bodies are memory-mapped when served. Responses for
+	 * {@link BodyHandlers#asFile(java.nio.file.Path)} are copied from the
+	 * cache file without passing through the Java heap.
+	 *
+	 * <p> A directory must only be used by one cache at a time.
+	 *
+	 * @param directory the cache directory, created if it does not exist
+	 * @param maxSize the maximum number of bytes to store
+	 * @return a new cache
+	 * @throws UncheckedIOException if the directory can not be read or created
+	 */
+	static HttpCache newDiskCache(final Path directory, final long maxSize) {
+		try {
+			return new HttpCacheImpl(new DiskCacheStore(directory, maxSize, maxSize / 4, BlockingIoExecutor.getInstance()));
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
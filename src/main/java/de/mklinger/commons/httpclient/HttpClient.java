@@ -1,10 +1,14 @@
 package de.mklinger.commons.httpclient;
 
+import java.io.IOException;
+import java.net.URI;
 import java.security.KeyStore;
 import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import de.mklinger.commons.httpclient.internal.HttpClientBuilderImpl;
+import de.mklinger.commons.httpclient.internal.InlineExecutor;
 
 /**
  * @author Marc Klinger - mklinger[at]mklinger[dot]de
@@ -12,6 +16,47 @@ import de.mklinger.commons.httpclient.internal.HttpClientBuilderImpl;
 public interface HttpClient extends AutoCloseable {
 	<T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler);
 
+	/**
+	 * Sends the given request, blocking if necessary to get the response.
+	 *
+	 * <p> The calling thread only parks while waiting, so this is cheap to call
+	 * from virtual threads. If the calling thread is interrupted, the request is
+	 * aborted.
+	 *
+	 * @param request the request
+	 * @param responseBodyHandler the response body handler
+	 * @return the response
+	 * @throws IOException if an I/O error occurs when sending or receiving, or if
+	 *         the request timed out
+	 * @throws InterruptedException if the operation is interrupted
+	 */
+	<T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> responseBodyHandler) throws IOException, InterruptedException;
+
+	/**
+	 * Opens connections to the given origins ahead of the first requests, so
+	 * that DNS lookup, TCP connect, TLS handshake and HTTP/2 preface are not
+	 * on the request path. The number of connections per origin is set with
+	 * {@link Builder#warmUpConnections(int)}. Connections that are already
+	 * open count towards this number. The connections stay open and are
+	 * used for subsequent requests to the origins.
+	 *
+	 * <p> The protocol is selected as for requests, so origins that do not
+	 * support HTTP/2 get HTTP/1.1 connections if both versions are enabled.
+	 *
+	 * @param origins the origins, as URIs with scheme, host and optional
+	 *        port. Path and query are ignored.
+	 * @return a future that completes when the connections are ready, or
+	 *         completes exceptionally if a connection could not be opened
+	 */
+	CompletableFuture<Void> warmUp(URI... origins);
+
+	/**
+	 * Returns a snapshot of the current metrics of this client.
+	 *
+	 * @return the metrics
+	 */
+	HttpClientMetrics metrics();
+
 	@Override
 	void close();
 
@@ -24,6 +69,19 @@ public interface HttpClient extends AutoCloseable {
 		return new HttpClientBuilderImpl();
 	}
 
+	/**
+	 * Returns an executor that completes response futures directly on the
+	 * thread that received the response, usually a network thread. Dependent
+	 * stages then also run on that thread, so they must not block.
+	 *
+	 * @return the inline executor
+	 * @see Builder#completionExecutor(Executor)
+	 * @see HttpRequest.Builder#completionExecutor(Executor)
+	 */
+	static Executor inlineExecutor() {
+		return InlineExecutor.getInstance();
+	}
+
 	/**
 	 * A builder of immutable {@link HttpClient}s.
 	 *
@@ -69,6 +127,212 @@ public interface HttpClient extends AutoCloseable {
 		 */
 		Builder name(String name);
 
+		/**
+		 * Sets the executor used to complete response futures. Use
+		 * {@link HttpClient#inlineExecutor()} to complete directly on the
+		 * network thread.
+		 *
+		 * <p> If this method is not invoked prior to {@linkplain #build()
+		 * building}, then {@link java.util.concurrent.ForkJoinPool#commonPool()}
+		 * is used.
+		 *
+		 * @param executor the completion executor
+		 * @return this builder
+		 */
+		Builder completionExecutor(Executor executor);
+
+		/**
+		 * Specifies whether the client should use virtual threads for network
+		 * processing and, unless a {@linkplain #completionExecutor(Executor)
+		 * completion executor} is set, for completing response futures.
+		 *
+		 * <p> Virtual threads require Java 21 or later. On older Java versions
+		 * this setting is ignored and platform threads are used.
+		 *
+		 * @return this builder
+		 */
+		Builder virtualThreads(boolean virtualThreads);
+
+		/**
+		 * Sets a listener for request and connection lifecycle events. Without a
+		 * listener, no events are created at all.
+		 *
+		 * @param eventListener the event listener
+		 * @return this builder
+		 */
+		Builder eventListener(EventListener eventListener);
+
+		/**
+		 * Specifies whether the client should request compressed responses and
+		 * decompress gzip and deflate encoded bodies while they are received.
+		 * Body handlers then see the decoded content and headers without
+		 * {@code Content-Encoding} and {@code Content-Length}. Use
+		 * {@link BodyHandlers#raw(HttpResponse.BodyHandler)} to receive the
+		 * encoded content for single requests.
+		 *
+		 * <p> An {@code Accept-Encoding} header is only added to requests that
+		 * do not already have one. If disabled, no {@code Accept-Encoding}
+		 * header is added and bodies are passed to body handlers as sent by
+		 * the server. The default is {@code true}.
+		 *
+		 * @param decompression whether to decompress response bodies
+		 * @return this builder
+		 */
+		Builder decompression(boolean decompression);
+
+		/**
+		 * Sets a cache for responses to GET requests. Fresh stored responses
+		 * are fed into the body handler of a request without contacting the
+		 * server. Without a cache, all requests are sent to the server.
+		 *
+		 * @param cache the cache, created with one of the factory methods of
+		 *        {@link HttpCache}
+		 * @return this builder
+		 */
+		Builder cache(HttpCache cache);
+
+		/**
+		 * Enables sharing of one exchange with the server between concurrent
+		 * identical GET and HEAD requests. Requests are identical if they have
+		 * the same method, URI and values for the given headers; other request
+		 * headers are taken from the request that is sent. The body handler
+		 * of the request that is sent receives the response directly.
+		 * Requests joining it before the response headers arrive get a
+		 * recorded copy of the body. The credential headers
+		 * {@code Authorization}, {@code Cookie} and
+		 * {@code Proxy-Authorization} always make requests differ.
+		 *
+		 * <p> Requests with a body, conditional and range requests and requests
+		 * with a {@linkplain BodyHandlers#raw(HttpResponse.BodyHandler) raw}
+		 * body handler are always sent on their own. The timeout of the
+		 * request that is sent applies to the shared exchange. The default is
+		 * to send every request.
+		 *
+		 * @param keyHeaderNames the names of request headers that make
+		 *        requests differ, e.g. {@code Accept}
+		 * @return this builder
+		 */
+		Builder coalesceRequests(String... keyHeaderNames);
+
+		/**
+		 * Sets the HTTP versions the client may use. The default is HTTP/2 only.
+		 *
+		 * <p> If both versions are given, the protocol is selected per origin.
+		 * Secure origins are tried with HTTP/2, offered with ALPN during the TLS
+		 * handshake. Origins that do not select HTTP/2 are remembered, and the
+		 * failed request and all further requests to them are sent over
+		 * HTTP/1.1 with persistent connections. Clear text origins use
+		 * HTTP/1.1, unless configured with {@link #http2PriorKnowledge(URI...)}.
+		 * Both protocols share the threads and buffers of the client.
+		 *
+		 * @param versions the allowed versions
+		 * @return this builder
+		 * @throws IllegalArgumentException if no version is given
+		 */
+		Builder httpVersions(HttpVersion... versions);
+
+		/**
+		 * Sets clear text origins that are known to support HTTP/2. Requests
+		 * to {@code http} URIs of these origins are sent with HTTP/2 directly
+		 * over TCP, without TLS and without an upgrade request (h2c with prior
+		 * knowledge). Requests to other origins are not affected, so
+		 * {@code https} URIs keep using TLS.
+		 *
+		 * <p> This is only needed if both HTTP versions are enabled with
+		 * {@link #httpVersions(HttpVersion...)}, as clear text origins use
+		 * HTTP/1.1 then. If only HTTP/2 is enabled, which is the default, all
+		 * clear text origins use h2c with prior knowledge.
+		 *
+		 * @param origins the origins, as {@code http} URIs with host and
+		 *        optional port. Path and query are ignored.
+		 * @return this builder
+		 * @throws IllegalArgumentException if an URI is not a {@code http} URI
+		 *         with a host
+		 */
+		Builder http2PriorKnowledge(URI... origins);
+
+		/**
+		 * Sets the maximum number of connections per destination. A
+		 * destination is a combination of scheme, host and port. For HTTP/2,
+		 * this is the maximum number of sessions, each of which multiplexes
+		 * many requests. The default is 64.
+		 *
+		 * @param maxConnections the maximum number of connections
+		 * @return this builder
+		 * @throws IllegalArgumentException if the value is less than one
+		 */
+		Builder maxConnectionsPerDestination(int maxConnections);
+
+		/**
+		 * Sets the load at which an additional HTTP/2 session to a destination
+		 * is opened, as a fraction of the concurrent streams the server allows
+		 * per session. New requests are always sent on the session with the
+		 * fewest active streams.
+		 *
+		 * <p> Lower values spread requests over more TCP connections early,
+		 * which helps to saturate servers if a single connection limits the
+		 * throughput. The number of sessions is limited by
+		 * {@link #maxConnectionsPerDestination(int)}. The default is
+		 * {@code 1.0}, opening another session only when all streams of the
+		 * existing sessions are in use.
+		 *
+		 * @param loadFactor the load factor, greater than {@code 0} and at most
+		 *        {@code 1}
+		 * @return this builder
+		 * @throws IllegalArgumentException if the value is out of range
+		 */
+		Builder http2SessionLoadFactor(double loadFactor);
+
+		/**
+		 * Sets the number of connections per origin opened by
+		 * {@link HttpClient#warmUp(URI...)}. The default is 1, which is enough
+		 * for HTTP/2 unless requests are spread over multiple sessions with
+		 * {@link #http2SessionLoadFactor(double)}.
+		 *
+		 * @param connections the number of connections per origin, at most
+		 *        {@link #maxConnectionsPerDestination(int)}
+		 * @return this builder
+		 * @throws IllegalArgumentException if the value is less than one
+		 */
+		Builder warmUpConnections(int connections);
+
+		/**
+		 * Sets the maximum number of TLS sessions cached for resumption. A
+		 * resumed handshake skips the key exchange and server authentication,
+		 * which saves CPU time when connections are reopened frequently. Zero
+		 * means no limit. The default is the default of the Conscrypt client
+		 * session cache.
+		 *
+		 * @param size the maximum number of cached sessions
+		 * @return this builder
+		 * @throws IllegalArgumentException if the size is negative
+		 * @see HttpClientMetrics#tlsSessionsResumed()
+		 */
+		Builder tlsSessionCacheSize(int size);
+
+		/**
+		 * Sets how long cached TLS sessions can be resumed. Servers may
+		 * accept resumption for a shorter time. The default is the default of
+		 * the Conscrypt client session cache.
+		 *
+		 * @param timeout the session timeout, at least one second
+		 * @return this builder
+		 * @throws IllegalArgumentException if the timeout is less than one
+		 *         second
+		 */
+		Builder tlsSessionTimeout(Duration timeout);
+
+		/**
+		 * Sets whether TLS 1.2 sessions are resumed with session tickets
+		 * (RFC 5077), so that servers do not need to keep session state.
+		 * TLS 1.3 always resumes sessions with tickets. The default is
+		 * {@code true}.
+		 *
+		 * @param sessionTickets whether to use session tickets
+		 * @return this builder
+		 */
+		Builder tlsSessionTickets(boolean sessionTickets);
+
 		/**
 		 * Returns a new {@link HttpClient} built from the current state of this
 		 * builder.
@@ -0,0 +1,157 @@
+package de.mklinger.commons.httpclient;
+
+import java.time.Duration;
+
+/**
+ * A point in time snapshot of the metrics of a {@link HttpClient}.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public interface HttpClientMetrics {
+	/**
+	 * Returns the number of currently open HTTP/2 sessions.
+	 *
+	 * @return the number of open sessions
+	 */
+	long openSessions();
+
+	/**
+	 * Returns the number of currently active streams over all open HTTP/2
+	 * sessions.
+	 *
+	 * @return the number of active streams
+	 */
+	long activeStreams();
+
+	/**
+	 * Returns the number of currently open HTTP/1.1 connections, idle or in
+	 * use.
+	 *
+	 * @return the number of open HTTP/1.1 connections
+	 */
+	long openHttp11Connections();
+
+	/**
+	 * Returns the number of requests currently queued, waiting for a connection
+	 * or stream to become available.
+	 *
+	 * @return the number of queued requests
+	 */
+	long queuedRequests();
+
+	/**
+	 * Returns the number of requests started since the client was built.
+	 *
+	 * @return the number of started requests
+	 */
+	long requestsStarted();
+
+	/**
+	 * Returns the number of requests that completed with a response, regardless
+	 * of the response status code.
+	 *
+	 * @return the number of succeeded requests
+	 */
+	long requestsSucceeded();
+
+	/**
+	 * Returns the number of requests that completed exceptionally, including
+	 * timed out requests.
+	 *
+	 * @return the number of failed requests
+	 */
+	long requestsFailed();
+
+	/**
+	 * Returns the number of requests that failed because of a timeout.
+	 *
+	 * @return the number of timed out requests
+	 */
+	long requestsTimedOut();
+
+	/**
+	 * Returns the number of responses received over the given protocol.
+	 *
+	 * @param version the protocol version
+	 * @return the number of responses
+	 */
+	long responsesReceived(HttpVersion version);
+
+	/**
+	 * Returns the number of TLS handshakes that resumed a cached session.
+	 *
+	 * @return the number of resumed handshakes
+	 * @see HttpClient.Builder#tlsSessionCacheSize(int)
+	 */
+	long tlsSessionsResumed();
+
+	/**
+	 * Returns the number of successful TLS handshakes that did not resume a
+	 * session, so that a full key exchange was done.
+	 *
+	 * @return the number of full handshakes
+	 */
+	long tlsFullHandshakes();
+
+	/**
+	 * Returns the number of request body bytes sent.
+	 *
+	 * @return the number of bytes sent
+	 */
+	long bytesSent();
+
+	/**
+	 * Returns the number of response body bytes received.
+	 *
+	 * @return the number of bytes received
+	 */
+	long bytesReceived();
+
+	/**
+	 * Returns the distribution of the time from sending a request until its
+	 * response headers were received.
+	 *
+	 * @return the response headers latency histogram
+	 */
+	Histogram responseHeadersLatency();
+
+	/**
+	 * Returns the distribution of the time from sending a request until it
+	 * completed, successfully or not.
+	 *
+	 * @return the request latency histogram
+	 */
+	Histogram requestLatency();
+
+	/**
+	 * A latency distribution. Values are recorded with microsecond resolution
+	 * into logarithmic buckets, so percentiles have a relative error of at most
+	 * 12.5%.
+	 */
+	public interface Histogram {
+		/**
+		 * @return the number of recorded values
+		 */
+		long count();
+
+		/**
+		 * @return the mean of the recorded values, or zero if there are none
+		 */
+		Duration mean();
+
+		/**
+		 * @return the maximum recorded value, or zero if there are none
+		 */
+		Duration max();
+
+		/**
+		 * Returns the value below which the given percentage of recorded values
+		 * fall.
+		 *
+		 * @param percentile the percentile, between 0 and 100
+		 * @return the percentile value, or zero if there are no values
+		 * @throws IllegalArgumentException if the percentile is out of range
+		 */
+		Duration percentile(double percentile);
+	}
+}
@@ -3,6 +3,7 @@ package de.mklinger.commons.httpclient;
 import java.net.URI;
 import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 
 /**
  * @author Marc Klinger - mklinger[at]mklinger[dot]de
@@ -49,22 +50,18 @@ public interface HttpRequest {
 	 */
 	HttpHeaders headers();
 
+	/**
+	 * Returns an {@code Optional} containing the executor used to complete the
+	 * response future of this request. If not set in the request's builder, then
+	 * the {@code Optional} is empty and the client's completion executor is used.
+	 *
+	 * @return an {@code Optional} containing this request's completion executor
+	 */
+	Optional<Executor> completionExecutor();
+
 	public interface BodyProvider {
 	}
 
-	//	public interface BodyProvider extends Iterable<CompletableFuture<ByteBuffer>> {
-	//		long contentLength();
-	//
-	//		/**
-	//		 * Get an optional Content-Type HTTP header value for the body. This is taken
-	//		 * into account, if no other (user set) Content-Type header is available when
-	//		 * sending the request.
-	//		 */
-	//		default Optional<String> contentType() {
-	//			return Optional.empty();
-	//		}
-	//	}
-
 	public interface Builder {
 		/**
 		 * Sets this {@code HttpRequest}'s request {@code URI}.
@@ -129,6 +126,17 @@ public interface HttpRequest {
 		 */
 		Builder setHeader(String name, String value);
 
+		/**
+		 * Sets the executor used to complete the response future of this request,
+		 * overriding the client's completion executor. Use
+		 * {@link HttpClient#inlineExecutor()} to complete directly on the network
+		 * thread.
+		 *
+		 * @param executor the completion executor
+		 * @return this request builder
+		 */
+		Builder completionExecutor(Executor executor);
+
 		/**
 		 * Sets the request method of this builder to GET. This is the default.
 		 *
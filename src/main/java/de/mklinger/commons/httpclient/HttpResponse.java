@@ -2,6 +2,8 @@ package de.mklinger.commons.httpclient;
 
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * @author Marc Klinger - mklinger[at]mklinger[dot]de
@@ -71,4 +73,35 @@ public interface HttpResponse<T> {
 		void onComplete() throws Exception;
 		T getBody() throws Exception;
 	}
+
+	/**
+	 * Body complete listener that processes content asynchronously. The next
+	 * chunk of content is only delivered after the stage returned for the
+	 * previous chunk has completed. Until then, no more content is read from
+	 * the connection and HTTP/2 flow control slows down the sender.
+	 *
+	 * <p> The given content buffer is only valid until the returned stage
+	 * completes. Completing the stage exceptionally aborts the response.
+	 */
+	public interface AsyncBodyCompleteListener<T> extends BodyCompleteListener<T> {
+		CompletionStage<?> onNextAsync(final ByteBuffer content) throws Exception;
+
+		/**
+		 * Blocks until the content is processed.
+		 */
+		@Override
+		default void onNext(final ByteBuffer content) throws Exception {
+			onNextAsync(content).toCompletableFuture().get();
+		}
+
+		/**
+		 * Called instead of {@link #onComplete()} at the end of the body. The
+		 * response is completed when the returned stage completes. The default
+		 * implementation calls {@link #onComplete()}.
+		 */
+		default CompletionStage<?> onCompleteAsync() throws Exception {
+			onComplete();
+			return CompletableFuture.completedFuture(null);
+		}
+	}
 }
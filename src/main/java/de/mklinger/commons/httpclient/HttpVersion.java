@@ -0,0 +1,14 @@
+package de.mklinger.commons.httpclient;
+
+/**
+ * The HTTP protocol versions supported by {@link HttpClient}.
+ *
+ * @see HttpClient.Builder#httpVersions(HttpVersion...)
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public enum HttpVersion {
+	/** HTTP/1.1 with persistent connections */
+	HTTP_1_1,
+	/** HTTP/2, negotiated with ALPN over TLS or with prior knowledge in clear text */
+	HTTP_2
+}
@@ -0,0 +1,34 @@
+package de.mklinger.commons.httpclient;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Response body held in buffers taken from a shared buffer pool. The buffers
+ * must be returned to the pool by calling {@link #close()} once they are no
+ * longer needed. Buffers must not be used after closing.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public interface PooledByteBuffers extends AutoCloseable {
+	/**
+	 * Returns the body buffers in order, each ready to be read. The returned
+	 * buffers are read-only views, so reading them does not affect later
+	 * calls to this method.
+	 *
+	 * @throws IllegalStateException if already closed
+	 */
+	List<ByteBuffer> buffers();
+
+	/**
+	 * Returns the total number of body bytes.
+	 */
+	long size();
+
+	/**
+	 * Returns all buffers to the pool. Calling this method more than once
+	 * has no effect.
+	 */
+	@Override
+	void close();
+}
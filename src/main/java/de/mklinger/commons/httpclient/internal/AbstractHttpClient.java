@@ -0,0 +1,45 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import de.mklinger.commons.httpclient.HttpClient;
+import de.mklinger.commons.httpclient.HttpRequest;
+import de.mklinger.commons.httpclient.HttpResponse;
+import de.mklinger.commons.httpclient.HttpResponse.BodyHandler;
+
+/**
+ * Base class for clients that implement the blocking {@link #send} on top
+ * of {@link #sendAsync}.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public abstract class AbstractHttpClient implements HttpClient {
+	/**
+	 * Waits for the result of {@link #sendAsync}. The exchange is cancelled
+	 * if the calling thread is interrupted.
+	 */
+	@Override
+	public <T> HttpResponse<T> send(final HttpRequest request, final BodyHandler<T> responseBodyHandler) throws IOException, InterruptedException {
+		final CompletableFuture<HttpResponse<T>> response = sendAsync(request, responseBodyHandler);
+		try {
+			return response.get();
+		} catch (final InterruptedException e) {
+			response.cancel(true);
+			throw e;
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause.getMessage(), cause);
+		}
+	}
+}
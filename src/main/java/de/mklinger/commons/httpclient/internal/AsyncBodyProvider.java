@@ -0,0 +1,60 @@
+package de.mklinger.commons.httpclient.internal;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+
+import de.mklinger.commons.httpclient.HttpRequest;
+
+/**
+ * Base class for body providers that produce content asynchronously. Content
+ * is offered to a {@link DeferredContentProvider}, with at most a fixed
+ * number of offers not yet written to the connection. Errors of the source
+ * abort the request; failures of the request stop the source.
+ *
+ * <p>Instances can only be sent once.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public abstract class AsyncBodyProvider implements HttpRequest.BodyProvider {
+	private final String contentType;
+	private final long contentLength;
+	private final int maxPendingOffers;
+
+	/**
+	 * @param contentLength The content length or -1 if unknown
+	 */
+	protected AsyncBodyProvider(final String contentType, final long contentLength, final int maxPendingOffers) {
+		if (maxPendingOffers < 1) {
+			throw new IllegalArgumentException("Invalid max pending offers: " + maxPendingOffers);
+		}
+		this.contentType = contentType;
+		this.contentLength = contentLength < 0 ? -1 : contentLength;
+		this.maxPendingOffers = maxPendingOffers;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	public int getMaxPendingOffers() {
+		return maxPendingOffers;
+	}
+
+	/**
+	 * Start offering content to the given target. Must close the target at the
+	 * end of the content and abort the request on errors.
+	 */
+	public abstract void start(DeferredContentProvider target, Request jettyRequest);
+
+	/**
+	 * Release the source of a request that failed before it was started.
+	 * Does nothing if already started, as the started provider stops the
+	 * source on failures. The default implementation does nothing.
+	 */
+	public void discard() {
+	}
+}
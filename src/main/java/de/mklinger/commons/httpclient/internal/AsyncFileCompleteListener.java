@@ -0,0 +1,190 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mklinger.commons.httpclient.FileSinkOption;
+import de.mklinger.commons.httpclient.HttpResponse;
+
+/**
+ * Writes the body to a file using an {@link AsynchronousFileChannel}, so
+ * that network threads never block on disk I/O. Content is written directly
+ * from the network buffer, which is only released after the write finished.
+ * Until then, no more content is read for this response. The file is opened
+ * on the {@link BlockingIoExecutor}.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class AsyncFileCompleteListener implements HttpResponse.AsyncBodyCompleteListener<Path> {
+	private static final Logger LOG = LoggerFactory.getLogger(AsyncFileCompleteListener.class);
+	private static final int PREALLOCATE_BUFFER_SIZE = 64 * 1024;
+
+	private final Path targetFile;
+	private final long expectedLength;
+	private final Set<OpenOption> openOptions;
+	private final boolean preallocate;
+	private final boolean fsyncOnComplete;
+	private volatile AsynchronousFileChannel channel;
+	private volatile long position;
+	private volatile boolean closed;
+
+	/**
+	 * @param expectedLength The expected body length or -1 if unknown
+	 */
+	public AsyncFileCompleteListener(final Path targetFile, final long expectedLength, final OpenOption... openOptions) {
+		this.targetFile = targetFile;
+		this.expectedLength = expectedLength;
+		this.openOptions = new HashSet<>();
+		boolean preallocate = false;
+		boolean fsyncOnComplete = false;
+		for (final OpenOption openOption : openOptions) {
+			if (openOption == FileSinkOption.PREALLOCATE) {
+				preallocate = true;
+			} else if (openOption == FileSinkOption.FSYNC_ON_COMPLETE) {
+				fsyncOnComplete = true;
+			} else {
+				this.openOptions.add(openOption);
+			}
+		}
+		this.preallocate = preallocate && expectedLength > 0;
+		this.fsyncOnComplete = fsyncOnComplete;
+	}
+
+	@Override
+	public CompletionStage<?> onNextAsync(final ByteBuffer content) throws Exception {
+		// We expect this method not to be called concurrently. Thus, no locking needed here.
+		final long writePosition = position;
+		position += content.remaining();
+
+		if (channel == null) {
+			// Opening and preallocating block, so they must not run on the network thread
+			return CompletableFuture.runAsync(this::open, BlockingIoExecutor.getInstance())
+					.thenCompose(unused -> write(content, writePosition));
+		}
+
+		LOG.debug("Writing {} bytes", content.remaining());
+		return write(content, writePosition);
+	}
+
+	private void open() {
+		try {
+			final AsynchronousFileChannel c = AsynchronousFileChannel.open(targetFile, openOptions, BlockingIoExecutor.getInstance());
+			channel = c;
+			if (closed) {
+				close();
+				throw new IllegalStateException("Closed while opening " + targetFile);
+			}
+			if (preallocate) {
+				preallocate(c);
+			}
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (final ExecutionException e) {
+			throw new UncheckedIOException(new IOException("Error preallocating " + targetFile, e.getCause()));
+		}
+	}
+
+	/**
+	 * Write zeros up to the expected length. Java offers no fallocate(), and
+	 * only writing really allocates the blocks instead of leaving a sparse
+	 * file.
+	 */
+	private void preallocate(final AsynchronousFileChannel c) throws InterruptedException, ExecutionException {
+		LOG.debug("Preallocating {} bytes", expectedLength);
+		final ByteBuffer zeros = ByteBuffer.allocateDirect((int) Math.min(PREALLOCATE_BUFFER_SIZE, expectedLength));
+		long fillPosition = 0;
+		while (fillPosition < expectedLength) {
+			zeros.clear();
+			zeros.limit((int) Math.min(zeros.capacity(), expectedLength - fillPosition));
+			while (zeros.hasRemaining()) {
+				fillPosition += c.write(zeros, fillPosition).get();
+			}
+		}
+	}
+
+	private CompletableFuture<Void> write(final ByteBuffer content, final long writePosition) {
+		final CompletableFuture<Void> written = new CompletableFuture<>();
+		final int start = content.position();
+		channel.write(content, writePosition, written, new CompletionHandler<Integer, CompletableFuture<Void>>() {
+			@Override
+			public void completed(final Integer result, final CompletableFuture<Void> attachment) {
+				if (content.hasRemaining()) {
+					channel.write(content, writePosition + content.position() - start, attachment, this);
+				} else {
+					attachment.complete(null);
+				}
+			}
+
+			@Override
+			public void failed(final Throwable exc, final CompletableFuture<Void> attachment) {
+				attachment.completeExceptionally(exc);
+			}
+		});
+		return written;
+	}
+
+	@Override
+	public void onComplete() throws Exception {
+		final AsynchronousFileChannel c = channel;
+		if (c != null) {
+			if (preallocate && c.size() > position) {
+				c.truncate(position);
+			}
+			if (fsyncOnComplete) {
+				c.force(true);
+			}
+		}
+		close();
+	}
+
+	@Override
+	public CompletionStage<?> onCompleteAsync() throws Exception {
+		if (channel == null || (!preallocate && !fsyncOnComplete)) {
+			onComplete();
+			return CompletableFuture.completedFuture(null);
+		}
+		// Truncate and fsync are blocking
+		return CompletableFuture.runAsync(() -> {
+			try {
+				onComplete();
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			} catch (final RuntimeException e) {
+				throw e;
+			} catch (final Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}, BlockingIoExecutor.getInstance());
+	}
+
+	@Override
+	public Path getBody() throws Exception {
+		return targetFile;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		final AsynchronousFileChannel c = channel;
+		channel = null;
+		if (c != null) {
+			c.close();
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared pool of daemon threads for blocking file and stream I/O, which must
+ * never run on network threads.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public final class BlockingIoExecutor {
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+	private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(r -> {
+		final Thread thread = new Thread(r, "httpclient-io-" + THREAD_COUNT.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private BlockingIoExecutor() {
+	}
+
+	public static ExecutorService getInstance() {
+		return INSTANCE;
+	}
+}
@@ -1,24 +1,79 @@
 package de.mklinger.commons.httpclient.internal;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.OptionalLong;
 
+import de.mklinger.commons.httpclient.HttpHeaders;
 import de.mklinger.commons.httpclient.HttpResponse;
 
 /**
+ * Collects the body into a single array. If the content length is known, the
+ * array is allocated once with the exact size and returned without copying.
+ * Otherwise, the array grows by doubling.
+ *
+ * <p>Jetty calls content listeners of an exchange one at a time, so no
+ * locking is needed.
+ *
  * @author Marc Klinger - mklinger[at]mklinger[dot]de
  */
 public class ByteArrayCompleteListener implements HttpResponse.BodyCompleteListener<byte[]> {
-	private final List<byte[]> byteArrays = new ArrayList<>();
+	private static final byte[] EMPTY = new byte[0];
+	private static final int DEFAULT_INITIAL_CAPACITY = 8 * 1024;
+	// Do not trust a server with a huge up front allocation
+	private static final int MAX_INITIAL_CAPACITY = 64 * 1024 * 1024;
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+	private final int initialCapacity;
+	private byte[] buffer;
+	private int count;
+
+	public ByteArrayCompleteListener() {
+		this(-1);
+	}
+
+	/**
+	 * @param expectedLength The expected body length or -1 if unknown
+	 */
+	public ByteArrayCompleteListener(final long expectedLength) {
+		if (expectedLength < 0) {
+			this.initialCapacity = DEFAULT_INITIAL_CAPACITY;
+		} else {
+			this.initialCapacity = (int) Math.min(expectedLength, MAX_INITIAL_CAPACITY);
+		}
+	}
+
+	/**
+	 * Get the content length from the given response headers.
+	 * @return The content length or -1 if unknown or invalid
+	 */
+	public static long contentLength(final HttpHeaders responseHeaders) {
+		final OptionalLong contentLength;
+		try {
+			contentLength = responseHeaders.firstValueAsLong("content-length");
+		} catch (final NumberFormatException e) {
+			return -1;
+		}
+		return contentLength.orElse(-1);
+	}
 
 	@Override
 	public void onNext(final ByteBuffer content) throws Exception {
 		final int len = content.remaining();
-		final byte[] dst = new byte[len];
-		content.get(dst);
-		synchronized (byteArrays) {
-			byteArrays.add(dst);
+		ensureCapacity(count + (long) len);
+		content.get(buffer, count, len);
+		count += len;
+	}
+
+	private void ensureCapacity(final long minCapacity) {
+		if (minCapacity > MAX_CAPACITY) {
+			throw new IllegalStateException("Overflow");
+		}
+		if (buffer == null) {
+			buffer = new byte[(int) Math.max(initialCapacity, minCapacity)];
+		} else if (minCapacity > buffer.length) {
+			final long newCapacity = Math.max(minCapacity, Math.min(buffer.length * 2L, MAX_CAPACITY));
+			buffer = Arrays.copyOf(buffer, (int) newCapacity);
 		}
 	}
 
@@ -29,36 +84,18 @@ public class ByteArrayCompleteListener implements HttpResponse.BodyCompleteListe
 
 	@Override
 	public byte[] getBody() throws Exception {
-		synchronized (byteArrays) {
-			return concat(byteArrays);
-		}
-	}
-
-	private byte[] concat(final List<byte[]> byteArrays) {
-		if (byteArrays.isEmpty()) {
-			return new byte[0];
+		if (buffer == null || count == 0) {
+			return EMPTY;
 		}
-
-		int fullLen = 0;
-		for (final byte[] bs : byteArrays) {
-			fullLen += bs.length;
-		}
-		if (fullLen < 0) {
-			throw new IllegalStateException("Overflow");
+		if (count != buffer.length) {
+			buffer = Arrays.copyOf(buffer, count);
 		}
-		final byte[] full = new byte[fullLen];
-		int dstIdx = 0;
-		for (final byte[] bs : byteArrays) {
-			System.arraycopy(bs, 0, full, dstIdx, bs.length);
-			dstIdx += bs.length;
-		}
-		return full;
+		return buffer;
 	}
 
 	@Override
 	public void close() throws Exception {
-		synchronized (byteArrays) {
-			byteArrays.clear();
-		}
+		buffer = null;
+		count = 0;
 	}
 }
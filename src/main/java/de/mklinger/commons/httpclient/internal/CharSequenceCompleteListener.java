@@ -0,0 +1,171 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import de.mklinger.commons.httpclient.HttpResponse;
+
+/**
+ * Decodes the body chunk by chunk while it is received, instead of buffering
+ * all bytes and decoding at the end. Chars are appended to a
+ * {@link StringBuilder} presized from the expected length, which is handed
+ * out as the body without another copy. Multi-byte sequences split between
+ * chunks are carried over to the next chunk. ISO-8859-1 is mapped directly
+ * and runs of ASCII bytes in UTF-8 bypass the decoder.
+ *
+ * <p>Malformed and unmappable input is replaced, like
+ * {@link String#String(byte[], Charset)} does.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class CharSequenceCompleteListener implements HttpResponse.BodyCompleteListener<CharSequence> {
+	private static final int DEFAULT_INITIAL_CAPACITY = 8 * 1024;
+	// Do not trust a server with a huge up front allocation
+	private static final int MAX_INITIAL_CAPACITY = 32 * 1024 * 1024;
+	private static final int DECODE_BUFFER_SIZE = 4 * 1024;
+
+	private final boolean latin1;
+	private final boolean utf8;
+	private final CharsetDecoder decoder;
+	private final ByteBuffer leftover;
+	private final CharBuffer decoded = CharBuffer.allocate(DECODE_BUFFER_SIZE);
+	private StringBuilder chars;
+	private volatile CharSequence body;
+
+	public CharSequenceCompleteListener(final Charset charset) {
+		this(charset, -1);
+	}
+
+	/**
+	 * @param expectedLength The expected body length in bytes or -1 if unknown
+	 */
+	public CharSequenceCompleteListener(final Charset charset, final long expectedLength) {
+		this.latin1 = StandardCharsets.ISO_8859_1.equals(charset);
+		this.utf8 = StandardCharsets.UTF_8.equals(charset);
+		this.decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.leftover = ByteBuffer.allocate(Math.max(16, (int) Math.ceil(decoder.maxCharsPerByte()) * 4));
+		final int initialCapacity;
+		if (expectedLength < 0) {
+			initialCapacity = DEFAULT_INITIAL_CAPACITY;
+		} else {
+			initialCapacity = (int) Math.min(expectedLength * (double) decoder.averageCharsPerByte(), MAX_INITIAL_CAPACITY);
+		}
+		this.chars = new StringBuilder(Math.max(16, initialCapacity));
+	}
+
+	@Override
+	public void onNext(final ByteBuffer content) throws Exception {
+		if (latin1) {
+			mapLatin1(content);
+			return;
+		}
+		if (leftover.position() > 0 && !decodeLeftover(content)) {
+			return;
+		}
+		if (utf8) {
+			copyAscii(content);
+		}
+		decode(content, false);
+		if (content.hasRemaining()) {
+			// Incomplete sequence at the end of the chunk
+			leftover.put(content);
+		}
+	}
+
+	private void mapLatin1(final ByteBuffer content) {
+		while (content.hasRemaining()) {
+			chars.append((char) (content.get() & 0xff));
+		}
+	}
+
+	private void copyAscii(final ByteBuffer content) {
+		int position = content.position();
+		final int limit = content.limit();
+		while (position < limit) {
+			final byte b = content.get(position);
+			if (b < 0) {
+				break;
+			}
+			chars.append((char) b);
+			position++;
+		}
+		content.position(position);
+	}
+
+	/**
+	 * Complete the carried over sequence with bytes from the given content.
+	 *
+	 * @return <code>true</code> if the leftover has been decoded and the
+	 *         remaining content can be decoded normally
+	 */
+	private boolean decodeLeftover(final ByteBuffer content) {
+		final int held = leftover.position();
+		final int take = Math.min(leftover.remaining(), content.remaining());
+		final ByteBuffer slice = content.duplicate();
+		slice.limit(slice.position() + take);
+		leftover.put(slice);
+		leftover.flip();
+		decode(leftover, false);
+		final int consumedFromContent = leftover.position() - held;
+		if (consumedFromContent <= 0) {
+			// Still incomplete: all taken bytes stay in the leftover
+			leftover.compact();
+			content.position(content.position() + take);
+			return false;
+		}
+		leftover.clear();
+		content.position(content.position() + consumedFromContent);
+		return true;
+	}
+
+	private void decode(final ByteBuffer in, final boolean endOfInput) {
+		CoderResult result;
+		do {
+			result = decoder.decode(in, decoded, endOfInput);
+			drainDecoded();
+		} while (result.isOverflow());
+	}
+
+	private void flush() {
+		CoderResult result;
+		do {
+			result = decoder.flush(decoded);
+			drainDecoded();
+		} while (result.isOverflow());
+	}
+
+	private void drainDecoded() {
+		decoded.flip();
+		chars.append(decoded);
+		decoded.clear();
+	}
+
+	@Override
+	public void onComplete() throws Exception {
+		if (!latin1) {
+			leftover.flip();
+			decode(leftover, true);
+			flush();
+		}
+		body = chars;
+		chars = null;
+	}
+
+	@Override
+	public CharSequence getBody() throws Exception {
+		return body;
+	}
+
+	@Override
+	public void close() throws Exception {
+		chars = null;
+		body = null;
+	}
+}
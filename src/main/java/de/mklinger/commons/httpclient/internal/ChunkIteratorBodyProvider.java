@@ -0,0 +1,153 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+import org.eclipse.jetty.util.Callback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Body provider fed by an iterator of chunk futures. The next future is only
+ * requested from the iterator when fewer than the maximum number of offers
+ * are pending. Iterators implementing {@link AutoCloseable} are closed at the
+ * end of the content or on errors.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class ChunkIteratorBodyProvider extends AsyncBodyProvider {
+	private static final Logger LOG = LoggerFactory.getLogger(ChunkIteratorBodyProvider.class);
+
+	private final Iterator<CompletableFuture<ByteBuffer>> chunkFutureIterator;
+	private final AtomicBoolean started = new AtomicBoolean(false);
+
+	public ChunkIteratorBodyProvider(final String contentType, final long contentLength, final int maxPendingOffers, final Iterator<CompletableFuture<ByteBuffer>> chunkFutureIterator) {
+		super(contentType, contentLength, maxPendingOffers);
+		this.chunkFutureIterator = chunkFutureIterator;
+	}
+
+	@Override
+	public void start(final DeferredContentProvider target, final Request jettyRequest) {
+		if (!started.compareAndSet(false, true)) {
+			throw new IllegalStateException("Body provider can only be sent once");
+		}
+		final RequestBodyFiller filler = new RequestBodyFiller(target, jettyRequest);
+		jettyRequest.onRequestFailure((request, failure) -> filler.error(failure));
+		filler.drain();
+	}
+
+	@Override
+	public void discard() {
+		if (started.compareAndSet(false, true)) {
+			LOG.debug("Discarding unsent body");
+			closeIterator();
+		}
+	}
+
+	private void closeIterator() {
+		if (chunkFutureIterator instanceof AutoCloseable) {
+			try {
+				((AutoCloseable) chunkFutureIterator).close();
+			} catch (final Exception e) {
+				LOG.warn("Error closing chunk iterator", e);
+			}
+		}
+	}
+
+	private class RequestBodyFiller {
+		private final DeferredContentProvider target;
+		private final Request jettyRequest;
+		private final AtomicReference<Throwable> error = new AtomicReference<>();
+		private final AtomicInteger pendingOffers = new AtomicInteger();
+		private final AtomicInteger wip = new AtomicInteger();
+		// Only accessed from the drain loop
+		private CompletableFuture<ByteBuffer> current;
+		private boolean done;
+
+		private final Callback offerCallback = new Callback() {
+			@Override
+			public void succeeded() {
+				pendingOffers.decrementAndGet();
+				drain();
+			}
+
+			@Override
+			public void failed(final Throwable e) {
+				error(e);
+			}
+		};
+
+		public RequestBodyFiller(final DeferredContentProvider target, final Request jettyRequest) {
+			this.target = target;
+			this.jettyRequest = jettyRequest;
+		}
+
+		public void drain() {
+			if (wip.getAndIncrement() != 0) {
+				return;
+			}
+			int missed = 1;
+			do {
+				try {
+					fill();
+				} catch (final Throwable e) {
+					error(e);
+				}
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void fill() {
+			while (error.get() == null && !done && pendingOffers.get() < getMaxPendingOffers()) {
+				if (current == null) {
+					if (!chunkFutureIterator.hasNext()) {
+						LOG.debug("Done");
+						done = true;
+						target.close();
+						closeIterator();
+						return;
+					}
+					current = chunkFutureIterator.next();
+					if (!current.isDone()) {
+						current.whenComplete((unused, e) -> drain());
+						return;
+					}
+				} else if (!current.isDone()) {
+					return;
+				}
+
+				final ByteBuffer chunk;
+				try {
+					chunk = current.join();
+				} catch (final CompletionException e) {
+					error(e.getCause() != null ? e.getCause() : e);
+					return;
+				}
+				current = null;
+
+				LOG.debug("Offering byte buffer with {} bytes", chunk.remaining());
+				pendingOffers.incrementAndGet();
+				if (!target.offer(chunk, offerCallback)) {
+					error(new IllegalStateException("Failed to offer content to deferred content provider"));
+					return;
+				}
+			}
+		}
+
+		public void error(final Throwable e) {
+			if (error.compareAndSet(null, e)) {
+				LOG.debug("Error", e);
+				jettyRequest.abort(e);
+				target.close();
+				closeIterator();
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Pool of raw (nowrap) {@link Deflater}s, as used for gzip. Deflaters hold
+ * native memory and are expensive to create. Released deflaters are reset
+ * and kept up to a fixed number; surplus deflaters are ended.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public final class DeflaterPool {
+	private static final int MAX_POOLED = 16;
+	private static final DeflaterPool INSTANCE = new DeflaterPool();
+
+	private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger size = new AtomicInteger();
+
+	private DeflaterPool() {
+	}
+
+	public static DeflaterPool getInstance() {
+		return INSTANCE;
+	}
+
+	public Deflater acquire(final int level) {
+		Deflater deflater = deflaters.poll();
+		if (deflater == null) {
+			deflater = new Deflater(level, true);
+		} else {
+			size.decrementAndGet();
+			deflater.setLevel(level);
+		}
+		return deflater;
+	}
+
+	public void release(final Deflater deflater) {
+		if (size.incrementAndGet() > MAX_POOLED) {
+			size.decrementAndGet();
+			deflater.end();
+			return;
+		}
+		deflater.reset();
+		deflaters.add(deflater);
+	}
+}
@@ -0,0 +1,37 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+import de.mklinger.commons.httpclient.HttpClient;
+import de.mklinger.commons.httpclient.HttpClientMetrics;
+
+/**
+ * Base class for clients that wrap another client and change how requests
+ * are sent. Everything else is passed on to the wrapped client, which is
+ * closed with this client.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public abstract class DelegatingHttpClient extends AbstractHttpClient {
+	protected final HttpClient delegate;
+
+	protected DelegatingHttpClient(final HttpClient delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public CompletableFuture<Void> warmUp(final URI... origins) {
+		return delegate.warmUp(origins);
+	}
+
+	@Override
+	public HttpClientMetrics metrics() {
+		return delegate.metrics();
+	}
+
+	@Override
+	public void close() {
+		delegate.close();
+	}
+}
@@ -0,0 +1,15 @@
+package de.mklinger.commons.httpclient.internal;
+
+import de.mklinger.commons.httpclient.HttpRequest;
+
+/**
+ * Body provider that sends its content with a content coding applied.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public interface EncodedBodyProvider extends HttpRequest.BodyProvider {
+	/**
+	 * @return The value for the Content-Encoding request header
+	 */
+	String getContentEncoding();
+}
@@ -0,0 +1,65 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.util.Promise;
+import org.eclipse.jetty.util.SocketAddressResolver;
+
+import de.mklinger.commons.httpclient.EventListener;
+
+/**
+ * Socket address resolver that reports resolution start and end to an
+ * {@link EventListener}. Resolution itself is done by Jetty's default
+ * asynchronous resolver, created lazily once the client is started and its
+ * executor and scheduler are available.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class EventSocketAddressResolver implements SocketAddressResolver {
+	private final HttpClient jettyClient;
+	private final EventListener eventListener;
+	private volatile SocketAddressResolver delegate;
+
+	public EventSocketAddressResolver(final HttpClient jettyClient, final EventListener eventListener) {
+		this.jettyClient = jettyClient;
+		this.eventListener = eventListener;
+	}
+
+	@Override
+	public void resolve(final String host, final int port, final Promise<List<InetSocketAddress>> promise) {
+		eventListener.dnsStart(host, System.nanoTime());
+		getDelegate().resolve(host, port, new Promise<List<InetSocketAddress>>() {
+			@Override
+			public void succeeded(final List<InetSocketAddress> result) {
+				eventListener.dnsEnd(host, result, null, System.nanoTime());
+				promise.succeeded(result);
+			}
+
+			@Override
+			public void failed(final Throwable x) {
+				eventListener.dnsEnd(host, Collections.emptyList(), x, System.nanoTime());
+				promise.failed(x);
+			}
+		});
+	}
+
+	private SocketAddressResolver getDelegate() {
+		SocketAddressResolver result = delegate;
+		if (result == null) {
+			synchronized (this) {
+				result = delegate;
+				if (result == null) {
+					result = new SocketAddressResolver.Async(
+							jettyClient.getExecutor(),
+							jettyClient.getScheduler(),
+							jettyClient.getAddressResolutionTimeout());
+					delegate = result;
+				}
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,47 @@
+package de.mklinger.commons.httpclient.internal;
+
+import javax.net.ssl.SSLEngine;
+
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
+
+import de.mklinger.commons.httpclient.EventListener;
+
+/**
+ * Client SSL context factory that reports TLS handshakes to an
+ * {@link EventListener}. An engine is created right before its handshake
+ * starts, so engine creation marks the handshake start. The handshake end is
+ * reported by the {@link SslHandshakeListener} returned by
+ * {@link #getHandshakeListener()}, which must be added as a bean to the
+ * connector.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class EventSslContextFactory extends TlsSessionSslContextFactory {
+	private final EventListener eventListener;
+
+	public EventSslContextFactory(final EventListener eventListener) {
+		this.eventListener = eventListener;
+	}
+
+	@Override
+	public SSLEngine newSSLEngine(final String host, final int port) {
+		eventListener.tlsHandshakeStart(host, port, System.nanoTime());
+		return super.newSSLEngine(host, port);
+	}
+
+	public SslHandshakeListener getHandshakeListener() {
+		return new SslHandshakeListener() {
+			@Override
+			public void handshakeSucceeded(final Event event) {
+				final SSLEngine sslEngine = event.getSSLEngine();
+				eventListener.tlsHandshakeEnd(sslEngine.getPeerHost(), sslEngine.getPeerPort(), null, System.nanoTime());
+			}
+
+			@Override
+			public void handshakeFailed(final Event event, final Throwable failure) {
+				final SSLEngine sslEngine = event.getSSLEngine();
+				eventListener.tlsHandshakeEnd(sslEngine.getPeerHost(), sslEngine.getPeerPort(), failure, System.nanoTime());
+			}
+		};
+	}
+}
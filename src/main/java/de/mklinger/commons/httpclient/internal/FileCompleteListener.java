@@ -1,7 +1,9 @@
 package de.mklinger.commons.httpclient.internal;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.OpenOption;
@@ -45,6 +47,28 @@ public class FileCompleteListener implements HttpResponse.BodyCompleteListener<P
 		channel.write(content);
 	}
 
+	/**
+	 * Write the given region of the source file as content. The data is copied
+	 * by the operating system, without passing through user space buffers
+	 * where supported.
+	 */
+	public void transferFrom(final FileChannel source, final long position, final long count) throws IOException {
+		if (channel == null) {
+			channel = FileChannel.open(targetFile, openOptions);
+		}
+		final FileChannel target = (FileChannel) channel;
+
+		LOG.debug("Transferring {} bytes", count);
+		long transferred = 0;
+		while (transferred < count) {
+			final long n = source.transferTo(position + transferred, count - transferred, target);
+			if (n <= 0) {
+				throw new EOFException("Unexpected end of source file");
+			}
+			transferred += n;
+		}
+	}
+
 	@Override
 	public void onComplete() throws Exception {
 		close();
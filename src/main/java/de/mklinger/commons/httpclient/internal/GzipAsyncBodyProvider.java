@@ -0,0 +1,97 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+import org.eclipse.jetty.util.Callback;
+
+/**
+ * Compresses the content of another asynchronous body provider with gzip,
+ * chunk by chunk as it is offered.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class GzipAsyncBodyProvider extends AsyncBodyProvider implements EncodedBodyProvider {
+	private final AsyncBodyProvider delegate;
+	private final int level;
+
+	public GzipAsyncBodyProvider(final AsyncBodyProvider delegate, final int level) {
+		super(delegate.getContentType(), -1, delegate.getMaxPendingOffers());
+		this.delegate = delegate;
+		this.level = level;
+	}
+
+	@Override
+	public String getContentEncoding() {
+		return "gzip";
+	}
+
+	@Override
+	public void start(final DeferredContentProvider target, final Request jettyRequest) {
+		final GzipContentProvider gzipContentProvider = new GzipContentProvider(target, new GzipEncoder(level));
+		jettyRequest.onRequestFailure((request, failure) -> gzipContentProvider.release());
+		delegate.start(gzipContentProvider, jettyRequest);
+	}
+
+	@Override
+	public void discard() {
+		delegate.discard();
+	}
+
+	/**
+	 * Receives the offers of the delegate and passes compressed content on to
+	 * the actual target. None of the inherited state is used.
+	 */
+	private static class GzipContentProvider extends DeferredContentProvider {
+		private final DeferredContentProvider target;
+		private GzipEncoder encoder;
+
+		public GzipContentProvider(final DeferredContentProvider target, final GzipEncoder encoder) {
+			this.target = target;
+			this.encoder = encoder;
+		}
+
+		@Override
+		public boolean offer(final ByteBuffer buffer, final Callback callback) {
+			final boolean released;
+			synchronized (this) {
+				released = encoder == null;
+				if (!released) {
+					final ByteBuffer compressed = encoder.encode(buffer);
+					if (compressed.hasRemaining()) {
+						return target.offer(compressed, callback);
+					}
+				}
+			}
+			if (released) {
+				// The request failed, the callback must still be completed
+				callback.failed(new IOException("Request body compression was released"));
+				return false;
+			}
+			// Nothing to write yet, the chunk is consumed
+			callback.succeeded();
+			return true;
+		}
+
+		@Override
+		public void close() {
+			synchronized (this) {
+				if (encoder != null) {
+					target.offer(encoder.finish());
+					release();
+				}
+			}
+			target.close();
+		}
+
+		public synchronized void release() {
+			final GzipEncoder e = encoder;
+			encoder = null;
+			if (e != null) {
+				e.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.eclipse.jetty.client.api.ContentProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mklinger.commons.httpclient.HttpRequest;
+
+/**
+ * Compresses the content of another content provider with gzip, chunk by
+ * chunk as it is pulled by the connection.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class GzipBodyProvider implements ContentProvider.Typed, EncodedBodyProvider {
+	private static final Logger LOG = LoggerFactory.getLogger(GzipBodyProvider.class);
+
+	private final ContentProvider delegate;
+	private final int level;
+
+	public GzipBodyProvider(final HttpRequest.BodyProvider delegate, final int level) {
+		if (!(delegate instanceof ContentProvider)) {
+			throw new IllegalArgumentException("Unsupported body provider: " + delegate.getClass().getName());
+		}
+		this.delegate = (ContentProvider) delegate;
+		this.level = level;
+	}
+
+	@Override
+	public String getContentEncoding() {
+		return "gzip";
+	}
+
+	@Override
+	public String getContentType() {
+		if (delegate instanceof ContentProvider.Typed) {
+			return ((ContentProvider.Typed) delegate).getContentType();
+		}
+		return null;
+	}
+
+	@Override
+	public long getLength() {
+		return -1;
+	}
+
+	@Override
+	public boolean isReproducible() {
+		return delegate.isReproducible();
+	}
+
+	@Override
+	public Iterator<ByteBuffer> iterator() {
+		return new GzipIterator(delegate.iterator(), new GzipEncoder(level));
+	}
+
+	private static class GzipIterator implements Iterator<ByteBuffer>, Closeable {
+		private final Iterator<ByteBuffer> source;
+		private final GzipEncoder encoder;
+		private ByteBuffer next;
+		private boolean finished;
+
+		public GzipIterator(final Iterator<ByteBuffer> source, final GzipEncoder encoder) {
+			this.source = source;
+			this.encoder = encoder;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				next = advance();
+			}
+			return next != null;
+		}
+
+		private ByteBuffer advance() {
+			while (!finished) {
+				if (source.hasNext()) {
+					final ByteBuffer compressed = encoder.encode(source.next());
+					if (compressed.hasRemaining()) {
+						return compressed;
+					}
+				} else {
+					finished = true;
+					final ByteBuffer compressed = encoder.finish();
+					close();
+					return compressed;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public ByteBuffer next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final ByteBuffer result = next;
+			next = null;
+			return result;
+		}
+
+		@Override
+		public void close() {
+			encoder.close();
+			if (source instanceof Closeable) {
+				try {
+					((Closeable) source).close();
+				} catch (final IOException e) {
+					LOG.warn("Error closing content iterator", e);
+				}
+			}
+		}
+	}
+}
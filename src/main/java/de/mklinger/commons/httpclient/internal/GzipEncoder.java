@@ -0,0 +1,133 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streaming gzip encoder. Each call to {@link #encode(ByteBuffer)} consumes a
+ * chunk of content and returns the compressed data produced so far, which
+ * may be empty. {@link #finish()} returns the remaining data including the
+ * gzip trailer.
+ *
+ * <p>Instances are not thread safe and must be closed to return the deflater
+ * to the pool.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class GzipEncoder implements AutoCloseable {
+	private static final byte[] HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+	private static final int COPY_BUFFER_SIZE = 16 * 1024;
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	private final DeflaterPool deflaterPool;
+	private final CRC32 crc = new CRC32();
+	private Deflater deflater;
+	private boolean headerWritten;
+	private byte[] copyBuffer;
+
+	private byte[] output;
+	private int outputCount;
+
+	public GzipEncoder(final int level) {
+		this.deflaterPool = DeflaterPool.getInstance();
+		this.deflater = deflaterPool.acquire(level);
+	}
+
+	/**
+	 * Compress the given content. The content is consumed.
+	 * @return Compressed data, may be empty
+	 */
+	public ByteBuffer encode(final ByteBuffer content) {
+		startOutput(content.remaining() / 4);
+		if (content.hasArray()) {
+			final int offset = content.arrayOffset() + content.position();
+			final int len = content.remaining();
+			deflate(content.array(), offset, len);
+			content.position(content.limit());
+		} else {
+			// Direct and mapped buffers
+			if (copyBuffer == null) {
+				copyBuffer = new byte[COPY_BUFFER_SIZE];
+			}
+			while (content.hasRemaining()) {
+				final int len = Math.min(copyBuffer.length, content.remaining());
+				content.get(copyBuffer, 0, len);
+				deflate(copyBuffer, 0, len);
+			}
+		}
+		return takeOutput();
+	}
+
+	/**
+	 * Finish the gzip stream.
+	 * @return The remaining compressed data and the trailer
+	 */
+	public ByteBuffer finish() {
+		startOutput(64);
+		deflater.finish();
+		while (!deflater.finished()) {
+			drainDeflater();
+		}
+		ensureOutputCapacity(8);
+		writeInt((int) crc.getValue());
+		writeInt((int) deflater.getBytesRead());
+		return takeOutput();
+	}
+
+	private void deflate(final byte[] b, final int offset, final int len) {
+		if (len == 0) {
+			return;
+		}
+		crc.update(b, offset, len);
+		deflater.setInput(b, offset, len);
+		while (!deflater.needsInput()) {
+			drainDeflater();
+		}
+	}
+
+	private void drainDeflater() {
+		ensureOutputCapacity(COPY_BUFFER_SIZE);
+		outputCount += deflater.deflate(output, outputCount, output.length - outputCount);
+	}
+
+	private void startOutput(final int expectedSize) {
+		output = new byte[Math.max(expectedSize, 64) + HEADER.length];
+		outputCount = 0;
+		if (!headerWritten) {
+			System.arraycopy(HEADER, 0, output, 0, HEADER.length);
+			outputCount = HEADER.length;
+			headerWritten = true;
+		}
+	}
+
+	private void ensureOutputCapacity(final int minFree) {
+		if (output.length - outputCount < minFree) {
+			output = Arrays.copyOf(output, Math.max(output.length * 2, outputCount + minFree));
+		}
+	}
+
+	private void writeInt(final int value) {
+		output[outputCount++] = (byte) value;
+		output[outputCount++] = (byte) (value >> 8);
+		output[outputCount++] = (byte) (value >> 16);
+		output[outputCount++] = (byte) (value >> 24);
+	}
+
+	private ByteBuffer takeOutput() {
+		final ByteBuffer result = outputCount == 0 ? EMPTY : ByteBuffer.wrap(output, 0, outputCount);
+		output = null;
+		outputCount = 0;
+		return result;
+	}
+
+	@Override
+	public void close() {
+		final Deflater d = deflater;
+		deflater = null;
+		if (d != null) {
+			deflaterPool.release(d);
+		}
+	}
+}
@@ -2,27 +2,51 @@ package de.mklinger.commons.httpclient.internal;
 
 import static java.util.Objects.requireNonNull;
 
+import java.net.URI;
 import java.security.KeyStore;
 import java.security.Security;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import org.conscrypt.Conscrypt;
 import org.conscrypt.OpenSSLProvider;
+import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
 import org.eclipse.jetty.http2.client.HTTP2Client;
 import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
-import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import de.mklinger.commons.httpclient.EventListener;
+import de.mklinger.commons.httpclient.HttpCache;
 import de.mklinger.commons.httpclient.HttpClient;
 import de.mklinger.commons.httpclient.HttpClient.Builder;
+import de.mklinger.commons.httpclient.HttpVersion;
+import de.mklinger.commons.httpclient.internal.cache.CachingHttpClient;
+import de.mklinger.commons.httpclient.internal.cache.CoalescingHttpClient;
+import de.mklinger.commons.httpclient.internal.cache.HttpCacheImpl;
 import de.mklinger.commons.httpclient.internal.hostnameverifier.DefaultHostnameVerifier;
+import de.mklinger.commons.httpclient.internal.jetty.DynamicProtocolSelector;
 import de.mklinger.commons.httpclient.internal.jetty.JettyHttpClient;
+import de.mklinger.commons.httpclient.internal.jetty.StreamBalancingConnectionPool;
 
 /**
  * @author Marc Klinger - mklinger[at]mklinger[dot]de
  */
 public class HttpClientBuilderImpl implements HttpClient.Builder {
+	private static final Logger LOG = LoggerFactory.getLogger(HttpClientBuilderImpl.class);
+
 	private KeyStore trustStore;
 	private KeyStore keyStore;
 	private String keyPassword;
@@ -35,6 +59,36 @@ public class HttpClientBuilderImpl implements HttpClient.Builder {
 
 	private String name = "HttpClient";
 
+	private Executor completionExecutor;
+
+	private boolean virtualThreads = false;
+
+	private EventListener eventListener;
+
+	private boolean decompression = true;
+
+	private HttpCacheImpl cache;
+
+	private List<String> coalescingKeyHeaders;
+
+	private Set<HttpVersion> httpVersions = EnumSet.of(HttpVersion.HTTP_2);
+
+	private Set<String> priorKnowledgeOrigins = Collections.emptySet();
+
+	// Jetty's default is 64
+	private Integer maxConnectionsPerDestination;
+
+	// Open another session only when all streams of a session are in use
+	private double http2SessionLoadFactor = 1.0;
+
+	private int warmUpConnections = 1;
+
+	// Conscrypt's defaults apply when not set
+	private Integer tlsSessionCacheSize;
+	private Duration tlsSessionTimeout;
+
+	private boolean tlsSessionTickets = true;
+
 	private static volatile boolean securityProviderAdded = false;
 
 	private static void addSecurityProvider() {
@@ -85,15 +139,160 @@ public class HttpClientBuilderImpl implements HttpClient.Builder {
 		return this;
 	}
 
+	@Override
+	public Builder completionExecutor(final Executor executor) {
+		this.completionExecutor = requireNonNull(executor);
+		return this;
+	}
+
+	@Override
+	public Builder virtualThreads(final boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+		return this;
+	}
+
+	@Override
+	public Builder eventListener(final EventListener eventListener) {
+		this.eventListener = requireNonNull(eventListener);
+		return this;
+	}
+
+	@Override
+	public Builder decompression(final boolean decompression) {
+		this.decompression = decompression;
+		return this;
+	}
+
+	@Override
+	public Builder cache(final HttpCache cache) {
+		if (!(cache instanceof HttpCacheImpl)) {
+			throw new IllegalArgumentException("Unsupported cache implementation: " + cache);
+		}
+		this.cache = (HttpCacheImpl) cache;
+		return this;
+	}
+
+	@Override
+	public Builder coalesceRequests(final String... keyHeaderNames) {
+		requireNonNull(keyHeaderNames);
+		final List<String> names = new ArrayList<>(Arrays.asList(keyHeaderNames));
+		for (final String name : names) {
+			requireNonNull(name);
+		}
+		this.coalescingKeyHeaders = names;
+		return this;
+	}
+
+	@Override
+	public Builder httpVersions(final HttpVersion... versions) {
+		requireNonNull(versions);
+		if (versions.length == 0) {
+			throw new IllegalArgumentException("No HTTP version given");
+		}
+		final Set<HttpVersion> set = EnumSet.noneOf(HttpVersion.class);
+		for (final HttpVersion version : versions) {
+			set.add(requireNonNull(version));
+		}
+		this.httpVersions = set;
+		return this;
+	}
+
+	@Override
+	public Builder http2PriorKnowledge(final URI... origins) {
+		requireNonNull(origins);
+		final Set<String> set = new HashSet<>();
+		for (final URI origin : origins) {
+			if (!"http".equalsIgnoreCase(origin.getScheme()) || origin.getHost() == null) {
+				throw new IllegalArgumentException("Not a clear text HTTP origin: " + origin);
+			}
+			set.add(DynamicProtocolSelector.origin(origin));
+		}
+		this.priorKnowledgeOrigins = set;
+		return this;
+	}
+
+	@Override
+	public Builder maxConnectionsPerDestination(final int maxConnections) {
+		if (maxConnections < 1) {
+			throw new IllegalArgumentException("Invalid max connections: " + maxConnections);
+		}
+		this.maxConnectionsPerDestination = maxConnections;
+		return this;
+	}
+
+	@Override
+	public Builder http2SessionLoadFactor(final double loadFactor) {
+		if (!(loadFactor > 0 && loadFactor <= 1)) {
+			throw new IllegalArgumentException("Invalid load factor: " + loadFactor);
+		}
+		this.http2SessionLoadFactor = loadFactor;
+		return this;
+	}
+
+	@Override
+	public Builder warmUpConnections(final int connections) {
+		if (connections < 1) {
+			throw new IllegalArgumentException("Invalid warm up connections: " + connections);
+		}
+		this.warmUpConnections = connections;
+		return this;
+	}
+
+	@Override
+	public Builder tlsSessionCacheSize(final int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Invalid TLS session cache size: " + size);
+		}
+		this.tlsSessionCacheSize = size;
+		return this;
+	}
+
+	@Override
+	public Builder tlsSessionTimeout(final Duration timeout) {
+		requireNonNull(timeout);
+		if (timeout.getSeconds() < 1) {
+			throw new IllegalArgumentException("Invalid TLS session timeout: " + timeout);
+		}
+		this.tlsSessionTimeout = timeout;
+		return this;
+	}
+
+	@Override
+	public Builder tlsSessionTickets(final boolean sessionTickets) {
+		this.tlsSessionTickets = sessionTickets;
+		return this;
+	}
+
 	@Override
 	public HttpClient build() {
+		if (!priorKnowledgeOrigins.isEmpty() && !httpVersions.contains(HttpVersion.HTTP_2)) {
+			throw new IllegalStateException("HTTP/2 prior knowledge requires HTTP/2 to be enabled");
+		}
+		if (maxConnectionsPerDestination != null && warmUpConnections > maxConnectionsPerDestination) {
+			throw new IllegalStateException("Warm up connections exceed max connections per destination");
+		}
+
 		addSecurityProvider();
 
 		final DefaultHostnameVerifier defaultHostnameVerifier = new DefaultHostnameVerifier();
 		Conscrypt.setDefaultHostnameVerifier(defaultHostnameVerifier::verify);
 
-		final SslContextFactory.Client sslContextFactory = new SslContextFactory.Client();
+		final EventListener safeEventListener = eventListener == null ? null : new SafeEventListener(eventListener);
+
+		final TlsSessionSslContextFactory sslContextFactory;
+		if (safeEventListener != null) {
+			sslContextFactory = new EventSslContextFactory(safeEventListener);
+		} else {
+			sslContextFactory = new TlsSessionSslContextFactory();
+		}
 		sslContextFactory.setProvider("Conscrypt");
+		sslContextFactory.setSessionTickets(tlsSessionTickets);
+		if (tlsSessionCacheSize != null) {
+			sslContextFactory.setSslSessionCacheSize(tlsSessionCacheSize);
+		}
+		if (tlsSessionTimeout != null) {
+			sslContextFactory.setSslSessionTimeout((int) Math.min(Integer.MAX_VALUE, tlsSessionTimeout.getSeconds()));
+		}
 
 		if (trustStore != null) {
 			sslContextFactory.setTrustStore(trustStore);
@@ -105,12 +304,78 @@ public class HttpClientBuilderImpl implements HttpClient.Builder {
 			sslContextFactory.setKeyManagerPassword(keyPassword);
 		}
 
-		final HTTP2Client http2Client = new HTTP2Client();
-		http2Client.addBean(sslContextFactory);
-		final HttpClientTransportOverHTTP2 clientTransport = new HttpClientTransportOverHTTP2(http2Client);
+		final boolean useVirtualThreads = useVirtualThreads();
+		final Executor executor = newExecutor(getClass().getClassLoader(), name, useVirtualThreads);
+
+		HTTP2Client http2Client = null;
+		org.eclipse.jetty.client.HttpClient http2JettyClient = null;
+		if (httpVersions.contains(HttpVersion.HTTP_2)) {
+			http2Client = new HTTP2Client();
+			http2Client.addBean(sslContextFactory);
+			http2Client.addBean(sslContextFactory.getResumptionListener());
+			if (sslContextFactory instanceof EventSslContextFactory) {
+				http2Client.addBean(((EventSslContextFactory) sslContextFactory).getHandshakeListener());
+			}
+			final HttpClientTransportOverHTTP2 transport = new HttpClientTransportOverHTTP2(http2Client);
+			final org.eclipse.jetty.client.HttpClient jettyClient = new org.eclipse.jetty.client.HttpClient(transport, sslContextFactory);
+			final double loadFactor = http2SessionLoadFactor;
+			transport.setConnectionPoolFactory(destination -> new StreamBalancingConnectionPool(
+					destination,
+					jettyClient.getMaxConnectionsPerDestination(),
+					destination,
+					jettyClient.getMaxRequestsPerConnection(),
+					loadFactor));
+			http2JettyClient = jettyClient;
+		}
 
-		final org.eclipse.jetty.client.HttpClient jettyClient = new org.eclipse.jetty.client.HttpClient(clientTransport, sslContextFactory);
+		org.eclipse.jetty.client.HttpClient http11JettyClient = null;
+		if (httpVersions.contains(HttpVersion.HTTP_1_1)) {
+			http11JettyClient = new org.eclipse.jetty.client.HttpClient(new HttpClientTransportOverHTTP(), sslContextFactory);
+			http11JettyClient.addBean(sslContextFactory.getResumptionListener());
+			if (sslContextFactory instanceof EventSslContextFactory) {
+				http11JettyClient.addBean(((EventSslContextFactory) sslContextFactory).getHandshakeListener());
+			}
+		}
 
+		DynamicProtocolSelector protocolSelector = null;
+		if (http2JettyClient != null && http11JettyClient != null) {
+			protocolSelector = new DynamicProtocolSelector(http2JettyClient, http11JettyClient, priorKnowledgeOrigins);
+			// Sees the ALPN outcome of the handshakes of the HTTP/2 client
+			http2Client.addBean(protocolSelector);
+			// Both clients share threads, scheduler and buffers
+			final ScheduledExecutorScheduler scheduler = new ScheduledExecutorScheduler(name + "-scheduler", false);
+			final ByteBufferPool byteBufferPool = new MappedByteBufferPool();
+			for (final org.eclipse.jetty.client.HttpClient jettyClient : Arrays.asList(http2JettyClient, http11JettyClient)) {
+				jettyClient.setScheduler(scheduler);
+				jettyClient.setByteBufferPool(byteBufferPool);
+			}
+		}
+
+		for (final org.eclipse.jetty.client.HttpClient jettyClient : Arrays.asList(http2JettyClient, http11JettyClient)) {
+			if (jettyClient != null) {
+				configure(jettyClient, safeEventListener, executor);
+			}
+		}
+
+		final Executor clientCompletionExecutor = getCompletionExecutor(useVirtualThreads);
+		HttpClient httpClient;
+		if (protocolSelector != null) {
+			httpClient = new JettyHttpClient(protocolSelector, clientCompletionExecutor, safeEventListener, decompression, warmUpConnections);
+		} else {
+			final org.eclipse.jetty.client.HttpClient jettyClient = http2JettyClient != null ? http2JettyClient : http11JettyClient;
+			httpClient = new JettyHttpClient(jettyClient, clientCompletionExecutor, safeEventListener, decompression, warmUpConnections);
+		}
+		if (coalescingKeyHeaders != null) {
+			// Below the cache, so that concurrent cache misses are coalesced
+			httpClient = new CoalescingHttpClient(httpClient, coalescingKeyHeaders, clientCompletionExecutor);
+		}
+		if (cache != null) {
+			return new CachingHttpClient(httpClient, cache, clientCompletionExecutor);
+		}
+		return httpClient;
+	}
+
+	private void configure(final org.eclipse.jetty.client.HttpClient jettyClient, final EventListener safeEventListener, final Executor executor) {
 		if (connectTimeout != null) {
 			final long timeoutMillis = connectTimeout.toMillis();
 			jettyClient.setConnectTimeout(timeoutMillis);
@@ -121,7 +386,15 @@ public class HttpClientBuilderImpl implements HttpClient.Builder {
 
 		jettyClient.setFollowRedirects(followRedirects);
 
-		jettyClient.setExecutor(newExecutor(getClass().getClassLoader(), name));
+		if (maxConnectionsPerDestination != null) {
+			jettyClient.setMaxConnectionsPerDestination(maxConnectionsPerDestination);
+		}
+
+		if (safeEventListener != null) {
+			jettyClient.setSocketAddressResolver(new EventSocketAddressResolver(jettyClient, safeEventListener));
+		}
+
+		jettyClient.setExecutor(executor);
 
 		try {
 			jettyClient.start();
@@ -129,11 +402,39 @@ public class HttpClientBuilderImpl implements HttpClient.Builder {
 			throw new RuntimeException(e);
 		}
 
-		return new JettyHttpClient(jettyClient);
+		// Jetty adds its gzip decoder on start. Decoding is done by
+		// FullCompleteListener instead, which also supports deflate and
+		// leaves bodies for raw body handlers alone.
+		jettyClient.getContentDecoderFactories().clear();
+	}
+
+	private boolean useVirtualThreads() {
+		if (virtualThreads && !VirtualThreads.isAvailable()) {
+			LOG.warn("Virtual threads are not available in this JVM. Using platform threads for client {}", name);
+			return false;
+		}
+		return virtualThreads;
+	}
+
+	private Executor getCompletionExecutor(boolean useVirtualThreads) {
+		if (completionExecutor != null) {
+			return completionExecutor;
+		}
+		if (useVirtualThreads) {
+			return VirtualThreads.newThreadPerTaskExecutor(getClass().getClassLoader(), name + "-completion-");
+		}
+		return ForkJoinPool.commonPool();
 	}
 
-	private Executor newExecutor(ClassLoader classLoader, String name) {
-		final QueuedThreadPool threadPool = new ThreadContextClassLoaderQueuedThreadPool(classLoader);
+	private Executor newExecutor(ClassLoader classLoader, String name, boolean useVirtualThreads) {
+		final QueuedThreadPool threadPool;
+		if (useVirtualThreads) {
+			threadPool = new ThreadContextClassLoaderQueuedThreadPool(classLoader, VirtualThreads.newThreadFactory(name + "-virtual-"));
+			// Virtual threads are always daemon threads
+			threadPool.setDaemon(true);
+		} else {
+			threadPool = new ThreadContextClassLoaderQueuedThreadPool(classLoader);
+		}
 		threadPool.setName(name);
 		return threadPool;
 	}
@@ -43,4 +43,8 @@ public class HttpHeadersImpl implements HttpHeaders {
 		values.add(value);
 		map.put(name, values);
 	}
+
+	public void removeHeader(final String name) {
+		map.remove(name);
+	}
 }
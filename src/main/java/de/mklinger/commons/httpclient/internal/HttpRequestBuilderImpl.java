@@ -5,6 +5,7 @@ import static java.util.Objects.requireNonNull;
 import java.net.URI;
 import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 
 import de.mklinger.commons.httpclient.HttpHeaders;
 import de.mklinger.commons.httpclient.HttpRequest;
@@ -19,6 +20,7 @@ public class HttpRequestBuilderImpl implements HttpRequest.Builder {
 	private HttpHeadersImpl headers;
 	public HttpRequest.BodyProvider bodyProvider;
 	private Duration timeout;
+	private Executor completionExecutor;
 
 	public HttpRequestBuilderImpl() {
 	}
@@ -27,6 +29,21 @@ public class HttpRequestBuilderImpl implements HttpRequest.Builder {
 		this.uri = requireNonNull(uri);
 	}
 
+	/**
+	 * Create a builder initialized with the state of the given request.
+	 */
+	public static HttpRequestBuilderImpl copyOf(final HttpRequest request) {
+		final HttpRequestBuilderImpl builder = new HttpRequestBuilderImpl(request.uri());
+		builder.method = request.method();
+		request.headers().map().forEach(
+				(name, values) -> values.forEach(
+						value -> builder.header(name, value)));
+		builder.bodyProvider = request.bodyProvider().orElse(null);
+		builder.timeout = request.timeout().orElse(null);
+		builder.completionExecutor = request.completionExecutor().orElse(null);
+		return builder;
+	}
+
 	@Override
 	public HttpRequest.Builder uri(final URI uri) {
 		this.uri = requireNonNull(uri);
@@ -106,6 +123,12 @@ public class HttpRequestBuilderImpl implements HttpRequest.Builder {
 		return this;
 	}
 
+	@Override
+	public HttpRequest.Builder completionExecutor(final Executor executor) {
+		this.completionExecutor = requireNonNull(executor);
+		return this;
+	}
+
 	@Override
 	public HttpRequest build() {
 		return new HttpRequestImpl(this);
@@ -117,6 +140,7 @@ public class HttpRequestBuilderImpl implements HttpRequest.Builder {
 		private final HttpHeaders headers;
 		private final Optional<HttpRequest.BodyProvider> bodyProvider;
 		private final Optional<Duration> timeout;
+		private final Optional<Executor> completionExecutor;
 
 		public HttpRequestImpl(final HttpRequestBuilderImpl builder) {
 			this.uri = requireNonNull(builder.uri);
@@ -128,6 +152,7 @@ public class HttpRequestBuilderImpl implements HttpRequest.Builder {
 			}
 			this.bodyProvider = Optional.ofNullable(builder.bodyProvider);
 			this.timeout = Optional.ofNullable(builder.timeout);
+			this.completionExecutor = Optional.ofNullable(builder.completionExecutor);
 		}
 
 		@Override
@@ -154,5 +179,10 @@ public class HttpRequestBuilderImpl implements HttpRequest.Builder {
 		public Optional<Duration> timeout() {
 			return timeout;
 		}
+
+		@Override
+		public Optional<Executor> completionExecutor() {
+			return completionExecutor;
+		}
 	}
 }
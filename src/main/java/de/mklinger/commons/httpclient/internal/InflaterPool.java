@@ -0,0 +1,69 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+/**
+ * Pool of {@link Inflater}s, which hold native memory and are expensive to
+ * create. Released inflaters are reset and kept up to a fixed number per
+ * mode; surplus inflaters are ended.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public final class InflaterPool {
+	private static final int MAX_POOLED = 64;
+	private static final InflaterPool INSTANCE = new InflaterPool();
+
+	private final Pool wrapped = new Pool(false);
+	private final Pool nowrap = new Pool(true);
+
+	private InflaterPool() {
+	}
+
+	public static InflaterPool getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param nowrap <code>true</code> for raw deflate data without zlib
+	 *        header and checksum, as used by gzip
+	 */
+	public Inflater acquire(final boolean nowrap) {
+		return (nowrap ? this.nowrap : this.wrapped).acquire();
+	}
+
+	public void release(final Inflater inflater, final boolean nowrap) {
+		(nowrap ? this.nowrap : this.wrapped).release(inflater);
+	}
+
+	private static class Pool {
+		private final boolean nowrap;
+		private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger size = new AtomicInteger();
+
+		public Pool(final boolean nowrap) {
+			this.nowrap = nowrap;
+		}
+
+		public Inflater acquire() {
+			final Inflater inflater = inflaters.poll();
+			if (inflater == null) {
+				return new Inflater(nowrap);
+			}
+			size.decrementAndGet();
+			return inflater;
+		}
+
+		public void release(final Inflater inflater) {
+			if (size.incrementAndGet() > MAX_POOLED) {
+				size.decrementAndGet();
+				inflater.end();
+				return;
+			}
+			inflater.reset();
+			inflaters.add(inflater);
+		}
+	}
+}
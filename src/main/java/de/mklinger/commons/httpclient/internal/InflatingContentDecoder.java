@@ -0,0 +1,335 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Streaming decoder for the gzip and deflate content encodings. Compressed
+ * chunks are fed with {@link #setInput(ByteBuffer)}, decoded chunks of
+ * bounded size are taken with {@link #nextOutput()} until it returns
+ * <code>null</code>. Concatenated gzip members are supported. For deflate,
+ * both zlib wrapped and raw data is accepted, as servers use both.
+ *
+ * <p>Instances are not thread safe and must be closed to return the
+ * inflater to the pool.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class InflatingContentDecoder implements AutoCloseable {
+	private static final int OUTPUT_CHUNK_SIZE = 16 * 1024;
+
+	private static final int FHCRC = 0x02;
+	private static final int FEXTRA = 0x04;
+	private static final int FNAME = 0x08;
+	private static final int FCOMMENT = 0x10;
+
+	private enum State {
+		/** Deflate: waiting for the first bytes to detect the format */
+		DEFLATE_DETECT,
+		GZIP_HEADER,
+		GZIP_EXTRA_LENGTH,
+		GZIP_EXTRA,
+		GZIP_NAME,
+		GZIP_COMMENT,
+		GZIP_HEADER_CRC,
+		INFLATE,
+		GZIP_TRAILER,
+		DONE
+	}
+
+	private final InflaterPool inflaterPool;
+	private final boolean gzip;
+	private final CRC32 crc = new CRC32();
+	private final byte[] scratch = new byte[10];
+	private Inflater inflater;
+	private boolean nowrap;
+	private State state;
+	private int scratchCount;
+	private int flags;
+	private int extraRemaining;
+	private long memberOutputSize;
+
+	private byte[] input = new byte[0];
+	private int inputPosition;
+	private int inputLimit;
+	private boolean anyInput;
+	private volatile boolean closed;
+
+	private InflatingContentDecoder(final InflaterPool inflaterPool, final boolean gzip) {
+		this.inflaterPool = inflaterPool;
+		this.gzip = gzip;
+		this.state = gzip ? State.GZIP_HEADER : State.DEFLATE_DETECT;
+	}
+
+	/**
+	 * Create a decoder for the given Content-Encoding header value.
+	 * @return The decoder or <code>null</code> if the encoding is not
+	 *         supported
+	 */
+	public static InflatingContentDecoder forContentEncoding(final String contentEncoding) {
+		if (contentEncoding == null) {
+			return null;
+		}
+		switch (contentEncoding.trim().toLowerCase(Locale.ROOT)) {
+		case "gzip":
+		case "x-gzip":
+			return new InflatingContentDecoder(InflaterPool.getInstance(), true);
+		case "deflate":
+			return new InflatingContentDecoder(InflaterPool.getInstance(), false);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Set the next compressed chunk. Must only be called after
+	 * {@link #nextOutput()} returned <code>null</code>. The content is consumed.
+	 */
+	public void setInput(final ByteBuffer content) {
+		if (inputPosition < inputLimit) {
+			throw new IllegalStateException("Previous input not consumed");
+		}
+		final int len = content.remaining();
+		if (input.length < len) {
+			input = new byte[len];
+		}
+		content.get(input, 0, len);
+		inputPosition = 0;
+		inputLimit = len;
+		if (len > 0) {
+			anyInput = true;
+		}
+	}
+
+	/**
+	 * Get the next decoded chunk.
+	 * @return The chunk or <code>null</code> if more input is needed
+	 */
+	public ByteBuffer nextOutput() throws ZipException {
+		if (closed) {
+			throw new IllegalStateException("Closed");
+		}
+		while (true) {
+			if (state == State.INFLATE) {
+				final ByteBuffer output = inflate();
+				if (output != null || state == State.INFLATE) {
+					return output;
+				}
+			} else if (inputPosition < inputLimit) {
+				parse(input[inputPosition++] & 0xff);
+			} else {
+				return null;
+			}
+		}
+	}
+
+	private ByteBuffer inflate() throws ZipException {
+		while (true) {
+			if (inflater.finished()) {
+				// Give back bytes following the deflate data
+				inputPosition = inputLimit - inflater.getRemaining();
+				if (gzip) {
+					scratchCount = 0;
+					state = State.GZIP_TRAILER;
+				} else {
+					state = State.DONE;
+				}
+				return null;
+			}
+			if (inflater.needsInput()) {
+				if (inputPosition >= inputLimit) {
+					return null;
+				}
+				inflater.setInput(input, inputPosition, inputLimit - inputPosition);
+				inputPosition = inputLimit;
+			}
+			final byte[] output = new byte[OUTPUT_CHUNK_SIZE];
+			final int n;
+			try {
+				n = inflater.inflate(output);
+			} catch (final DataFormatException e) {
+				throw zipException(e.getMessage(), e);
+			}
+			if (n > 0) {
+				if (gzip) {
+					crc.update(output, 0, n);
+					memberOutputSize += n;
+				}
+				return ByteBuffer.wrap(output, 0, n);
+			}
+			if (inflater.finished()) {
+				continue;
+			}
+			if (inflater.needsDictionary()) {
+				throw new ZipException("Preset dictionaries are not supported");
+			}
+			if (!inflater.needsInput()) {
+				throw new ZipException("Inflater made no progress");
+			}
+		}
+	}
+
+	private void parse(final int b) throws ZipException {
+		switch (state) {
+		case DEFLATE_DETECT:
+			scratch[scratchCount++] = (byte) b;
+			if (scratchCount == 2) {
+				// zlib header: compression method 8 and header checksum
+				final int cmf = scratch[0] & 0xff;
+				final int flg = scratch[1] & 0xff;
+				final boolean zlib = (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+				startInflate(!zlib);
+				inflater.setInput(scratch, 0, 2);
+			}
+			break;
+		case GZIP_HEADER:
+			scratch[scratchCount++] = (byte) b;
+			if (scratchCount == 10) {
+				if ((scratch[0] & 0xff) != 0x1f || (scratch[1] & 0xff) != 0x8b) {
+					throw new ZipException("Not in gzip format");
+				}
+				if (scratch[2] != 8) {
+					throw new ZipException("Unsupported gzip compression method");
+				}
+				flags = scratch[3] & 0xff;
+				scratchCount = 0;
+				nextHeaderField(State.GZIP_HEADER);
+			}
+			break;
+		case GZIP_EXTRA_LENGTH:
+			scratch[scratchCount++] = (byte) b;
+			if (scratchCount == 2) {
+				extraRemaining = (scratch[0] & 0xff) | ((scratch[1] & 0xff) << 8);
+				scratchCount = 0;
+				state = State.GZIP_EXTRA;
+				if (extraRemaining == 0) {
+					nextHeaderField(State.GZIP_EXTRA);
+				}
+			}
+			break;
+		case GZIP_EXTRA:
+			if (--extraRemaining == 0) {
+				nextHeaderField(State.GZIP_EXTRA);
+			}
+			break;
+		case GZIP_NAME:
+			if (b == 0) {
+				nextHeaderField(State.GZIP_NAME);
+			}
+			break;
+		case GZIP_COMMENT:
+			if (b == 0) {
+				nextHeaderField(State.GZIP_COMMENT);
+			}
+			break;
+		case GZIP_HEADER_CRC:
+			if (++scratchCount == 2) {
+				scratchCount = 0;
+				startInflate(true);
+			}
+			break;
+		case GZIP_TRAILER:
+			scratch[scratchCount++] = (byte) b;
+			if (scratchCount == 8) {
+				checkTrailer();
+				// More input starts another gzip member
+				scratchCount = 0;
+				state = State.GZIP_HEADER;
+			}
+			break;
+		case DONE:
+			throw new ZipException("Unexpected data after end of deflate stream");
+		default:
+			throw new IllegalStateException(state.name());
+		}
+	}
+
+	/**
+	 * Continue with the next optional header field present after the given
+	 * one, or with the deflate data.
+	 */
+	private void nextHeaderField(final State completed) {
+		final int after = completed.ordinal();
+		if (after < State.GZIP_EXTRA_LENGTH.ordinal() && (flags & FEXTRA) != 0) {
+			state = State.GZIP_EXTRA_LENGTH;
+		} else if (after < State.GZIP_NAME.ordinal() && (flags & FNAME) != 0) {
+			state = State.GZIP_NAME;
+		} else if (after < State.GZIP_COMMENT.ordinal() && (flags & FCOMMENT) != 0) {
+			state = State.GZIP_COMMENT;
+		} else if ((flags & FHCRC) != 0) {
+			state = State.GZIP_HEADER_CRC;
+		} else {
+			startInflate(true);
+		}
+	}
+
+	private void startInflate(final boolean nowrap) {
+		if (inflater == null) {
+			this.nowrap = nowrap;
+			inflater = inflaterPool.acquire(nowrap);
+		} else {
+			inflater.reset();
+		}
+		crc.reset();
+		memberOutputSize = 0;
+		state = State.INFLATE;
+	}
+
+	private void checkTrailer() throws ZipException {
+		final long expectedCrc = readUInt32(0);
+		final long expectedSize = readUInt32(4);
+		if (expectedCrc != crc.getValue()) {
+			throw new ZipException("Corrupt gzip trailer: CRC mismatch");
+		}
+		if (expectedSize != (memberOutputSize & 0xffffffffL)) {
+			throw new ZipException("Corrupt gzip trailer: size mismatch");
+		}
+	}
+
+	private long readUInt32(final int offset) {
+		return (scratch[offset] & 0xffL)
+				| ((scratch[offset + 1] & 0xffL) << 8)
+				| ((scratch[offset + 2] & 0xffL) << 16)
+				| ((scratch[offset + 3] & 0xffL) << 24);
+	}
+
+	/**
+	 * Check that the compressed content is complete. Call at the end of the
+	 * body.
+	 */
+	public void finish() throws ZipException {
+		final boolean complete;
+		if (!anyInput) {
+			// Empty body, e.g. for HEAD requests
+			complete = true;
+		} else if (gzip) {
+			// At least one member must have been read completely
+			complete = state == State.GZIP_HEADER && scratchCount == 0 && inflater != null;
+		} else {
+			complete = state == State.DONE;
+		}
+		if (!complete) {
+			throw new ZipException("Unexpected end of compressed content");
+		}
+	}
+
+	private static ZipException zipException(final String message, final Throwable cause) {
+		final ZipException e = new ZipException(message);
+		e.initCause(cause);
+		return e;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		final Inflater i = inflater;
+		inflater = null;
+		if (i != null) {
+			inflaterPool.release(i, nowrap);
+		}
+	}
+}
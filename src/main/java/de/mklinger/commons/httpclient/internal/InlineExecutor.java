@@ -0,0 +1,22 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.util.concurrent.Executor;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public final class InlineExecutor implements Executor {
+	private static final InlineExecutor INSTANCE = new InlineExecutor();
+
+	public static InlineExecutor getInstance() {
+		return INSTANCE;
+	}
+
+	private InlineExecutor() {
+	}
+
+	@Override
+	public void execute(final Runnable command) {
+		command.run();
+	}
+}
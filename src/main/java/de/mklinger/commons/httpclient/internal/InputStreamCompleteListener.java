@@ -0,0 +1,209 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+
+/**
+ * Exposes the body as an {@link InputStream} that can be read while the body
+ * is received. Content chunks are copied into a queue bounded by the given
+ * number of chunks. If the queue is full, no more content is read from the
+ * connection until the reader has taken a chunk.
+ *
+ * <p>Closing the stream before the end of the body aborts the exchange.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class InputStreamCompleteListener implements StreamingBodyCompleteListener<InputStream> {
+	private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+	private final int maxQueuedChunks;
+	private final Object lock = new Object();
+	private final Deque<ByteBuffer> chunks = new ArrayDeque<>();
+	private final BodyInputStream inputStream = new BodyInputStream();
+	private CompletableFuture<Void> pendingDemand;
+	private boolean completed;
+	private Throwable error;
+	private boolean closed;
+	private volatile Consumer<Throwable> abortHandler;
+
+	public InputStreamCompleteListener(final int maxQueuedChunks) {
+		if (maxQueuedChunks < 1) {
+			throw new IllegalArgumentException("Invalid max queued chunks: " + maxQueuedChunks);
+		}
+		this.maxQueuedChunks = maxQueuedChunks;
+	}
+
+	@Override
+	public CompletionStage<?> onNextAsync(final ByteBuffer content) throws Exception {
+		final ByteBuffer copy = ByteBuffer.allocate(content.remaining());
+		copy.put(content).flip();
+
+		synchronized (lock) {
+			if (closed) {
+				final CompletableFuture<Void> failed = new CompletableFuture<>();
+				failed.completeExceptionally(new CancellationException("Input stream closed"));
+				return failed;
+			}
+			chunks.add(copy);
+			lock.notifyAll();
+			if (chunks.size() < maxQueuedChunks) {
+				return DONE;
+			}
+			pendingDemand = new CompletableFuture<>();
+			return pendingDemand;
+		}
+	}
+
+	@Override
+	public void onComplete() throws Exception {
+		synchronized (lock) {
+			completed = true;
+			lock.notifyAll();
+		}
+	}
+
+	@Override
+	public void onError(final Throwable error) {
+		synchronized (lock) {
+			if (this.error == null) {
+				this.error = error;
+			}
+			lock.notifyAll();
+		}
+	}
+
+	@Override
+	public void setAbortHandler(final Consumer<Throwable> abortHandler) {
+		this.abortHandler = abortHandler;
+	}
+
+	@Override
+	public InputStream getBody() throws Exception {
+		return inputStream;
+	}
+
+	@Override
+	public void close() throws Exception {
+		// The reader owns the input stream
+	}
+
+	private class BodyInputStream extends InputStream {
+		private ByteBuffer current;
+
+		@Override
+		public int read() throws IOException {
+			final ByteBuffer buffer = nextBuffer();
+			if (buffer == null) {
+				return -1;
+			}
+			return buffer.get() & 0xff;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			if (off < 0 || len < 0 || len > b.length - off) {
+				throw new IndexOutOfBoundsException();
+			}
+			if (len == 0) {
+				return 0;
+			}
+			final ByteBuffer buffer = nextBuffer();
+			if (buffer == null) {
+				return -1;
+			}
+			final int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+		@Override
+		public int available() throws IOException {
+			int available = current == null ? 0 : current.remaining();
+			synchronized (lock) {
+				for (final ByteBuffer chunk : chunks) {
+					available += chunk.remaining();
+				}
+			}
+			return available;
+		}
+
+		/**
+		 * Get the buffer to read from, blocking until content is available.
+		 * @return The buffer or <code>null</code> at the end of the body
+		 */
+		private ByteBuffer nextBuffer() throws IOException {
+			if (current != null && current.hasRemaining()) {
+				return current;
+			}
+			current = null;
+			final CompletableFuture<Void> demand;
+			synchronized (lock) {
+				while (true) {
+					if (closed) {
+						throw new IOException("Stream closed");
+					}
+					if (error != null) {
+						throw new IOException(error.getMessage(), error);
+					}
+					if (!chunks.isEmpty()) {
+						current = chunks.poll();
+						break;
+					}
+					if (completed) {
+						return null;
+					}
+					try {
+						lock.wait();
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException();
+					}
+				}
+				demand = pendingDemand;
+				pendingDemand = null;
+			}
+			if (demand != null) {
+				// Outside of the lock, as this may read the next chunk inline
+				demand.complete(null);
+			}
+			return current;
+		}
+
+		@Override
+		public void close() throws IOException {
+			final CompletableFuture<Void> demand;
+			final boolean abort;
+			synchronized (lock) {
+				if (closed) {
+					return;
+				}
+				closed = true;
+				chunks.clear();
+				current = null;
+				demand = pendingDemand;
+				pendingDemand = null;
+				abort = !completed && error == null;
+				lock.notifyAll();
+			}
+			final CancellationException failure = new CancellationException("Input stream closed");
+			if (demand != null) {
+				demand.completeExceptionally(failure);
+			}
+			final Consumer<Throwable> a = abortHandler;
+			abortHandler = null;
+			if (abort && a != null) {
+				// Without pending demand, the exchange would wait for content
+				// that is never read
+				a.accept(failure);
+			}
+		}
+	}
+}
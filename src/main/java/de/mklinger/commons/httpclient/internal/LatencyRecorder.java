@@ -0,0 +1,132 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.mklinger.commons.httpclient.HttpClientMetrics;
+
+/**
+ * Lock-free latency histogram. Values are recorded in microseconds into
+ * log-linear buckets: Each power of two range is split into
+ * {@value #SUB_BUCKETS} sub-buckets. All counters are striped, so concurrent
+ * recording does not contend.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class LatencyRecorder {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** Values above 2^40 microseconds (about 12 days) are clamped. */
+	private static final int MAX_EXPONENT = 40;
+	private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+	private static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final LongAdder[] buckets;
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+	public LatencyRecorder() {
+		buckets = new LongAdder[BUCKET_COUNT];
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	public void record(final long nanos) {
+		final long micros = Math.min(Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0L), MAX_VALUE);
+		buckets[bucketIndex(micros)].increment();
+		sum.add(micros);
+		max.accumulate(micros);
+	}
+
+	static int bucketIndex(final long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		final int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+	}
+
+	/** Largest value that falls into the bucket with the given index. */
+	static long bucketUpperBound(final int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		final int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+		final int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	public HttpClientMetrics.Histogram snapshot() {
+		final long[] counts = new long[buckets.length];
+		long count = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			counts[i] = buckets[i].sum();
+			count += counts[i];
+		}
+		return new Snapshot(counts, count, sum.sum(), max.get());
+	}
+
+	private static class Snapshot implements HttpClientMetrics.Histogram {
+		private final long[] counts;
+		private final long count;
+		private final long sumMicros;
+		private final long maxMicros;
+
+		public Snapshot(final long[] counts, final long count, final long sumMicros, final long maxMicros) {
+			this.counts = counts;
+			this.count = count;
+			this.sumMicros = sumMicros;
+			this.maxMicros = maxMicros;
+		}
+
+		@Override
+		public long count() {
+			return count;
+		}
+
+		@Override
+		public Duration mean() {
+			if (count == 0) {
+				return Duration.ZERO;
+			}
+			return micros(sumMicros / count);
+		}
+
+		@Override
+		public Duration max() {
+			return micros(maxMicros);
+		}
+
+		@Override
+		public Duration percentile(final double percentile) {
+			if (percentile < 0 || percentile > 100 || Double.isNaN(percentile)) {
+				throw new IllegalArgumentException("Invalid percentile: " + percentile);
+			}
+			if (count == 0) {
+				return Duration.ZERO;
+			}
+			final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return micros(Math.min(bucketUpperBound(i), maxMicros));
+				}
+			}
+			return micros(maxMicros);
+		}
+
+		private static Duration micros(final long micros) {
+			return Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count + ", mean=" + mean() + ", p50=" + percentile(50) + ", p99=" + percentile(99) + ", max=" + max();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.eclipse.jetty.client.util.AbstractTypedContentProvider;
+
+import de.mklinger.commons.httpclient.HttpRequest;
+
+/**
+ * Provides a region of a file as slices of memory-mapped windows. Content is
+ * read by the operating system directly from the page cache, without
+ * copying it into heap buffers first. Windows are mapped lazily while
+ * iterating.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class MappedFileBodyProvider extends AbstractTypedContentProvider implements HttpRequest.BodyProvider {
+	private static final long DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private final Path filePath;
+	private final long offset;
+	private final long length;
+	private final int chunkSize;
+
+	public MappedFileBodyProvider(final String contentType, final Path filePath, final long offset, final long length, final int chunkSize) throws IOException {
+		super(contentType);
+		if (offset < 0 || length < 0) {
+			throw new IllegalArgumentException("Invalid region: offset " + offset + ", length " + length);
+		}
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+		}
+		final long size = Files.size(filePath);
+		if (offset + length > size) {
+			throw new IllegalArgumentException("Region exceeds file size " + size + ": offset " + offset + ", length " + length);
+		}
+		this.filePath = filePath;
+		this.offset = offset;
+		this.length = length;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public long getLength() {
+		return length;
+	}
+
+	@Override
+	public boolean isReproducible() {
+		return true;
+	}
+
+	@Override
+	public Iterator<ByteBuffer> iterator() {
+		return new MappedFileIterator();
+	}
+
+	private class MappedFileIterator implements Iterator<ByteBuffer>, Closeable {
+		private final long windowSize = Math.max(DEFAULT_WINDOW_SIZE / chunkSize, 1) * chunkSize;
+		private FileChannel channel;
+		private MappedByteBuffer window;
+		private long position;
+
+		@Override
+		public boolean hasNext() {
+			return position < length;
+		}
+
+		@Override
+		public ByteBuffer next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			try {
+				if (window == null || !window.hasRemaining()) {
+					mapNextWindow();
+				}
+				final ByteBuffer chunk = window.slice();
+				chunk.limit(Math.min(chunkSize, chunk.remaining()));
+				window.position(window.position() + chunk.remaining());
+				position += chunk.remaining();
+				return chunk;
+			} catch (final IOException e) {
+				close();
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private void mapNextWindow() throws IOException {
+			if (channel == null) {
+				channel = FileChannel.open(filePath, StandardOpenOption.READ);
+			}
+			final long size = Math.min(Math.min(windowSize, length - position), Integer.MAX_VALUE);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, offset + position, size);
+		}
+
+		@Override
+		public void close() {
+			window = null;
+			final FileChannel c = channel;
+			channel = null;
+			if (c != null) {
+				try {
+					c.close();
+				} catch (final IOException e) {
+					// Mappings stay valid after closing the channel
+				}
+			}
+		}
+	}
+}
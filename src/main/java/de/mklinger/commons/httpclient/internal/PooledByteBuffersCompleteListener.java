@@ -0,0 +1,108 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+
+import de.mklinger.commons.httpclient.HttpResponse;
+import de.mklinger.commons.httpclient.PooledByteBuffers;
+
+/**
+ * Collects the body into pooled buffers. Content is copied exactly once, from
+ * the network buffer into a pooled buffer. Pooled buffers are filled up before
+ * the next one is acquired.
+ *
+ * <p>Until {@link #getBody()} is called, the buffers are owned by this
+ * listener and released on {@link #close()}. Afterwards, they are owned by
+ * the returned {@link PooledByteBuffers}.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class PooledByteBuffersCompleteListener implements HttpResponse.BodyCompleteListener<PooledByteBuffers> {
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	private final ByteBufferPool byteBufferPool;
+	private final List<ByteBuffer> buffers = new ArrayList<>();
+	private long size;
+	private PooledByteBuffersImpl body;
+
+	public PooledByteBuffersCompleteListener(final ByteBufferPool byteBufferPool) {
+		this.byteBufferPool = byteBufferPool;
+	}
+
+	@Override
+	public void onNext(final ByteBuffer content) throws Exception {
+		size += content.remaining();
+		while (content.hasRemaining()) {
+			ByteBuffer buffer = buffers.isEmpty() ? null : buffers.get(buffers.size() - 1);
+			if (buffer == null || BufferUtil.space(buffer) == 0) {
+				buffer = byteBufferPool.acquire(BUFFER_SIZE, false);
+				buffers.add(buffer);
+			}
+			BufferUtil.append(buffer, content);
+		}
+	}
+
+	@Override
+	public void onComplete() throws Exception {
+		// Do nothing
+	}
+
+	@Override
+	public PooledByteBuffers getBody() throws Exception {
+		if (body == null) {
+			body = new PooledByteBuffersImpl(byteBufferPool, buffers, size);
+		}
+		return body;
+	}
+
+	@Override
+	public void close() throws Exception {
+		if (body == null) {
+			buffers.forEach(byteBufferPool::release);
+			buffers.clear();
+		}
+	}
+
+	private static class PooledByteBuffersImpl implements PooledByteBuffers {
+		private final ByteBufferPool byteBufferPool;
+		private final List<ByteBuffer> buffers;
+		private final long size;
+		private final AtomicBoolean closed = new AtomicBoolean(false);
+
+		public PooledByteBuffersImpl(final ByteBufferPool byteBufferPool, final List<ByteBuffer> buffers, final long size) {
+			this.byteBufferPool = byteBufferPool;
+			this.buffers = buffers;
+			this.size = size;
+		}
+
+		@Override
+		public List<ByteBuffer> buffers() {
+			if (closed.get()) {
+				throw new IllegalStateException("Closed");
+			}
+			final List<ByteBuffer> views = new ArrayList<>(buffers.size());
+			for (final ByteBuffer buffer : buffers) {
+				views.add(buffer.asReadOnlyBuffer());
+			}
+			return Collections.unmodifiableList(views);
+		}
+
+		@Override
+		public long size() {
+			return size;
+		}
+
+		@Override
+		public void close() {
+			if (closed.compareAndSet(false, true)) {
+				buffers.forEach(byteBufferPool::release);
+			}
+		}
+	}
+}
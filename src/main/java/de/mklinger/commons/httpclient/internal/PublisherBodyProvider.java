@@ -0,0 +1,135 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+import org.eclipse.jetty.util.Callback;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Body provider fed by a Reactive Streams {@link Publisher}. Demand is
+ * requested up to the maximum number of pending offers, and one more chunk
+ * is requested whenever an offered chunk was written.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class PublisherBodyProvider extends AsyncBodyProvider {
+	private static final Logger LOG = LoggerFactory.getLogger(PublisherBodyProvider.class);
+
+	private final Publisher<ByteBuffer> publisher;
+	private final AtomicBoolean started = new AtomicBoolean(false);
+
+	public PublisherBodyProvider(final String contentType, final long contentLength, final int maxPendingOffers, final Publisher<ByteBuffer> publisher) {
+		super(contentType, contentLength, maxPendingOffers);
+		this.publisher = publisher;
+	}
+
+	@Override
+	public void start(final DeferredContentProvider target, final Request jettyRequest) {
+		if (!started.compareAndSet(false, true)) {
+			throw new IllegalStateException("Body provider can only be sent once");
+		}
+		final BodySubscriber subscriber = new BodySubscriber(target, jettyRequest);
+		jettyRequest.onRequestFailure((request, failure) -> subscriber.abort(failure));
+		publisher.subscribe(subscriber);
+	}
+
+	private class BodySubscriber implements Subscriber<ByteBuffer> {
+		private final DeferredContentProvider target;
+		private final Request jettyRequest;
+		private final AtomicBoolean terminated = new AtomicBoolean(false);
+		private Subscription subscription;
+
+		private final Callback offerCallback = new Callback() {
+			@Override
+			public void succeeded() {
+				request(1);
+			}
+
+			@Override
+			public void failed(final Throwable e) {
+				abort(e);
+			}
+		};
+
+		public BodySubscriber(final DeferredContentProvider target, final Request jettyRequest) {
+			this.target = target;
+			this.jettyRequest = jettyRequest;
+		}
+
+		@Override
+		public void onSubscribe(final Subscription subscription) {
+			synchronized (this) {
+				if (this.subscription != null) {
+					subscription.cancel();
+					return;
+				}
+				this.subscription = subscription;
+				if (terminated.get()) {
+					// The request failed before the publisher subscribed
+					subscription.cancel();
+					return;
+				}
+			}
+			request(getMaxPendingOffers());
+		}
+
+		// Subscription calls must be serial
+		private synchronized void request(final long n) {
+			if (!terminated.get()) {
+				subscription.request(n);
+			}
+		}
+
+		private synchronized void cancel() {
+			if (subscription != null) {
+				subscription.cancel();
+			}
+		}
+
+		@Override
+		public void onNext(final ByteBuffer chunk) {
+			LOG.debug("Offering byte buffer with {} bytes", chunk.remaining());
+			if (!target.offer(chunk, offerCallback)) {
+				abort(new IllegalStateException("Failed to offer content to deferred content provider"));
+			}
+		}
+
+		/**
+		 * Fail the request for a reason other than the publisher, which is
+		 * still active and must be cancelled.
+		 */
+		private void abort(final Throwable e) {
+			if (terminated.compareAndSet(false, true)) {
+				LOG.debug("Error", e);
+				cancel();
+				jettyRequest.abort(e);
+				target.close();
+			}
+		}
+
+		@Override
+		public void onError(final Throwable e) {
+			// The subscription is already cancelled, rule 2.3 forbids calling it
+			if (terminated.compareAndSet(false, true)) {
+				LOG.debug("Error", e);
+				jettyRequest.abort(e);
+				target.close();
+			}
+		}
+
+		@Override
+		public void onComplete() {
+			if (terminated.compareAndSet(false, true)) {
+				LOG.debug("Done");
+				target.close();
+			}
+		}
+	}
+}
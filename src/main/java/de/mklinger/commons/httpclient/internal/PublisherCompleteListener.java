@@ -0,0 +1,212 @@
+package de.mklinger.commons.httpclient.internal;
+
+import static java.util.Objects.requireNonNull;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Exposes the body as a single-subscriber {@link Publisher}. Each content
+ * chunk is copied into a buffer owned by the subscriber. The next chunk is
+ * only read from the connection after the current one was delivered, and
+ * chunks are only delivered on demand, so subscriber demand reaches HTTP/2
+ * flow control.
+ *
+ * <p>Signals are emitted from a drain loop, so the subscriber is never
+ * called concurrently. Cancelling the subscription aborts the exchange, even
+ * if no chunk is pending.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class PublisherCompleteListener implements StreamingBodyCompleteListener<Publisher<List<ByteBuffer>>>, Publisher<List<ByteBuffer>> {
+	private final AtomicReference<Subscriber<? super List<ByteBuffer>>> subscriber = new AtomicReference<>();
+	private final AtomicLong demand = new AtomicLong();
+	private final AtomicInteger wip = new AtomicInteger();
+
+	private volatile List<ByteBuffer> pendingItem;
+	private volatile CompletableFuture<Void> pendingItemDelivered;
+	private volatile boolean completed;
+	private volatile Throwable error;
+	private volatile boolean cancelled;
+	private volatile boolean terminated;
+	private volatile Consumer<Throwable> abortHandler;
+
+	@Override
+	public CompletionStage<?> onNextAsync(final ByteBuffer content) throws Exception {
+		if (cancelled || terminated) {
+			final CompletableFuture<Void> failed = new CompletableFuture<>();
+			failed.completeExceptionally(new CancellationException("Subscription cancelled"));
+			return failed;
+		}
+		final ByteBuffer copy = ByteBuffer.allocate(content.remaining());
+		copy.put(content).flip();
+
+		final CompletableFuture<Void> delivered = new CompletableFuture<>();
+		pendingItemDelivered = delivered;
+		pendingItem = Collections.singletonList(copy);
+		drain();
+		return delivered;
+	}
+
+	@Override
+	public void onComplete() throws Exception {
+		completed = true;
+		drain();
+	}
+
+	@Override
+	public void onError(final Throwable error) {
+		this.error = error;
+		drain();
+	}
+
+	@Override
+	public void setAbortHandler(final Consumer<Throwable> abortHandler) {
+		this.abortHandler = abortHandler;
+	}
+
+	@Override
+	public Publisher<List<ByteBuffer>> getBody() throws Exception {
+		return this;
+	}
+
+	@Override
+	public void close() throws Exception {
+		// The subscriber may still be draining, nothing to release
+	}
+
+	@Override
+	public void subscribe(final Subscriber<? super List<ByteBuffer>> s) {
+		requireNonNull(s);
+		if (!subscriber.compareAndSet(null, s)) {
+			s.onSubscribe(new Subscription() {
+				@Override
+				public void request(final long n) {
+				}
+
+				@Override
+				public void cancel() {
+				}
+			});
+			s.onError(new IllegalStateException("Only a single subscriber is supported"));
+			return;
+		}
+		s.onSubscribe(new Subscription() {
+			@Override
+			public void request(final long n) {
+				if (n <= 0) {
+					error = new IllegalArgumentException("Non-positive request: " + n);
+					cancelled = true;
+				} else {
+					addDemand(n);
+				}
+				drain();
+			}
+
+			@Override
+			public void cancel() {
+				cancelled = true;
+				drain();
+			}
+		});
+		drain();
+	}
+
+	private void addDemand(final long n) {
+		long current;
+		long next;
+		do {
+			current = demand.get();
+			if (current == Long.MAX_VALUE) {
+				return;
+			}
+			next = current + n;
+			if (next < 0) {
+				next = Long.MAX_VALUE;
+			}
+		} while (!demand.compareAndSet(current, next));
+	}
+
+	private void drain() {
+		if (wip.getAndIncrement() != 0) {
+			return;
+		}
+		int missed = 1;
+		do {
+			final Subscriber<? super List<ByteBuffer>> s = subscriber.get();
+			if (terminated) {
+				// A chunk offered after termination must not stall the exchange
+				failPending(new CancellationException("Subscription cancelled"));
+			} else if (s != null) {
+				drain(s);
+			}
+			missed = wip.addAndGet(-missed);
+		} while (missed != 0);
+	}
+
+	private void drain(final Subscriber<? super List<ByteBuffer>> s) {
+		final Throwable e = error;
+		if (cancelled || e != null) {
+			terminated = true;
+			final Throwable failure = e != null ? e : new CancellationException("Subscription cancelled");
+			failPending(failure);
+			if (cancelled) {
+				abort(failure);
+			}
+			if (e != null) {
+				s.onError(e);
+			}
+			return;
+		}
+
+		final List<ByteBuffer> item = pendingItem;
+		if (item != null && demand.get() > 0) {
+			final CompletableFuture<Void> delivered = pendingItemDelivered;
+			pendingItem = null;
+			pendingItemDelivered = null;
+			if (demand.get() != Long.MAX_VALUE) {
+				demand.decrementAndGet();
+			}
+			s.onNext(item);
+			// May synchronously lead to the next onNextAsync() call
+			delivered.complete(null);
+		}
+
+		if (pendingItem == null && completed) {
+			terminated = true;
+			s.onComplete();
+		}
+	}
+
+	private void failPending(final Throwable failure) {
+		final CompletableFuture<Void> delivered = pendingItemDelivered;
+		pendingItem = null;
+		pendingItemDelivered = null;
+		if (delivered != null) {
+			// Fails the exchange, if still running
+			delivered.completeExceptionally(failure);
+		}
+	}
+
+	private void abort(final Throwable failure) {
+		final Consumer<Throwable> a = abortHandler;
+		abortHandler = null;
+		if (a != null && !completed) {
+			// Without a pending chunk, the exchange would wait for content
+			// that is never read
+			a.accept(failure);
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package de.mklinger.commons.httpclient.internal;
+
+import static java.util.Objects.requireNonNull;
+
+import de.mklinger.commons.httpclient.HttpHeaders;
+import de.mklinger.commons.httpclient.HttpResponse.BodyCompleteListener;
+import de.mklinger.commons.httpclient.HttpResponse.BodyHandler;
+
+/**
+ * Marks a body handler that receives the body without decompression.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class RawBodyHandler<T> implements BodyHandler<T> {
+	private final BodyHandler<T> delegate;
+
+	public RawBodyHandler(final BodyHandler<T> delegate) {
+		this.delegate = requireNonNull(delegate);
+	}
+
+	@Override
+	public BodyCompleteListener<T> apply(final int statusCode, final HttpHeaders responseHeaders) {
+		return delegate.apply(statusCode, responseHeaders);
+	}
+}
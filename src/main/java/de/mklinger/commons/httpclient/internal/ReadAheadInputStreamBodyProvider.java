@@ -0,0 +1,77 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Body provider that reads an {@link InputStream} on the given executor, so
+ * that blocking reads never run on network threads. Chunks are read ahead up
+ * to the maximum number of pending offers. The stream is closed at the end
+ * of the content or on errors.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class ReadAheadInputStreamBodyProvider extends ChunkIteratorBodyProvider {
+	public ReadAheadInputStreamBodyProvider(final String contentType, final InputStream inputStream, final Executor executor, final int chunkSize, final int maxPendingOffers) {
+		super(contentType, -1, maxPendingOffers, new ReadingIterator(inputStream, executor, chunkSize));
+	}
+
+	/**
+	 * Iterator that reads one chunk per future. The filler only calls
+	 * {@link #hasNext()} after the previous future completed.
+	 */
+	private static class ReadingIterator implements Iterator<CompletableFuture<ByteBuffer>>, AutoCloseable {
+		private final InputStream inputStream;
+		private final Executor executor;
+		private final int chunkSize;
+		private volatile boolean eof;
+
+		public ReadingIterator(final InputStream inputStream, final Executor executor, final int chunkSize) {
+			if (chunkSize <= 0) {
+				throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+			}
+			this.inputStream = inputStream;
+			this.executor = executor;
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !eof;
+		}
+
+		@Override
+		public CompletableFuture<ByteBuffer> next() {
+			if (eof) {
+				throw new NoSuchElementException();
+			}
+			return CompletableFuture.supplyAsync(this::read, executor);
+		}
+
+		private ByteBuffer read() {
+			final byte[] chunk = new byte[chunkSize];
+			try {
+				final int n = inputStream.read(chunk);
+				if (n == -1) {
+					eof = true;
+					return ByteBuffer.allocate(0);
+				}
+				return ByteBuffer.wrap(chunk, 0, n);
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			eof = true;
+			inputStream.close();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mklinger.commons.httpclient.EventListener;
+import de.mklinger.commons.httpclient.HttpRequest;
+
+/**
+ * Event listener that logs and swallows exceptions of its delegate, so that a
+ * faulty listener cannot break an exchange.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class SafeEventListener implements EventListener {
+	private static final Logger LOG = LoggerFactory.getLogger(SafeEventListener.class);
+
+	private final EventListener delegate;
+
+	public SafeEventListener(final EventListener delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void dnsStart(final String host, final long nanoTime) {
+		try {
+			delegate.dnsStart(host, nanoTime);
+		} catch (final Throwable e) {
+			LOG.warn("Error in event listener", e);
+		}
+	}
+
+	@Override
+	public void dnsEnd(final String host, final List<InetSocketAddress> addresses, final Throwable failure, final long nanoTime) {
+		try {
+			delegate.dnsEnd(host, addresses, failure, nanoTime);
+		} catch (final Throwable e) {
+			LOG.warn("Error in event listener", e);
+		}
+	}
+
+	@Override
+	public void tlsHandshakeStart(final String peerHost, final int peerPort, final long nanoTime) {
+		try {
+			delegate.tlsHandshakeStart(peerHost, peerPort, nanoTime);
+		} catch (final Throwable e) {
+			LOG.warn("Error in event listener", e);
+		}
+	}
+
+	@Override
+	public void tlsHandshakeEnd(final String peerHost, final int peerPort, final Throwable failure, final long nanoTime) {
+		try {
+			delegate.tlsHandshakeEnd(peerHost, peerPort, failure, nanoTime);
+		} catch (final Throwable e) {
+			LOG.warn("Error in event listener", e);
+		}
+	}
+
+	@Override
+	public void connectionOpened(final SocketAddress remoteAddress, final long nanoTime) {
+		try {
+			delegate.connectionOpened(remoteAddress, nanoTime);
+		} catch (final Throwable e) {
+			LOG.warn("Error in event listener", e);
+		}
+	}
+
+	@Override
+	public void connectionClosed(final SocketAddress remoteAddress, final long nanoTime) {
+		try {
+			delegate.connectionClosed(remoteAddress, nanoTime);
+		} catch (final Throwable e) {
+			LOG.warn("Error in event listener", e);
+		}
+	}
+
+	@Override
+	public void requestQueued(final HttpRequest request, final long nanoTime) {
+		try {
+			delegate.requestQueued(request, nanoTime);
+		} catch (final Throwable e) {
+			LOG.warn("Error in event listener", e);
+		}
+	}
+
+	@Override
+	public void requestBegin(final HttpRequest request, final long nanoTime) {
+		try {
+			delegate.requestBegin(request, nanoTime);
+		} catch (final Throwable e) {
+			LOG.warn("Error in event listener", e);
+		}
+	}
+
+	@Override
+	public void requestHeadersSent(final HttpRequest request, final long nanoTime) {
+		try {
+			delegate.requestHeadersSent(request, nanoTime);
+		} catch (final Throwable e) {
+			LOG.warn("Error in event listener", e);
+		}
+	}
+
+	@Override
+	public void requestSent(final HttpRequest request, final long nanoTime) {
+		try {
+			delegate.requestSent(request, nanoTime);
+		} catch (final Throwable e) {
+			LOG.warn("Error in event listener", e);
+		}
+	}
+
+	@Override
+	public void responseHeadersReceived(final HttpRequest request, final int statusCode, final long nanoTime) {
+		try {
+			delegate.responseHeadersReceived(request, statusCode, nanoTime);
+		} catch (final Throwable e) {
+			LOG.warn("Error in event listener", e);
+		}
+	}
+
+	@Override
+	public void responseFirstByte(final HttpRequest request, final long nanoTime) {
+		try {
+			delegate.responseFirstByte(request, nanoTime);
+		} catch (final Throwable e) {
+			LOG.warn("Error in event listener", e);
+		}
+	}
+
+	@Override
+	public void requestCompleted(final HttpRequest request, final Throwable failure, final long nanoTime) {
+		try {
+			delegate.requestCompleted(request, failure, nanoTime);
+		} catch (final Throwable e) {
+			LOG.warn("Error in event listener", e);
+		}
+	}
+}
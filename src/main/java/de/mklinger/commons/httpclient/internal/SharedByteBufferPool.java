@@ -0,0 +1,21 @@
+package de.mklinger.commons.httpclient.internal;
+
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.ByteBufferPool;
+
+/**
+ * Buffer pool shared by all clients for body buffers that are handed over to
+ * callers.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public final class SharedByteBufferPool {
+	private static final ByteBufferPool INSTANCE = new ArrayByteBufferPool();
+
+	private SharedByteBufferPool() {
+	}
+
+	public static ByteBufferPool getInstance() {
+		return INSTANCE;
+	}
+}
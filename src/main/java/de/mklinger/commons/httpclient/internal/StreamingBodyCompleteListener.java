@@ -0,0 +1,28 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.util.function.Consumer;
+
+import de.mklinger.commons.httpclient.HttpResponse.AsyncBodyCompleteListener;
+
+/**
+ * Body complete listener with a body that is available as soon as the
+ * response headers are received, and that is read while the content
+ * arrives. The response is completed right after the headers.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public interface StreamingBodyCompleteListener<T> extends AsyncBodyCompleteListener<T> {
+	/**
+	 * Called if the exchange fails after the body was handed out.
+	 */
+	void onError(Throwable error);
+
+	/**
+	 * Called before the body is handed out, with a callback that aborts the
+	 * exchange. Listeners call it when the consumer of the body gives up, so
+	 * that the response does not wait for content that is never read. The
+	 * default implementation ignores the callback.
+	 */
+	default void setAbortHandler(final Consumer<Throwable> abortHandler) {
+	}
+}
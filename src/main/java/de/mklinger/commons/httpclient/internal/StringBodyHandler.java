@@ -27,15 +27,18 @@ public final class StringBodyHandler implements HttpResponse.BodyHandler<String>
 	@Override
 	public BodyCompleteListener<String> apply(final int statusCode, final HttpHeaders responseHeaders) {
 		final Charset charset = findCharset(responseHeaders);
-		return new StringCompleteListener(charset);
+		return new StringCompleteListener(charset, ByteArrayCompleteListener.contentLength(responseHeaders));
 	}
 
-	private Charset findCharset(final HttpHeaders responseHeaders) {
+	/**
+	 * @return The charset of the Content-Type header or UTF-8
+	 */
+	public static Charset findCharset(final HttpHeaders responseHeaders) {
 		final Optional<String> contentType = responseHeaders.firstValue("content-type");
 		return findCharset(contentType);
 	}
 
-	private Charset findCharset(final Optional<String> contentType) {
+	private static Charset findCharset(final Optional<String> contentType) {
 		if (contentType.isPresent()) {
 			return findCharset(contentType.get());
 		} else {
@@ -44,7 +47,7 @@ public final class StringBodyHandler implements HttpResponse.BodyHandler<String>
 		}
 	}
 
-	private Charset findCharset(final String contentType) {
+	private static Charset findCharset(final String contentType) {
 		final Matcher matcher = CHARSET_PATTERN.matcher(contentType);
 		if (!matcher.matches()) {
 			LOG.warn("No charset parameter present in Content-Type header. Assuming charset {}", DEFAULT_CHARSET);
@@ -55,7 +58,7 @@ public final class StringBodyHandler implements HttpResponse.BodyHandler<String>
 		}
 	}
 
-	private Charset charsetForName(final String cs) {
+	private static Charset charsetForName(final String cs) {
 		try {
 			return Charset.forName(cs);
 		} catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
@@ -14,8 +14,15 @@ public class StringCompleteListener implements HttpResponse.BodyCompleteListener
 	private volatile String body;
 
 	public StringCompleteListener(final Charset charset) {
+		this(charset, -1);
+	}
+
+	/**
+	 * @param expectedLength The expected body length in bytes or -1 if unknown
+	 */
+	public StringCompleteListener(final Charset charset, final long expectedLength) {
 		this.charset = charset;
-		this.byteArrayCompleteListener = new ByteArrayCompleteListener();
+		this.byteArrayCompleteListener = new ByteArrayCompleteListener(expectedLength);
 	}
 
 	@Override
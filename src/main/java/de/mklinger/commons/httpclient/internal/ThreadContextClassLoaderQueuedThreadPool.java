@@ -1,5 +1,6 @@
 package de.mklinger.commons.httpclient.internal;
 
+import java.util.concurrent.ThreadFactory;
 import java.util.function.Supplier;
 
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
@@ -9,14 +10,31 @@ import org.eclipse.jetty.util.thread.QueuedThreadPool;
  */
 public class ThreadContextClassLoaderQueuedThreadPool extends QueuedThreadPool {
 	private final ClassLoader classLoader;
+	private final ThreadFactory threadFactory;
 
 	public ThreadContextClassLoaderQueuedThreadPool(ClassLoader classLoader) {
+		this(classLoader, null);
+	}
+
+	/**
+	 * @param threadFactory factory for pool threads, or {@code null} to use
+	 *        regular platform threads
+	 */
+	public ThreadContextClassLoaderQueuedThreadPool(ClassLoader classLoader, ThreadFactory threadFactory) {
 		this.classLoader = classLoader;
+		this.threadFactory = threadFactory;
 	}
 
 	@Override
 	public Thread newThread(Runnable runnable) {
-		return getWithContextClassLoader(classLoader, () -> super.newThread(runnable));
+		return getWithContextClassLoader(classLoader, () -> {
+			if (threadFactory != null) {
+				final Thread thread = threadFactory.newThread(runnable);
+				thread.setContextClassLoader(classLoader);
+				return thread;
+			}
+			return super.newThread(runnable);
+		});
 	}
 
 	private <T> T getWithContextClassLoader(ClassLoader classLoader, Supplier<T> s) {
@@ -28,4 +46,4 @@ public class ThreadContextClassLoaderQueuedThreadPool extends QueuedThreadPool {
 			Thread.currentThread().setContextClassLoader(old);
 		}
 	}
-}
\ No newline at end of file
+}
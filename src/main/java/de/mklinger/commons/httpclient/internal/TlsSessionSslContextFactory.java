@@ -0,0 +1,167 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.net.Socket;
+import java.security.KeyStore;
+import java.security.cert.CRL;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+import org.conscrypt.Conscrypt;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+
+/**
+ * Client SSL context factory that configures TLS session resumption and
+ * counts resumed and full handshakes. Session cache size and timeout apply
+ * to the client session context, which Jetty only configures for servers.
+ *
+ * <p>A resumed handshake does not authenticate the server again, so the
+ * trust manager is only called for full handshakes. Trust managers are
+ * wrapped to record the engines that did a full handshake. The outcome is
+ * counted by the {@link SslHandshakeListener} returned by
+ * {@link #getResumptionListener()}, which must be added as a bean to the
+ * connector.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class TlsSessionSslContextFactory extends SslContextFactory.Client {
+	private final Map<SSLEngine, Boolean> fullHandshakeEngines = Collections.synchronizedMap(new WeakHashMap<>());
+	private final LongAdder resumedHandshakes = new LongAdder();
+	private final LongAdder fullHandshakes = new LongAdder();
+	private boolean sessionTickets = true;
+
+	public boolean isSessionTickets() {
+		return sessionTickets;
+	}
+
+	/**
+	 * @param sessionTickets Whether to resume TLS 1.2 sessions with session
+	 *        tickets. TLS 1.3 always uses tickets.
+	 */
+	public void setSessionTickets(final boolean sessionTickets) {
+		this.sessionTickets = sessionTickets;
+	}
+
+	public long getResumedHandshakes() {
+		return resumedHandshakes.sum();
+	}
+
+	public long getFullHandshakes() {
+		return fullHandshakes.sum();
+	}
+
+	@Override
+	protected void load() throws Exception {
+		super.load();
+		final SSLSessionContext sessionContext = getSslContext().getClientSessionContext();
+		if (sessionContext != null) {
+			if (getSslSessionCacheSize() > -1) {
+				sessionContext.setSessionCacheSize(getSslSessionCacheSize());
+			}
+			if (getSslSessionTimeout() > -1) {
+				sessionContext.setSessionTimeout(getSslSessionTimeout());
+			}
+		}
+	}
+
+	@Override
+	public void customize(final SSLEngine sslEngine) {
+		super.customize(sslEngine);
+		if (Conscrypt.isConscrypt(sslEngine)) {
+			Conscrypt.setUseSessionTickets(sslEngine, sessionTickets);
+		}
+	}
+
+	@Override
+	protected TrustManager[] getTrustManagers(final KeyStore trustStore, final Collection<? extends CRL> crls) throws Exception {
+		TrustManager[] trustManagers = super.getTrustManagers(trustStore, crls);
+		if (trustManagers == null) {
+			// Jetty leaves the default trust managers to the SSL context
+			final TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(getTrustManagerFactoryAlgorithm());
+			trustManagerFactory.init((KeyStore) null);
+			trustManagers = trustManagerFactory.getTrustManagers();
+		}
+		for (int i = 0; i < trustManagers.length; i++) {
+			if (trustManagers[i] instanceof X509ExtendedTrustManager) {
+				trustManagers[i] = new FullHandshakeTrustManager((X509ExtendedTrustManager) trustManagers[i]);
+			}
+		}
+		return trustManagers;
+	}
+
+	public SslHandshakeListener getResumptionListener() {
+		return new SslHandshakeListener() {
+			@Override
+			public void handshakeSucceeded(final Event event) {
+				if (fullHandshakeEngines.remove(event.getSSLEngine()) != null) {
+					fullHandshakes.increment();
+				} else {
+					resumedHandshakes.increment();
+				}
+			}
+
+			@Override
+			public void handshakeFailed(final Event event, final Throwable failure) {
+				fullHandshakeEngines.remove(event.getSSLEngine());
+			}
+		};
+	}
+
+	/**
+	 * Records the engines that authenticate the server.
+	 */
+	private class FullHandshakeTrustManager extends X509ExtendedTrustManager {
+		private final X509ExtendedTrustManager delegate;
+
+		public FullHandshakeTrustManager(final X509ExtendedTrustManager delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void checkServerTrusted(final X509Certificate[] chain, final String authType, final SSLEngine engine) throws CertificateException {
+			fullHandshakeEngines.put(engine, Boolean.TRUE);
+			delegate.checkServerTrusted(chain, authType, engine);
+		}
+
+		@Override
+		public void checkServerTrusted(final X509Certificate[] chain, final String authType, final Socket socket) throws CertificateException {
+			delegate.checkServerTrusted(chain, authType, socket);
+		}
+
+		@Override
+		public void checkServerTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
+			delegate.checkServerTrusted(chain, authType);
+		}
+
+		@Override
+		public void checkClientTrusted(final X509Certificate[] chain, final String authType, final SSLEngine engine) throws CertificateException {
+			delegate.checkClientTrusted(chain, authType, engine);
+		}
+
+		@Override
+		public void checkClientTrusted(final X509Certificate[] chain, final String authType, final Socket socket) throws CertificateException {
+			delegate.checkClientTrusted(chain, authType, socket);
+		}
+
+		@Override
+		public void checkClientTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
+			delegate.checkClientTrusted(chain, authType);
+		}
+
+		@Override
+		public X509Certificate[] getAcceptedIssuers() {
+			return delegate.getAcceptedIssuers();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package de.mklinger.commons.httpclient.internal;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Access to virtual threads (Java 21+) via reflection, so that this library
+ * still runs on Java 8.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public final class VirtualThreads {
+	private static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+
+	private static final Method OF_VIRTUAL;
+	private static final Method NAME;
+	private static final Method FACTORY;
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method factory = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			name = builderClass.getMethod("name", String.class, long.class);
+			factory = builderClass.getMethod("factory");
+			// Java 19 and 20 have the API, but throw unless preview features
+			// are enabled. Creating a thread without starting it tells.
+			builderClass.getMethod("unstarted", Runnable.class).invoke(ofVirtual.invoke(null), (Runnable) () -> {});
+		} catch (final InvocationTargetException e) {
+			LOG.debug("Virtual threads are not usable", e.getCause());
+			ofVirtual = null;
+		} catch (final ReflectiveOperationException | LinkageError | RuntimeException e) {
+			LOG.debug("Virtual threads are not available", e);
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		FACTORY = factory;
+	}
+
+	private VirtualThreads() {
+	}
+
+	public static boolean isAvailable() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * Create a factory for virtual threads named {@code namePrefix} followed by
+	 * a counter.
+	 *
+	 * @throws UnsupportedOperationException if virtual threads are not available
+	 */
+	public static ThreadFactory newThreadFactory(final String namePrefix) {
+		if (!isAvailable()) {
+			throw new UnsupportedOperationException("Virtual threads are not available in this JVM");
+		}
+		try {
+			final Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L);
+			return (ThreadFactory) FACTORY.invoke(builder);
+		} catch (final IllegalAccessException e) {
+			throw new UnsupportedOperationException("Virtual threads are not accessible", e);
+		} catch (final InvocationTargetException e) {
+			throw new UnsupportedOperationException("Virtual threads are not usable", e.getCause());
+		}
+	}
+
+	/**
+	 * Create an executor that runs each task in a new virtual thread with the
+	 * given context class loader.
+	 *
+	 * @throws UnsupportedOperationException if virtual threads are not available
+	 */
+	public static Executor newThreadPerTaskExecutor(final ClassLoader classLoader, final String namePrefix) {
+		final ThreadFactory threadFactory = newThreadFactory(namePrefix);
+		return command -> {
+			final Thread thread = threadFactory.newThread(command);
+			thread.setContextClassLoader(classLoader);
+			thread.start();
+		};
+	}
+}
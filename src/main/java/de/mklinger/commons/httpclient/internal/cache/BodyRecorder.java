@@ -0,0 +1,105 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies response content into direct buffers. If the content exceeds the
+ * maximum size, recording stops and the content is dropped.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class BodyRecorder {
+	private static final int MIN_CHUNK_SIZE = 8 * 1024;
+	private static final int MAX_CHUNK_SIZE = 256 * 1024;
+
+	private final long maxSize;
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+	private ByteBuffer current;
+	private long size;
+	private boolean overflow;
+
+	/**
+	 * @param expectedLength The expected length or -1 if unknown
+	 */
+	public BodyRecorder(final long maxSize, final long expectedLength) {
+		this.maxSize = maxSize;
+		if (expectedLength > maxSize) {
+			overflow = true;
+		} else if (expectedLength > 0 && expectedLength <= Integer.MAX_VALUE) {
+			current = ByteBuffer.allocateDirect((int) expectedLength);
+		}
+	}
+
+	/**
+	 * Copy the given content. The position of the content buffer is not
+	 * changed.
+	 */
+	public void record(final ByteBuffer content) {
+		if (overflow) {
+			return;
+		}
+		if (size + content.remaining() > maxSize) {
+			overflow = true;
+			chunks.clear();
+			current = null;
+			return;
+		}
+		size += content.remaining();
+		final ByteBuffer src = content.duplicate();
+		while (src.hasRemaining()) {
+			if (current == null || !current.hasRemaining()) {
+				nextChunk();
+			}
+			final int n = Math.min(current.remaining(), src.remaining());
+			final ByteBuffer part = src.duplicate();
+			part.limit(part.position() + n);
+			current.put(part);
+			src.position(src.position() + n);
+		}
+	}
+
+	private void nextChunk() {
+		if (current != null) {
+			current.flip();
+			chunks.add(current);
+		}
+		// Grow chunk sizes with the content, like doubling a single buffer
+		final int capacity = (int) Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, size));
+		current = ByteBuffer.allocateDirect(capacity);
+	}
+
+	/**
+	 * @return The recorded content as read-only buffers or <code>null</code>
+	 *         if the maximum size was exceeded
+	 */
+	public List<ByteBuffer> finish() {
+		if (overflow) {
+			return null;
+		}
+		if (current != null) {
+			current.flip();
+			if (current.remaining() < current.capacity() / 2) {
+				// Do not keep mostly unused memory
+				final ByteBuffer trimmed = ByteBuffer.allocateDirect(current.remaining());
+				trimmed.put(current);
+				trimmed.flip();
+				current = trimmed;
+			}
+			if (current.hasRemaining()) {
+				chunks.add(current);
+			}
+			current = null;
+		}
+		final List<ByteBuffer> result = new ArrayList<>(chunks.size());
+		for (final ByteBuffer chunk : chunks) {
+			result.add(chunk.asReadOnlyBuffer());
+		}
+		return result;
+	}
+
+	public boolean isOverflow() {
+		return overflow;
+	}
+}
@@ -0,0 +1,128 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Parsed Cache-Control directives of a request or response, as far as they
+ * are relevant for a private cache. Durations are in seconds, -1 if not
+ * present.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class CacheControl {
+	private static final CacheControl EMPTY = new CacheControl();
+
+	private boolean noStore;
+	private boolean noCache;
+	private boolean mustRevalidate;
+	private long maxAge = -1;
+	private long maxStale = -1;
+	private long minFresh = -1;
+	private long staleWhileRevalidate = -1;
+	private long staleIfError = -1;
+
+	private CacheControl() {
+	}
+
+	public static CacheControl parse(final List<String> headerValues) {
+		if (headerValues.isEmpty()) {
+			return EMPTY;
+		}
+		final CacheControl cacheControl = new CacheControl();
+		for (final String headerValue : headerValues) {
+			for (final String directive : headerValue.split(",")) {
+				cacheControl.parseDirective(directive.trim());
+			}
+		}
+		return cacheControl;
+	}
+
+	private void parseDirective(final String directive) {
+		final int idx = directive.indexOf('=');
+		final String name = (idx == -1 ? directive : directive.substring(0, idx)).trim().toLowerCase(Locale.ROOT);
+		final String value = idx == -1 ? null : unquote(directive.substring(idx + 1).trim());
+		switch (name) {
+		case "no-store":
+			noStore = true;
+			break;
+		case "no-cache":
+			noCache = true;
+			break;
+		case "must-revalidate":
+		case "proxy-revalidate":
+			mustRevalidate = true;
+			break;
+		case "max-age":
+			maxAge = parseSeconds(value, 0);
+			break;
+		case "max-stale":
+			// Without a value, any staleness is acceptable
+			maxStale = parseSeconds(value, Long.MAX_VALUE);
+			break;
+		case "min-fresh":
+			minFresh = parseSeconds(value, 0);
+			break;
+		case "stale-while-revalidate":
+			staleWhileRevalidate = parseSeconds(value, -1);
+			break;
+		case "stale-if-error":
+			staleIfError = parseSeconds(value, -1);
+			break;
+		default:
+			// Ignore unknown directives
+		}
+	}
+
+	private static String unquote(final String value) {
+		if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+			return value.substring(1, value.length() - 1);
+		}
+		return value;
+	}
+
+	private static long parseSeconds(final String value, final long defaultValue) {
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			final long seconds = Long.parseLong(value);
+			return seconds < 0 ? defaultValue : seconds;
+		} catch (final NumberFormatException e) {
+			// Too large values are treated as infinity
+			return value.matches("\\d+") ? Long.MAX_VALUE : defaultValue;
+		}
+	}
+
+	public boolean isNoStore() {
+		return noStore;
+	}
+
+	public boolean isNoCache() {
+		return noCache;
+	}
+
+	public boolean isMustRevalidate() {
+		return mustRevalidate;
+	}
+
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	public long getMaxStale() {
+		return maxStale;
+	}
+
+	public long getMinFresh() {
+		return minFresh;
+	}
+
+	public long getStaleWhileRevalidate() {
+		return staleWhileRevalidate;
+	}
+
+	public long getStaleIfError() {
+		return staleIfError;
+	}
+}
@@ -0,0 +1,245 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import de.mklinger.commons.httpclient.HttpHeaders;
+import de.mklinger.commons.httpclient.HttpRequest;
+import de.mklinger.commons.httpclient.internal.HttpHeadersImpl;
+
+/**
+ * A stored response. Freshness and age are calculated as described in RFC
+ * 7234, section 4.2. Times are in epoch millis.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class CacheEntry {
+	private static final long MAX_HEURISTIC_FRESHNESS = TimeUnit.DAYS.toMillis(1);
+
+	private final int statusCode;
+	private final HttpHeaders headers;
+	private final Map<String, List<String>> varyRequestHeaders;
+	private final CachedBody body;
+	private final long requestTime;
+	private final long responseTime;
+
+	private final CacheControl cacheControl;
+	private final long freshnessLifetime;
+	private final long correctedInitialAge;
+
+	/**
+	 * @param varyRequestHeaders The values of the request headers named by the
+	 *        Vary response header
+	 */
+	public CacheEntry(final int statusCode, final HttpHeaders headers, final Map<String, List<String>> varyRequestHeaders, final CachedBody body, final long requestTime, final long responseTime) {
+		this.statusCode = statusCode;
+		this.headers = Objects.requireNonNull(headers);
+		this.varyRequestHeaders = Objects.requireNonNull(varyRequestHeaders);
+		this.body = Objects.requireNonNull(body);
+		this.requestTime = requestTime;
+		this.responseTime = responseTime;
+
+		this.cacheControl = CacheControl.parse(headers.allValues("Cache-Control"));
+		final long date = parseDate(headers.firstValue("Date").orElse(null));
+		final long dateValue = date == -1 ? responseTime : date;
+		this.freshnessLifetime = freshnessLifetime(dateValue);
+		this.correctedInitialAge = correctedInitialAge(dateValue);
+	}
+
+	private long freshnessLifetime(final long dateValue) {
+		if (cacheControl.isNoCache()) {
+			return 0;
+		}
+		if (cacheControl.getMaxAge() != -1) {
+			return toMillis(cacheControl.getMaxAge());
+		}
+		if (headers.firstValue("Expires").isPresent()) {
+			// Invalid values mean "already expired"
+			final long expires = parseDate(headers.firstValue("Expires").get());
+			return expires == -1 ? 0 : Math.max(0, expires - dateValue);
+		}
+		final long lastModified = parseDate(getLastModified());
+		if (lastModified != -1 && lastModified < dateValue) {
+			// Heuristic freshness: 10% of the time since last modification
+			return Math.min((dateValue - lastModified) / 10, MAX_HEURISTIC_FRESHNESS);
+		}
+		return 0;
+	}
+
+	private long correctedInitialAge(final long dateValue) {
+		final long apparentAge = Math.max(0, responseTime - dateValue);
+		long ageValue = 0;
+		try {
+			ageValue = toMillis(Long.parseLong(headers.firstValue("Age").orElse("0").trim()));
+		} catch (final NumberFormatException e) {
+			// Ignore invalid Age header
+		}
+		final long responseDelay = responseTime - requestTime;
+		return Math.max(apparentAge, ageValue + responseDelay);
+	}
+
+	private static long toMillis(final long seconds) {
+		return seconds > TimeUnit.MILLISECONDS.toSeconds(Long.MAX_VALUE) ? Long.MAX_VALUE : TimeUnit.SECONDS.toMillis(seconds);
+	}
+
+	/**
+	 * @return The date in epoch millis or -1 if missing or invalid
+	 */
+	static long parseDate(final String value) {
+		if (value == null) {
+			return -1;
+		}
+		try {
+			return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		} catch (final DateTimeParseException e) {
+			return -1;
+		}
+	}
+
+	public long getCurrentAge(final long now) {
+		return correctedInitialAge + Math.max(0, now - responseTime);
+	}
+
+	public long getFreshnessLifetime() {
+		return freshnessLifetime;
+	}
+
+	/**
+	 * Check whether this entry may be used without revalidation, considering
+	 * the Cache-Control directives of the request.
+	 */
+	public boolean isFresh(final long now, final CacheControl requestCacheControl) {
+		final long age = getCurrentAge(now);
+		if (requestCacheControl.getMaxAge() != -1 && age > toMillis(requestCacheControl.getMaxAge())) {
+			return false;
+		}
+		final long minFresh = requestCacheControl.getMinFresh() == -1 ? 0 : toMillis(requestCacheControl.getMinFresh());
+		if (freshnessLifetime - age > minFresh) {
+			return true;
+		}
+		return requestCacheControl.getMaxStale() != -1
+				&& !cacheControl.isMustRevalidate()
+				&& age - freshnessLifetime <= toMillis(requestCacheControl.getMaxStale());
+	}
+
+	/**
+	 * Check whether this stale entry may be served while it is revalidated
+	 * in the background (RFC 5861).
+	 */
+	public boolean isUsableWhileRevalidate(final long now) {
+		return isUsableStale(now, cacheControl.getStaleWhileRevalidate());
+	}
+
+	/**
+	 * Check whether this stale entry may be served if revalidation fails
+	 * (RFC 5861).
+	 */
+	public boolean isUsableIfError(final long now, final CacheControl requestCacheControl) {
+		return isUsableStale(now, Math.max(cacheControl.getStaleIfError(), requestCacheControl.getStaleIfError()));
+	}
+
+	private boolean isUsableStale(final long now, final long staleSeconds) {
+		if (staleSeconds == -1 || cacheControl.isMustRevalidate() || cacheControl.isNoCache()) {
+			return false;
+		}
+		return getCurrentAge(now) - freshnessLifetime <= toMillis(staleSeconds);
+	}
+
+	public String getETag() {
+		return headers.firstValue("ETag").orElse(null);
+	}
+
+	public String getLastModified() {
+		return headers.firstValue("Last-Modified").orElse(null);
+	}
+
+	public boolean hasValidators() {
+		return getETag() != null || getLastModified() != null;
+	}
+
+	/**
+	 * Check whether the given request selects this entry, based on the Vary
+	 * response header.
+	 */
+	public boolean matchesVary(final HttpRequest request) {
+		for (final Map.Entry<String, List<String>> e : varyRequestHeaders.entrySet()) {
+			if (!e.getValue().equals(request.headers().allValues(e.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the values of the request headers named by the Vary response header.
+	 * @return The values or <code>null</code> if the response varies on
+	 *         <code>*</code> and can not be stored
+	 */
+	public static Map<String, List<String>> varyRequestHeaders(final HttpHeaders responseHeaders, final HttpRequest request) {
+		final Map<String, List<String>> varyRequestHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		for (final String vary : responseHeaders.allValues("Vary")) {
+			for (final String name : vary.split(",")) {
+				final String trimmed = name.trim();
+				if (trimmed.equals("*")) {
+					return null;
+				}
+				if (!trimmed.isEmpty()) {
+					varyRequestHeaders.put(trimmed.toLowerCase(Locale.ROOT), new ArrayList<>(request.headers().allValues(trimmed)));
+				}
+			}
+		}
+		return varyRequestHeaders;
+	}
+
+	/**
+	 * Create an updated entry for a 304 response, with the stored headers
+	 * replaced by the ones received (RFC 7234, section 4.3.4).
+	 */
+	public CacheEntry withRevalidation(final HttpHeaders notModifiedHeaders, final long requestTime, final long responseTime) {
+		final HttpHeadersImpl updatedHeaders = new HttpHeadersImpl();
+		headers.map().forEach((name, values) -> values.forEach(value -> updatedHeaders.addHeader(name, value)));
+		notModifiedHeaders.map().forEach((name, values) -> {
+			if (!name.equalsIgnoreCase("Content-Length") && !name.equalsIgnoreCase("Content-Encoding") && !name.equalsIgnoreCase("Transfer-Encoding")) {
+				updatedHeaders.removeHeader(name);
+				values.forEach(value -> updatedHeaders.addHeader(name, value));
+			}
+		});
+		return new CacheEntry(statusCode, updatedHeaders, varyRequestHeaders, body, requestTime, responseTime);
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	public HttpHeaders getHeaders() {
+		return headers;
+	}
+
+	public Map<String, List<String>> getVaryRequestHeaders() {
+		return varyRequestHeaders;
+	}
+
+	public CachedBody getBody() {
+		return body;
+	}
+
+	public long getBodySize() {
+		return body.size();
+	}
+
+	public long getRequestTime() {
+		return requestTime;
+	}
+
+	public long getResponseTime() {
+		return responseTime;
+	}
+}
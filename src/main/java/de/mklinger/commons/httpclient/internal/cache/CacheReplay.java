@@ -0,0 +1,194 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mklinger.commons.httpclient.HttpHeaders;
+import de.mklinger.commons.httpclient.HttpRequest;
+import de.mklinger.commons.httpclient.HttpResponse;
+import de.mklinger.commons.httpclient.HttpResponse.AsyncBodyCompleteListener;
+import de.mklinger.commons.httpclient.HttpResponse.BodyCompleteListener;
+import de.mklinger.commons.httpclient.HttpResponse.BodyHandler;
+import de.mklinger.commons.httpclient.internal.FileCompleteListener;
+import de.mklinger.commons.httpclient.internal.HttpHeadersImpl;
+import de.mklinger.commons.httpclient.internal.StreamingBodyCompleteListener;
+
+/**
+ * Feeds a stored response into a body handler, in chunks of at most 16 KiB
+ * sliced from the stored buffers, independent of the chunks received from
+ * the network. Asynchronous listeners get the next chunk only after the
+ * previous one was processed. Bodies stored in files are
+ * written to file targets without copying them through the Java heap.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class CacheReplay {
+	private static final Logger LOG = LoggerFactory.getLogger(CacheReplay.class);
+
+	private static final int CHUNK_SIZE = 16 * 1024;
+
+	private CacheReplay() {
+	}
+
+	/**
+	 * Replay the entry on the given executor.
+	 */
+	public static <T> CompletableFuture<HttpResponse<T>> replay(final CacheEntry entry, final HttpRequest request, final BodyHandler<T> handler, final Executor executor) {
+		return replay(entry.getStatusCode(), withAge(entry), entry.getBody(), request, handler, executor);
+	}
+
+	/**
+	 * Replay the given response on the given executor. The headers are passed
+	 * on unchanged.
+	 */
+	public static <T> CompletableFuture<HttpResponse<T>> replay(final int statusCode, final HttpHeaders headers, final CachedBody body, final HttpRequest request, final BodyHandler<T> handler, final Executor executor) {
+		final CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+		executor.execute(() -> replay(statusCode, headers, body, request, handler, result));
+		return result;
+	}
+
+	private static <T> void replay(final int statusCode, final HttpHeaders headers, final CachedBody body, final HttpRequest request, final BodyHandler<T> handler, final CompletableFuture<HttpResponse<T>> result) {
+		BodyCompleteListener<T> listener = null;
+		try {
+			listener = handler.apply(statusCode, headers);
+			final BodyCompleteListener<T> l = listener;
+			if (l instanceof StreamingBodyCompleteListener) {
+				result.complete(new CachedHttpResponse<>(statusCode, request, headers, l.getBody()));
+				feed(l, body, result).whenComplete((unused, e) -> {
+					if (e != null) {
+						((StreamingBodyCompleteListener<T>) l).onError(unwrap(e));
+					}
+					closeQuietly(l);
+				});
+			} else {
+				feed(l, body, result).whenComplete((unused, e) -> {
+					try {
+						if (e != null) {
+							result.completeExceptionally(unwrap(e));
+						} else {
+							result.complete(new CachedHttpResponse<>(statusCode, request, headers, l.getBody()));
+						}
+					} catch (final Throwable getBodyError) {
+						result.completeExceptionally(getBodyError);
+					} finally {
+						closeQuietly(l);
+					}
+				});
+			}
+		} catch (final Throwable e) {
+			if (listener != null) {
+				closeQuietly(listener);
+			}
+			result.completeExceptionally(e);
+		}
+	}
+
+	private static HttpHeaders withAge(final CacheEntry entry) {
+		final HttpHeadersImpl headers = new HttpHeadersImpl();
+		entry.getHeaders().map().forEach((name, values) -> values.forEach(value -> headers.addHeader(name, value)));
+		final long age = TimeUnit.MILLISECONDS.toSeconds(entry.getCurrentAge(System.currentTimeMillis()));
+		headers.setHeader("Age", String.valueOf(age));
+		return headers;
+	}
+
+	/**
+	 * Feed the body, stopping early if the result was cancelled.
+	 */
+	private static <T> CompletableFuture<Void> feed(final BodyCompleteListener<T> l, final CachedBody body, final CompletableFuture<?> result) throws Exception {
+		checkCancelled(result);
+		if (l instanceof FileCompleteListener && body instanceof FileCachedBody) {
+			((FileCachedBody) body).transferTo((FileCompleteListener) l);
+			l.onComplete();
+			return CompletableFuture.completedFuture(null);
+		}
+		final Iterator<ByteBuffer> chunks = new ChunkIterator(body.buffers());
+		if (l instanceof AsyncBodyCompleteListener) {
+			return feedAsync((AsyncBodyCompleteListener<T>) l, chunks, result);
+		}
+		while (chunks.hasNext()) {
+			checkCancelled(result);
+			l.onNext(chunks.next());
+		}
+		l.onComplete();
+		return CompletableFuture.completedFuture(null);
+	}
+
+	private static <T> CompletableFuture<Void> feedAsync(final AsyncBodyCompleteListener<T> l, final Iterator<ByteBuffer> chunks, final CompletableFuture<?> result) {
+		try {
+			while (chunks.hasNext()) {
+				checkCancelled(result);
+				final CompletableFuture<?> stage = l.onNextAsync(chunks.next()).toCompletableFuture();
+				if (!stage.isDone() || stage.isCompletedExceptionally()) {
+					return stage.thenCompose(unused -> feedAsync(l, chunks, result));
+				}
+			}
+			return l.onCompleteAsync().toCompletableFuture().thenApply(unused -> null);
+		} catch (final Throwable e) {
+			final CompletableFuture<Void> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+
+	private static void checkCancelled(final CompletableFuture<?> result) {
+		if (result.isCancelled()) {
+			throw new CancellationException("Replay cancelled");
+		}
+	}
+
+	private static Throwable unwrap(final Throwable e) {
+		if (e instanceof CompletionException && e.getCause() != null) {
+			return e.getCause();
+		}
+		return e;
+	}
+
+	private static void closeQuietly(final BodyCompleteListener<?> l) {
+		try {
+			l.close();
+		} catch (final Exception e) {
+			LOG.debug("Error closing body complete listener", e);
+		}
+	}
+
+	/**
+	 * Iterates over slices of at most {@link #CHUNK_SIZE} bytes.
+	 */
+	private static class ChunkIterator implements Iterator<ByteBuffer> {
+		private final Iterator<ByteBuffer> buffers;
+		private ByteBuffer current;
+
+		public ChunkIterator(final List<ByteBuffer> buffers) {
+			this.buffers = buffers.iterator();
+		}
+
+		@Override
+		public boolean hasNext() {
+			while ((current == null || !current.hasRemaining()) && buffers.hasNext()) {
+				current = buffers.next();
+			}
+			return current != null && current.hasRemaining();
+		}
+
+		@Override
+		public ByteBuffer next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final ByteBuffer chunk = current.slice();
+			chunk.limit(Math.min(CHUNK_SIZE, chunk.remaining()));
+			current.position(current.position() + chunk.remaining());
+			return chunk;
+		}
+	}
+}
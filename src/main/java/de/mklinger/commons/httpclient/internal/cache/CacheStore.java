@@ -0,0 +1,36 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+/**
+ * Storage for cache entries. Implementations must be thread safe and
+ * bounded in size.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public interface CacheStore {
+	/**
+	 * @return The entry or <code>null</code>
+	 */
+	CacheEntry get(String key);
+
+	/**
+	 * Store the entry, replacing any previous entry for the key. Entries
+	 * larger than {@link #getMaxEntrySize()} are not stored.
+	 */
+	void put(String key, CacheEntry entry);
+
+	void remove(String key);
+
+	void clear();
+
+	/**
+	 * @return The stored bytes
+	 */
+	long size();
+
+	long entryCount();
+
+	/**
+	 * @return The maximum body size of a single entry
+	 */
+	long getMaxEntrySize();
+}
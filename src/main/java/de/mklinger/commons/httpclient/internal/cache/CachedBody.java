@@ -0,0 +1,23 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The stored body of a cache entry.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public interface CachedBody {
+	/**
+	 * @return The body size in bytes
+	 */
+	long size();
+
+	/**
+	 * Get the body content. Each call returns new read-only buffers sharing
+	 * the content, which can be consumed independently.
+	 */
+	List<ByteBuffer> buffers() throws IOException;
+}
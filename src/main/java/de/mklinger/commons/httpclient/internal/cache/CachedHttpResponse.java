@@ -0,0 +1,52 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import java.net.URI;
+import java.util.Objects;
+
+import de.mklinger.commons.httpclient.HttpHeaders;
+import de.mklinger.commons.httpclient.HttpRequest;
+import de.mklinger.commons.httpclient.HttpResponse;
+
+/**
+ * Response served from the cache.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class CachedHttpResponse<T> implements HttpResponse<T> {
+	private final int statusCode;
+	private final HttpRequest request;
+	private final HttpHeaders headers;
+	private final T body;
+
+	public CachedHttpResponse(final int statusCode, final HttpRequest request, final HttpHeaders headers, final T body) {
+		this.statusCode = statusCode;
+		this.request = Objects.requireNonNull(request);
+		this.headers = Objects.requireNonNull(headers);
+		this.body = body;
+	}
+
+	@Override
+	public int statusCode() {
+		return statusCode;
+	}
+
+	@Override
+	public HttpRequest request() {
+		return request;
+	}
+
+	@Override
+	public HttpHeaders headers() {
+		return headers;
+	}
+
+	@Override
+	public URI uri() {
+		return request.uri();
+	}
+
+	@Override
+	public T body() {
+		return body;
+	}
+}
@@ -0,0 +1,197 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mklinger.commons.httpclient.BodyHandlers;
+import de.mklinger.commons.httpclient.HttpClient;
+import de.mklinger.commons.httpclient.HttpRequest;
+import de.mklinger.commons.httpclient.HttpResponse;
+import de.mklinger.commons.httpclient.HttpResponse.BodyHandler;
+import de.mklinger.commons.httpclient.internal.DelegatingHttpClient;
+import de.mklinger.commons.httpclient.internal.HttpRequestBuilderImpl;
+import de.mklinger.commons.httpclient.internal.InlineExecutor;
+import de.mklinger.commons.httpclient.internal.RawBodyHandler;
+
+/**
+ * Client that answers GET requests from a {@link HttpCacheImpl} where
+ * possible, and sends all other requests to the wrapped client.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class CachingHttpClient extends DelegatingHttpClient {
+	private static final Logger LOG = LoggerFactory.getLogger(CachingHttpClient.class);
+
+	static final String[] CONDITIONAL_REQUEST_HEADERS = {
+			"If-None-Match", "If-Modified-Since", "If-Match", "If-Unmodified-Since", "If-Range", "Range" };
+
+	private final HttpCacheImpl cache;
+	private final Executor completionExecutor;
+
+	public CachingHttpClient(final HttpClient delegate, final HttpCacheImpl cache, final Executor completionExecutor) {
+		super(delegate);
+		this.cache = cache;
+		this.completionExecutor = completionExecutor;
+	}
+
+	@Override
+	public <T> CompletableFuture<HttpResponse<T>> sendAsync(final HttpRequest request, final BodyHandler<T> responseBodyHandler) {
+		try {
+			if (!isCacheable(request, responseBodyHandler)) {
+				final CompletableFuture<HttpResponse<T>> response = delegate.sendAsync(request, responseBodyHandler);
+				if (isUnsafe(request.method())) {
+					invalidateOnSuccess(request, response);
+				}
+				return response;
+			}
+
+			final CacheControl requestCacheControl = requestCacheControl(request);
+			if (requestCacheControl.isNoStore()) {
+				return delegate.sendAsync(request, responseBodyHandler);
+			}
+
+			final String key = HttpCacheImpl.key(request.uri());
+			final CacheEntry entry = lookup(key, request);
+			final long now = System.currentTimeMillis();
+			final Executor executor = request.completionExecutor().orElse(completionExecutor);
+
+			if (entry != null && !requestCacheControl.isNoCache()) {
+				if (entry.isFresh(now, requestCacheControl)) {
+					LOG.debug("Cache hit for {}", key);
+					cache.hit();
+					return CacheReplay.replay(entry, request, responseBodyHandler, executor);
+				}
+				if (entry.isUsableWhileRevalidate(now)) {
+					LOG.debug("Cache hit for stale {}, revalidating", key);
+					cache.hit();
+					revalidateInBackground(key, request, entry, requestCacheControl);
+					return CacheReplay.replay(entry, request, responseBodyHandler, executor);
+				}
+			}
+
+			cache.miss();
+			return fetch(key, request, responseBodyHandler, entry, requestCacheControl, executor);
+
+		} catch (final Throwable e) {
+			final CompletableFuture<HttpResponse<T>> errorResult = new CompletableFuture<>();
+			errorResult.completeExceptionally(e);
+			return errorResult;
+		}
+	}
+
+	private static boolean isCacheable(final HttpRequest request, final BodyHandler<?> responseBodyHandler) {
+		if (!"GET".equals(request.method()) || responseBodyHandler instanceof RawBodyHandler) {
+			return false;
+		}
+		// Conditional and range requests are left to the server
+		for (final String name : CONDITIONAL_REQUEST_HEADERS) {
+			if (request.headers().firstValue(name).isPresent()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isUnsafe(final String method) {
+		return !"GET".equals(method) && !"HEAD".equals(method) && !"OPTIONS".equals(method) && !"TRACE".equals(method);
+	}
+
+	private static CacheControl requestCacheControl(final HttpRequest request) {
+		final List<String> cacheControl = request.headers().allValues("Cache-Control");
+		if (cacheControl.isEmpty() && request.headers().allValues("Pragma").contains("no-cache")) {
+			return CacheControl.parse(Collections.singletonList("no-cache"));
+		}
+		return CacheControl.parse(cacheControl);
+	}
+
+	private CacheEntry lookup(final String key, final HttpRequest request) {
+		final CacheEntry entry = cache.getStore().get(key);
+		if (entry != null && !entry.matchesVary(request)) {
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Invalidate the stored entry after a successful unsafe request, RFC 7234
+	 * section 4.4.
+	 */
+	private void invalidateOnSuccess(final HttpRequest request, final CompletableFuture<? extends HttpResponse<?>> response) {
+		response.whenComplete((r, e) -> {
+			if (r != null && r.statusCode() < 400) {
+				cache.invalidate(request.uri());
+			}
+		});
+	}
+
+	private <T> CompletableFuture<HttpResponse<T>> fetch(final String key, final HttpRequest request, final BodyHandler<T> responseBodyHandler, final CacheEntry entry, final CacheControl requestCacheControl, final Executor executor) {
+		final HttpRequest networkRequest = entry != null && entry.hasValidators() ? conditionalRequest(request, entry) : request;
+		final RecordingBodyHandler<T> recordingHandler = new RecordingBodyHandler<>(responseBodyHandler, cache, key, request, entry, requestCacheControl, System.currentTimeMillis());
+
+		final CompletableFuture<HttpResponse<T>> response = delegate.sendAsync(networkRequest, recordingHandler);
+		final CompletableFuture<HttpResponse<T>> result = response
+				.handle((r, failure) -> afterFetch(key, request, responseBodyHandler, entry, requestCacheControl, executor, recordingHandler, r, failure))
+				.thenCompose(Function.identity());
+
+		result.whenComplete((unused, e) -> {
+			if (e instanceof CancellationException) {
+				response.cancel(true);
+			}
+		});
+		return result;
+	}
+
+	private <T> CompletableFuture<HttpResponse<T>> afterFetch(final String key, final HttpRequest request, final BodyHandler<T> responseBodyHandler, final CacheEntry entry, final CacheControl requestCacheControl, final Executor executor, final RecordingBodyHandler<T> recordingHandler, final HttpResponse<T> response, final Throwable failure) {
+		if (failure != null) {
+			if (entry != null && !recordingHandler.isHandlerApplied() && entry.isUsableIfError(System.currentTimeMillis(), requestCacheControl)) {
+				LOG.debug("Request failed, serving stale response for {}", key, failure);
+				return CacheReplay.replay(entry, request, responseBodyHandler, executor);
+			}
+			final CompletableFuture<HttpResponse<T>> errorResult = new CompletableFuture<>();
+			errorResult.completeExceptionally(failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+			return errorResult;
+		}
+		if (recordingHandler.getNotModifiedHeaders() != null) {
+			LOG.debug("Revalidated {}", key);
+			final CacheEntry updated = entry.withRevalidation(recordingHandler.getNotModifiedHeaders(), recordingHandler.getRequestTime(), recordingHandler.getResponseTime());
+			cache.getStore().put(key, updated);
+			return CacheReplay.replay(updated, request, responseBodyHandler, executor);
+		}
+		if (recordingHandler.isStaleIfError()) {
+			return CacheReplay.replay(entry, request, responseBodyHandler, executor);
+		}
+		return CompletableFuture.completedFuture(response);
+	}
+
+	private static HttpRequest conditionalRequest(final HttpRequest request, final CacheEntry entry) {
+		final HttpRequestBuilderImpl builder = HttpRequestBuilderImpl.copyOf(request);
+		if (entry.getETag() != null) {
+			builder.header("If-None-Match", entry.getETag());
+		}
+		if (entry.getLastModified() != null) {
+			builder.header("If-Modified-Since", entry.getLastModified());
+		}
+		return builder.build();
+	}
+
+	private void revalidateInBackground(final String key, final HttpRequest request, final CacheEntry entry, final CacheControl requestCacheControl) {
+		if (!cache.startRevalidation(key)) {
+			return;
+		}
+		fetch(key, request, BodyHandlers.discard(), entry, requestCacheControl, InlineExecutor.getInstance())
+		.whenComplete((unused, e) -> {
+			cache.revalidationDone(key);
+			if (e != null) {
+				LOG.debug("Background revalidation failed for {}", key, e);
+			}
+		});
+	}
+}
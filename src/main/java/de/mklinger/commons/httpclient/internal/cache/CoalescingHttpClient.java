@@ -0,0 +1,369 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mklinger.commons.httpclient.HttpClient;
+import de.mklinger.commons.httpclient.HttpHeaders;
+import de.mklinger.commons.httpclient.HttpRequest;
+import de.mklinger.commons.httpclient.HttpResponse;
+import de.mklinger.commons.httpclient.HttpResponse.BodyCompleteListener;
+import de.mklinger.commons.httpclient.HttpResponse.BodyHandler;
+import de.mklinger.commons.httpclient.internal.ByteArrayCompleteListener;
+import de.mklinger.commons.httpclient.internal.DelegatingHttpClient;
+import de.mklinger.commons.httpclient.internal.DiscardBodyCompleteListener;
+import de.mklinger.commons.httpclient.internal.NoBodyProvider;
+import de.mklinger.commons.httpclient.internal.RawBodyHandler;
+
+/**
+ * Client that lets concurrent identical GET and HEAD requests share one
+ * exchange with the server. Requests are identical if they have the same
+ * method, URI and values for the key headers and the credential headers
+ * {@code Authorization}, {@code Cookie} and {@code Proxy-Authorization}.
+ * The first request is sent with its own body handler. Requests join it until
+ * the response headers arrive. Only if any joined, the body is recorded while
+ * it is passed to the first request, and then fed into the body handler of
+ * every joined request.
+ *
+ * <p>The exchange is cancelled only when all requests sharing it are
+ * cancelled. If the body is larger than {@link #MAX_SHARED_BODY_SIZE}, or the
+ * exchange fails after the headers, the joined requests are sent on their own.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class CoalescingHttpClient extends DelegatingHttpClient {
+	private static final Logger LOG = LoggerFactory.getLogger(CoalescingHttpClient.class);
+
+	public static final long MAX_SHARED_BODY_SIZE = 64L * 1024 * 1024;
+
+	/**
+	 * Requests with different credentials must never share a response, so
+	 * these are always part of the key.
+	 */
+	private static final List<String> CREDENTIAL_HEADERS = Arrays.asList("Authorization", "Cookie", "Proxy-Authorization");
+
+	private final List<String> keyHeaders;
+	private final Executor completionExecutor;
+	private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>();
+
+	/**
+	 * @param keyHeaders Names of request headers that make requests differ
+	 */
+	public CoalescingHttpClient(final HttpClient delegate, final List<String> keyHeaders, final Executor completionExecutor) {
+		super(delegate);
+		this.keyHeaders = withCredentialHeaders(keyHeaders);
+		this.completionExecutor = completionExecutor;
+	}
+
+	private static List<String> withCredentialHeaders(final List<String> keyHeaders) {
+		final Set<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		final List<String> result = new ArrayList<>();
+		for (final String name : keyHeaders) {
+			if (names.add(name)) {
+				result.add(name);
+			}
+		}
+		for (final String name : CREDENTIAL_HEADERS) {
+			if (names.add(name)) {
+				result.add(name);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * An exchange sent for the leading request and shared with the requests
+	 * that joined it.
+	 */
+	private static class Flight {
+		/**
+		 * The response for joined requests, <code>null</code> if they must be
+		 * sent on their own
+		 */
+		private final CompletableFuture<SharedResponse> response = new CompletableFuture<>();
+		private volatile CompletableFuture<?> exchange;
+		private boolean leading = true;
+		private int joiners;
+		private boolean joinable = true;
+
+		/**
+		 * @return Whether the caller joined, <code>false</code> if the response
+		 *         headers already arrived or the exchange was cancelled
+		 */
+		public synchronized boolean join() {
+			if (!joinable) {
+				return false;
+			}
+			joiners++;
+			return true;
+		}
+
+		/**
+		 * Stop accepting requests, as the response headers arrived.
+		 *
+		 * @return The number of joined requests that were not cancelled
+		 */
+		public synchronized int closeJoining() {
+			joinable = false;
+			return joiners;
+		}
+
+		public synchronized boolean isLeading() {
+			return leading;
+		}
+
+		/**
+		 * Called when a caller cancelled its request. Cancels the exchange
+		 * when no caller needs it anymore.
+		 */
+		public void leave(final boolean leader) {
+			synchronized (this) {
+				if (leader) {
+					leading = false;
+				} else {
+					joiners--;
+				}
+				if (leading || joiners > 0 && !response.isDone()) {
+					return;
+				}
+				joinable = false;
+			}
+			exchange.cancel(true);
+		}
+
+		/**
+		 * Let the joined requests send their own requests.
+		 */
+		public void fallBack() {
+			response.complete(null);
+		}
+	}
+
+	private static class SharedResponse {
+		private final int statusCode;
+		private final HttpHeaders headers;
+		private final CachedBody body;
+
+		public SharedResponse(final int statusCode, final HttpHeaders headers, final CachedBody body) {
+			this.statusCode = statusCode;
+			this.headers = headers;
+			this.body = body;
+		}
+	}
+
+	@Override
+	public <T> CompletableFuture<HttpResponse<T>> sendAsync(final HttpRequest request, final BodyHandler<T> responseBodyHandler) {
+		try {
+			if (!isCoalescable(request, responseBodyHandler)) {
+				return delegate.sendAsync(request, responseBodyHandler);
+			}
+
+			final String key = key(request);
+			while (true) {
+				final Flight flight = flights.get(key);
+				if (flight == null) {
+					final Flight newFlight = new Flight();
+					if (flights.putIfAbsent(key, newFlight) == null) {
+						return lead(key, request, responseBodyHandler, newFlight);
+					}
+				} else if (flight.join()) {
+					LOG.debug("Joining in-flight request for {}", key);
+					return follow(flight, request, responseBodyHandler);
+				} else {
+					// Receiving the body or cancelled, start a new one
+					flights.remove(key, flight);
+				}
+			}
+
+		} catch (final Throwable e) {
+			final CompletableFuture<HttpResponse<T>> errorResult = new CompletableFuture<>();
+			errorResult.completeExceptionally(e);
+			return errorResult;
+		}
+	}
+
+	private static boolean isCoalescable(final HttpRequest request, final BodyHandler<?> responseBodyHandler) {
+		if (!"GET".equals(request.method()) && !"HEAD".equals(request.method())) {
+			return false;
+		}
+		if (responseBodyHandler instanceof RawBodyHandler) {
+			return false;
+		}
+		if (request.bodyProvider().isPresent() && !(request.bodyProvider().get() instanceof NoBodyProvider)) {
+			return false;
+		}
+		// A 304 or 206 response only fits the request that asked for it
+		for (final String name : CachingHttpClient.CONDITIONAL_REQUEST_HEADERS) {
+			if (request.headers().firstValue(name).isPresent()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private String key(final HttpRequest request) {
+		final StringBuilder sb = new StringBuilder();
+		sb.append(request.method()).append(' ').append(HttpCacheImpl.key(request.uri()));
+		for (final String name : keyHeaders) {
+			sb.append('\n').append(name.toLowerCase(Locale.ROOT)).append(':');
+			sb.append(String.join(",", request.headers().allValues(name)));
+		}
+		return sb.toString();
+	}
+
+	private <T> CompletableFuture<HttpResponse<T>> lead(final String key, final HttpRequest request, final BodyHandler<T> responseBodyHandler, final Flight flight) {
+		final CompletableFuture<HttpResponse<T>> exchange;
+		try {
+			exchange = delegate.sendAsync(request, new SharingBodyHandler<>(responseBodyHandler, key, flight, "HEAD".equals(request.method())));
+		} catch (final RuntimeException e) {
+			flights.remove(key, flight);
+			flight.response.completeExceptionally(e);
+			throw e;
+		}
+		flight.exchange = exchange;
+
+		final CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+		exchange.whenComplete((response, failure) -> {
+			flights.remove(key, flight);
+			if (failure == null) {
+				result.complete(response);
+			} else {
+				// Failures after the headers already let the joined requests fall back
+				flight.response.completeExceptionally(unwrap(failure));
+				result.completeExceptionally(unwrap(failure));
+			}
+		});
+		result.whenComplete((unused, e) -> {
+			if (e instanceof CancellationException) {
+				flight.leave(true);
+			}
+		});
+		return result;
+	}
+
+	private <T> CompletableFuture<HttpResponse<T>> follow(final Flight flight, final HttpRequest request, final BodyHandler<T> responseBodyHandler) {
+		final Executor executor = request.completionExecutor().orElse(completionExecutor);
+		final CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+		flight.response.whenComplete((response, failure) -> {
+			if (failure != null) {
+				result.completeExceptionally(failure);
+				return;
+			}
+			if (result.isDone()) {
+				// Cancelled while waiting for the shared response
+				return;
+			}
+			final CompletableFuture<HttpResponse<T>> own;
+			if (response == null) {
+				own = delegate.sendAsync(request, responseBodyHandler);
+			} else {
+				own = CacheReplay.replay(response.statusCode, response.headers, response.body, request, responseBodyHandler, executor);
+			}
+			own.whenComplete((r, e) -> {
+				if (e == null) {
+					result.complete(r);
+				} else {
+					result.completeExceptionally(unwrap(e));
+				}
+			});
+			// Cancelling the caller's future stops its own request or replay
+			result.whenComplete((unused, e) -> {
+				if (e instanceof CancellationException) {
+					own.cancel(true);
+				}
+			});
+		});
+
+		result.whenComplete((unused, e) -> {
+			if (e instanceof CancellationException) {
+				flight.leave(false);
+			}
+		});
+		return result;
+	}
+
+	private static Throwable unwrap(final Throwable e) {
+		if (e instanceof CompletionException && e.getCause() != null) {
+			return e.getCause();
+		}
+		return e;
+	}
+
+	/**
+	 * Passes the response to the body handler of the leading request, and
+	 * records it for the joined requests if there are any.
+	 */
+	private class SharingBodyHandler<T> implements BodyHandler<T> {
+		private final BodyHandler<T> handler;
+		private final String key;
+		private final Flight flight;
+		private final boolean head;
+
+		public SharingBodyHandler(final BodyHandler<T> handler, final String key, final Flight flight, final boolean head) {
+			this.handler = handler;
+			this.key = key;
+			this.flight = flight;
+			this.head = head;
+		}
+
+		@Override
+		public BodyCompleteListener<T> apply(final int statusCode, final HttpHeaders responseHeaders) {
+			final int joiners = flight.closeJoining();
+			flights.remove(key, flight);
+
+			final BodyCompleteListener<T> listener;
+			try {
+				// The exchange continues for joined requests if the leading one was cancelled
+				listener = flight.isLeading() ? handler.apply(statusCode, responseHeaders) : new DiscardBodyCompleteListener<>(null);
+			} catch (final RuntimeException e) {
+				flight.fallBack();
+				throw e;
+			}
+			if (joiners == 0) {
+				flight.fallBack();
+				return listener;
+			}
+
+			// Content-Length of a HEAD response describes a body that is not sent
+			final long expectedLength = head ? -1 : ByteArrayCompleteListener.contentLength(responseHeaders);
+			final BodyRecorder recorder = new BodyRecorder(MAX_SHARED_BODY_SIZE, expectedLength) {
+				@Override
+				public void record(final ByteBuffer content) {
+					super.record(content);
+					if (isOverflow()) {
+						// Do not let the joined requests wait for the whole body
+						flight.fallBack();
+					}
+				}
+			};
+			if (recorder.isOverflow()) {
+				LOG.debug("Response body too large to share for {}", key);
+				flight.fallBack();
+				return listener;
+			}
+			LOG.debug("Recording response for {} joined requests for {}", joiners, key);
+			final Runnable share = () -> {
+				final List<ByteBuffer> body = recorder.finish();
+				if (body == null) {
+					flight.fallBack();
+				} else {
+					flight.response.complete(new SharedResponse(statusCode, responseHeaders, new MemoryCachedBody(body)));
+				}
+			};
+			return RecordingBodyHandler.recording(listener, recorder, share, flight::fallBack);
+		}
+	}
+}
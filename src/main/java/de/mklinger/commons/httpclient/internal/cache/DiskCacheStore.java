@@ -0,0 +1,402 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mklinger.commons.httpclient.internal.HttpHeadersImpl;
+
+/**
+ * Cache store that keeps one file per entry in a directory, so that the
+ * cache survives restarts. A file holds the metadata of the entry followed
+ * by the body, which is memory-mapped when the entry is looked up. Served
+ * entries therefore stay readable when their file is replaced by a newer
+ * version or deleted.
+ *
+ * <p>Files are written to a temporary file on a background executor,
+ * forced to disk and then atomically renamed. A crash therefore leaves
+ * either the previous or the new file, and temporary files are removed
+ * when the store is opened. Until its file is written, an entry is served
+ * from memory. The index of entries is kept in memory and rebuilt from the
+ * directory on startup, with the file modification time as initial LRU
+ * order.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class DiskCacheStore implements CacheStore {
+	private static final Logger LOG = LoggerFactory.getLogger(DiskCacheStore.class);
+
+	private static final int MAGIC = 0x48434531;
+	private static final String ENTRY_SUFFIX = ".entry";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final Path directory;
+	private final long maxSize;
+	private final long maxEntrySize;
+	private final Executor writeExecutor;
+	private final AtomicLong tempFileCount = new AtomicLong();
+	private final LinkedHashMap<String, IndexEntry> index = new LinkedHashMap<>(16, 0.75f, true);
+	private long size;
+
+	private static class IndexEntry {
+		private final Path file;
+		private final long fileSize;
+		private final CacheEntry entry;
+
+		public IndexEntry(final Path file, final long fileSize, final CacheEntry entry) {
+			this.file = file;
+			this.fileSize = fileSize;
+			this.entry = entry;
+		}
+	}
+
+	/**
+	 * @param writeExecutor Executor for writing entry files
+	 */
+	public DiskCacheStore(final Path directory, final long maxSize, final long maxEntrySize, final Executor writeExecutor) throws IOException {
+		if (maxSize <= 0 || maxEntrySize <= 0) {
+			throw new IllegalArgumentException("Invalid size: max size " + maxSize + ", max entry size " + maxEntrySize);
+		}
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.maxEntrySize = Math.min(maxEntrySize, maxSize);
+		this.writeExecutor = writeExecutor;
+		Files.createDirectories(directory);
+		load();
+	}
+
+	private void load() throws IOException {
+		final List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (final Path file : stream) {
+				final String fileName = file.getFileName().toString();
+				if (fileName.endsWith(TEMP_SUFFIX)) {
+					// Left over from an interrupted write
+					Files.deleteIfExists(file);
+				} else if (fileName.endsWith(ENTRY_SUFFIX)) {
+					files.add(file);
+				}
+			}
+		}
+
+		files.sort(Comparator.comparing(DiskCacheStore::lastModifiedTime));
+		for (final Path file : files) {
+			try {
+				final Map.Entry<String, CacheEntry> e = readEntry(file);
+				final long fileSize = Files.size(file);
+				index.put(e.getKey(), new IndexEntry(file, fileSize, e.getValue()));
+				size += fileSize;
+			} catch (final IOException e) {
+				LOG.warn("Removing unreadable cache file {}", file, e);
+				Files.deleteIfExists(file);
+			}
+		}
+		LOG.debug("Loaded {} cache entries with {} bytes from {}", index.size(), size, directory);
+		evict();
+	}
+
+	private static long lastModifiedTime(final Path file) {
+		try {
+			return Files.getLastModifiedTime(file).toMillis();
+		} catch (final IOException e) {
+			return 0;
+		}
+	}
+
+	@Override
+	public synchronized CacheEntry get(final String key) {
+		final IndexEntry indexEntry = index.get(key);
+		if (indexEntry == null) {
+			return null;
+		}
+		final CachedBody body = indexEntry.entry.getBody();
+		if (!(body instanceof FileCachedBody)) {
+			return indexEntry.entry;
+		}
+		try {
+			// Mapped while holding the lock, so the file cannot be replaced or
+			// deleted before replays read it
+			return newCacheEntry(indexEntry.entry, ((FileCachedBody) body).map());
+		} catch (final IOException e) {
+			LOG.warn("Removing unreadable cache file {}", indexEntry.file, e);
+			remove(key);
+			return null;
+		}
+	}
+
+	@Override
+	public void put(final String key, final CacheEntry entry) {
+		if (entry.getBodySize() > maxEntrySize) {
+			remove(key);
+			return;
+		}
+		final IndexEntry pending = new IndexEntry(fileFor(key), entry.getBodySize(), entry);
+		synchronized (this) {
+			putIndexEntry(key, pending);
+		}
+		writeExecutor.execute(() -> write(key, pending));
+	}
+
+	private void putIndexEntry(final String key, final IndexEntry indexEntry) {
+		final IndexEntry previous = index.put(key, indexEntry);
+		if (previous != null) {
+			size -= previous.fileSize;
+		}
+		size += indexEntry.fileSize;
+		evict();
+	}
+
+	private void evict() {
+		final Iterator<Map.Entry<String, IndexEntry>> eldest = index.entrySet().iterator();
+		while (size > maxSize && eldest.hasNext()) {
+			final IndexEntry indexEntry = eldest.next().getValue();
+			eldest.remove();
+			size -= indexEntry.fileSize;
+			deleteFile(indexEntry);
+		}
+	}
+
+	private void write(final String key, final IndexEntry pending) {
+		final Path tempFile = directory.resolve(pending.file.getFileName() + "." + tempFileCount.incrementAndGet() + TEMP_SUFFIX);
+		try {
+			final long bodyOffset = writeEntry(tempFile, key, pending.entry);
+			final long fileSize = Files.size(tempFile);
+			synchronized (this) {
+				if (index.get(key) != pending) {
+					// Removed or replaced in the meantime
+					Files.deleteIfExists(tempFile);
+					return;
+				}
+				Files.move(tempFile, pending.file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				final CacheEntry stored = newCacheEntry(pending.entry, new FileCachedBody(pending.file, bodyOffset, pending.entry.getBodySize()));
+				final IndexEntry written = new IndexEntry(pending.file, fileSize, stored);
+				// Serve from the file from now on
+				size += fileSize - pending.fileSize;
+				index.replace(key, written);
+				evict();
+			}
+		} catch (final IOException | RuntimeException e) {
+			LOG.warn("Error writing cache file for {}", key, e);
+			try {
+				Files.deleteIfExists(tempFile);
+			} catch (final IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			synchronized (this) {
+				if (index.get(key) == pending) {
+					index.remove(key);
+					size -= pending.fileSize;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The offset of the body in the file
+	 */
+	private static long writeEntry(final Path file, final String key, final CacheEntry entry) throws IOException {
+		final ByteArrayOutputStream header = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(header)) {
+			out.writeInt(MAGIC);
+			out.writeUTF(key);
+			out.writeInt(entry.getStatusCode());
+			out.writeLong(entry.getRequestTime());
+			out.writeLong(entry.getResponseTime());
+			writeHeaders(out, entry.getHeaders().map());
+			writeHeaders(out, entry.getVaryRequestHeaders());
+			out.writeLong(entry.getBodySize());
+		}
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			writeFully(channel, ByteBuffer.wrap(header.toByteArray()));
+			for (final ByteBuffer buffer : entry.getBody().buffers()) {
+				writeFully(channel, buffer);
+			}
+			channel.force(true);
+		}
+		return header.size();
+	}
+
+	private static void writeHeaders(final DataOutputStream out, final Map<String, List<String>> headers) throws IOException {
+		out.writeInt(headers.size());
+		for (final Map.Entry<String, List<String>> header : headers.entrySet()) {
+			out.writeUTF(header.getKey());
+			out.writeInt(header.getValue().size());
+			for (final String value : header.getValue()) {
+				out.writeUTF(value);
+			}
+		}
+	}
+
+	private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static Map.Entry<String, CacheEntry> readEntry(final Path file) throws IOException {
+		try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			final DataInputStream data = new DataInputStream(counting);
+			if (data.readInt() != MAGIC) {
+				throw new IOException("Not a cache file");
+			}
+			final String key = data.readUTF();
+			final int statusCode = data.readInt();
+			final long requestTime = data.readLong();
+			final long responseTime = data.readLong();
+			final HttpHeadersImpl headers = new HttpHeadersImpl();
+			readHeaders(data).forEach((name, values) -> values.forEach(value -> headers.addHeader(name, value)));
+			final Map<String, List<String>> varyRequestHeaders = readHeaders(data);
+			final long bodySize = data.readLong();
+			final long bodyOffset = counting.getCount();
+			if (Files.size(file) != bodyOffset + bodySize) {
+				throw new IOException("Truncated cache file");
+			}
+			final CacheEntry entry = new CacheEntry(statusCode, headers, varyRequestHeaders, new FileCachedBody(file, bodyOffset, bodySize), requestTime, responseTime);
+			return new SimpleImmutableEntry<>(key, entry);
+		}
+	}
+
+	private static Map<String, List<String>> readHeaders(final DataInputStream in) throws IOException {
+		final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		final int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			final String name = in.readUTF();
+			final int valueCount = in.readInt();
+			final List<String> values = new ArrayList<>(valueCount);
+			for (int j = 0; j < valueCount; j++) {
+				values.add(in.readUTF());
+			}
+			headers.put(name, values);
+		}
+		return headers;
+	}
+
+	private static CacheEntry newCacheEntry(final CacheEntry entry, final CachedBody body) {
+		return new CacheEntry(entry.getStatusCode(), entry.getHeaders(), entry.getVaryRequestHeaders(), body, entry.getRequestTime(), entry.getResponseTime());
+	}
+
+	private Path fileFor(final String key) {
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			final StringBuilder sb = new StringBuilder(digest.length * 2 + ENTRY_SUFFIX.length());
+			for (final byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(b & 0xf, 16));
+			}
+			return directory.resolve(sb.append(ENTRY_SUFFIX).toString());
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void deleteFile(final IndexEntry indexEntry) {
+		// Also removes a file of a previous entry while a new one is written
+		try {
+			Files.deleteIfExists(indexEntry.file);
+		} catch (final IOException e) {
+			LOG.warn("Error deleting cache file {}", indexEntry.file, e);
+		}
+	}
+
+	@Override
+	public synchronized void remove(final String key) {
+		final IndexEntry indexEntry = index.remove(key);
+		if (indexEntry != null) {
+			size -= indexEntry.fileSize;
+			deleteFile(indexEntry);
+		}
+	}
+
+	@Override
+	public synchronized void clear() {
+		for (final IndexEntry indexEntry : index.values()) {
+			deleteFile(indexEntry);
+		}
+		index.clear();
+		size = 0;
+	}
+
+	@Override
+	public synchronized long size() {
+		return size;
+	}
+
+	@Override
+	public synchronized long entryCount() {
+		return index.size();
+	}
+
+	@Override
+	public long getMaxEntrySize() {
+		return maxEntrySize;
+	}
+
+	/**
+	 * Counts the bytes consumed by a {@link DataInputStream}, to find the body
+	 * offset.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private long count;
+
+		public CountingInputStream(final InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b != -1) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			final int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			final long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		public long getCount() {
+			return count;
+		}
+	}
+}
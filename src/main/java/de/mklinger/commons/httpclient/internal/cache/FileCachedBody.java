@@ -0,0 +1,117 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.mklinger.commons.httpclient.internal.FileCompleteListener;
+
+/**
+ * Body stored in a region of a file. Content is memory-mapped when it is
+ * requested, so reading it does not copy it into the Java heap.
+ *
+ * <p>A body returned by {@link #map()} holds its mappings, which stay valid
+ * when the file is deleted or replaced by a newer version of the entry.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class FileCachedBody implements CachedBody {
+	private static final long MAX_MAPPING_SIZE = 1024 * 1024 * 1024;
+
+	private final Path file;
+	private final long offset;
+	private final long size;
+	private final Object fileKey;
+	private final List<ByteBuffer> mappings;
+
+	public FileCachedBody(final Path file, final long offset, final long size) {
+		this(file, offset, size, null, null);
+	}
+
+	private FileCachedBody(final Path file, final long offset, final long size, final Object fileKey, final List<ByteBuffer> mappings) {
+		this.file = file;
+		this.offset = offset;
+		this.size = size;
+		this.fileKey = fileKey;
+		this.mappings = mappings;
+	}
+
+	/**
+	 * Map the body now. The file must not be replaced concurrently.
+	 */
+	public FileCachedBody map() throws IOException {
+		if (mappings != null) {
+			return this;
+		}
+		final Object key = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+		return new FileCachedBody(file, offset, size, key, mapRegion());
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public List<ByteBuffer> buffers() throws IOException {
+		if (mappings == null) {
+			return mapRegion();
+		}
+		final List<ByteBuffer> buffers = new ArrayList<>(mappings.size());
+		for (final ByteBuffer mapping : mappings) {
+			buffers.add(mapping.duplicate());
+		}
+		return Collections.unmodifiableList(buffers);
+	}
+
+	private List<ByteBuffer> mapRegion() throws IOException {
+		if (size == 0) {
+			return Collections.emptyList();
+		}
+		// Mappings stay valid after closing the channel
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			final List<ByteBuffer> buffers = new ArrayList<>();
+			for (long position = 0; position < size; position += MAX_MAPPING_SIZE) {
+				final long mappingSize = Math.min(MAX_MAPPING_SIZE, size - position);
+				buffers.add(channel.map(FileChannel.MapMode.READ_ONLY, offset + position, mappingSize));
+			}
+			return Collections.unmodifiableList(buffers);
+		}
+	}
+
+	/**
+	 * Write the body to the target file of the given listener, copying data
+	 * inside the operating system only. If the mapped file was replaced or
+	 * deleted in the meantime, the mappings are written instead.
+	 */
+	public void transferTo(final FileCompleteListener listener) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// Checked after opening, a later replacement does not affect the channel
+			if (mappings == null || isMappedFile()) {
+				listener.transferFrom(channel, offset, size);
+				return;
+			}
+		} catch (final NoSuchFileException e) {
+			if (mappings == null) {
+				throw e;
+			}
+		}
+		for (final ByteBuffer buffer : buffers()) {
+			while (buffer.hasRemaining()) {
+				listener.onNext(buffer);
+			}
+		}
+	}
+
+	private boolean isMappedFile() throws IOException {
+		return fileKey != null && fileKey.equals(Files.readAttributes(file, BasicFileAttributes.class).fileKey());
+	}
+}
@@ -0,0 +1,84 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import static java.util.Objects.requireNonNull;
+
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.mklinger.commons.httpclient.HttpCache;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class HttpCacheImpl implements HttpCache {
+	private final CacheStore store;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+	public HttpCacheImpl(final CacheStore store) {
+		this.store = requireNonNull(store);
+	}
+
+	public static String key(final URI uri) {
+		final String s = uri.toString();
+		final int idx = s.indexOf('#');
+		return idx == -1 ? s : s.substring(0, idx);
+	}
+
+	public CacheStore getStore() {
+		return store;
+	}
+
+	public void hit() {
+		hits.increment();
+	}
+
+	public void miss() {
+		misses.increment();
+	}
+
+	/**
+	 * Mark a background revalidation for the key as started.
+	 * @return <code>false</code> if one is already running
+	 */
+	public boolean startRevalidation(final String key) {
+		return revalidating.add(key);
+	}
+
+	public void revalidationDone(final String key) {
+		revalidating.remove(key);
+	}
+
+	@Override
+	public long size() {
+		return store.size();
+	}
+
+	@Override
+	public long entryCount() {
+		return store.entryCount();
+	}
+
+	@Override
+	public long hitCount() {
+		return hits.sum();
+	}
+
+	@Override
+	public long missCount() {
+		return misses.sum();
+	}
+
+	@Override
+	public void invalidate(final URI uri) {
+		store.remove(key(uri));
+	}
+
+	@Override
+	public void clear() {
+		store.clear();
+	}
+}
@@ -0,0 +1,42 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Body held in buffers, usually direct ones.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class MemoryCachedBody implements CachedBody {
+	private final List<ByteBuffer> buffers;
+	private final long size;
+
+	/**
+	 * @param buffers The buffers, which must not be modified anymore
+	 */
+	public MemoryCachedBody(final List<ByteBuffer> buffers) {
+		this.buffers = buffers;
+		long s = 0;
+		for (final ByteBuffer buffer : buffers) {
+			s += buffer.remaining();
+		}
+		this.size = s;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public List<ByteBuffer> buffers() {
+		final List<ByteBuffer> duplicates = new ArrayList<>(buffers.size());
+		for (final ByteBuffer buffer : buffers) {
+			duplicates.add(buffer.asReadOnlyBuffer());
+		}
+		return Collections.unmodifiableList(duplicates);
+	}
+}
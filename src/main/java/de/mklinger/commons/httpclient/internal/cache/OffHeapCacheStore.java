@@ -0,0 +1,94 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache store with LRU eviction, bounded by the stored bytes. Bodies are
+ * kept in direct buffers, outside of the Java heap, so that large caches do
+ * not increase garbage collection pauses. Off-heap memory of evicted
+ * entries is freed when their buffers are collected.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class OffHeapCacheStore implements CacheStore {
+	private static final int ENTRY_OVERHEAD = 256;
+
+	private final long maxSize;
+	private final long maxEntrySize;
+	private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long size;
+
+	public OffHeapCacheStore(final long maxSize, final long maxEntrySize) {
+		if (maxSize <= 0 || maxEntrySize <= 0) {
+			throw new IllegalArgumentException("Invalid size: max size " + maxSize + ", max entry size " + maxEntrySize);
+		}
+		this.maxSize = maxSize;
+		this.maxEntrySize = Math.min(maxEntrySize, maxSize);
+	}
+
+	@Override
+	public synchronized CacheEntry get(final String key) {
+		return entries.get(key);
+	}
+
+	@Override
+	public synchronized void put(final String key, final CacheEntry entry) {
+		if (entry.getBodySize() > maxEntrySize) {
+			remove(key);
+			return;
+		}
+		final CacheEntry previous = entries.put(key, entry);
+		if (previous != null) {
+			size -= sizeOf(previous);
+		}
+		size += sizeOf(entry);
+
+		final Iterator<CacheEntry> eldest = entries.values().iterator();
+		while (size > maxSize && eldest.hasNext()) {
+			size -= sizeOf(eldest.next());
+			eldest.remove();
+		}
+	}
+
+	@Override
+	public synchronized void remove(final String key) {
+		final CacheEntry previous = entries.remove(key);
+		if (previous != null) {
+			size -= sizeOf(previous);
+		}
+	}
+
+	@Override
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	@Override
+	public synchronized long size() {
+		return size;
+	}
+
+	@Override
+	public synchronized long entryCount() {
+		return entries.size();
+	}
+
+	@Override
+	public long getMaxEntrySize() {
+		return maxEntrySize;
+	}
+
+	private static long sizeOf(final CacheEntry entry) {
+		long headersSize = 0;
+		for (final Map.Entry<String, List<String>> header : entry.getHeaders().map().entrySet()) {
+			for (final String value : header.getValue()) {
+				headersSize += header.getKey().length() + value.length();
+			}
+		}
+		return ENTRY_OVERHEAD + headersSize + entry.getBodySize();
+	}
+}
@@ -0,0 +1,248 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.mklinger.commons.httpclient.HttpHeaders;
+import de.mklinger.commons.httpclient.HttpRequest;
+import de.mklinger.commons.httpclient.HttpResponse.AsyncBodyCompleteListener;
+import de.mklinger.commons.httpclient.HttpResponse.BodyCompleteListener;
+import de.mklinger.commons.httpclient.HttpResponse.BodyHandler;
+import de.mklinger.commons.httpclient.internal.ByteArrayCompleteListener;
+import de.mklinger.commons.httpclient.internal.DiscardBodyCompleteListener;
+import de.mklinger.commons.httpclient.internal.StreamingBodyCompleteListener;
+
+/**
+ * Body handler for responses to cacheable requests. Storable responses are
+ * passed to the caller's body handler and recorded at the same time. If a
+ * stored entry is being revalidated, a 304 response, or a server error while
+ * stale-if-error applies, is not passed to the caller's body handler; the
+ * stored entry is served instead.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class RecordingBodyHandler<T> implements BodyHandler<T> {
+	private static final Logger LOG = LoggerFactory.getLogger(RecordingBodyHandler.class);
+
+	/** Status codes that are cacheable by default, RFC 7231 section 6.1 */
+	private static final Set<Integer> CACHEABLE_STATUS_CODES = new HashSet<>(Arrays.asList(
+			200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501));
+
+	private final BodyHandler<T> handler;
+	private final HttpCacheImpl cache;
+	private final String key;
+	private final HttpRequest request;
+	private final CacheEntry entry;
+	private final CacheControl requestCacheControl;
+	private final long requestTime;
+
+	private volatile long responseTime;
+	private volatile HttpHeaders notModifiedHeaders;
+	private volatile boolean staleIfError;
+	private volatile boolean handlerApplied;
+
+	/**
+	 * @param entry The stored entry being revalidated or <code>null</code>
+	 */
+	public RecordingBodyHandler(final BodyHandler<T> handler, final HttpCacheImpl cache, final String key, final HttpRequest request, final CacheEntry entry, final CacheControl requestCacheControl, final long requestTime) {
+		this.handler = handler;
+		this.cache = cache;
+		this.key = key;
+		this.request = request;
+		this.entry = entry;
+		this.requestCacheControl = requestCacheControl;
+		this.requestTime = requestTime;
+	}
+
+	@Override
+	public BodyCompleteListener<T> apply(final int statusCode, final HttpHeaders responseHeaders) {
+		final long now = System.currentTimeMillis();
+		responseTime = now;
+
+		if (entry != null) {
+			if (statusCode == 304) {
+				notModifiedHeaders = responseHeaders;
+				return new DiscardBodyCompleteListener<>(null);
+			}
+			if (statusCode >= 500 && entry.isUsableIfError(now, requestCacheControl)) {
+				LOG.debug("Server error {}, serving stale response for {}", statusCode, key);
+				staleIfError = true;
+				return new DiscardBodyCompleteListener<>(null);
+			}
+		}
+
+		handlerApplied = true;
+		final BodyCompleteListener<T> listener = handler.apply(statusCode, responseHeaders);
+
+		final Map<String, List<String>> varyRequestHeaders = isStorable(statusCode, responseHeaders)
+				? CacheEntry.varyRequestHeaders(responseHeaders, request)
+				: null;
+		if (varyRequestHeaders == null) {
+			return listener;
+		}
+
+		final BodyRecorder recorder = new BodyRecorder(cache.getStore().getMaxEntrySize(), ByteArrayCompleteListener.contentLength(responseHeaders));
+		if (recorder.isOverflow()) {
+			return listener;
+		}
+		final Runnable store = () -> {
+			final List<ByteBuffer> body = recorder.finish();
+			if (body != null) {
+				LOG.debug("Storing response for {}", key);
+				cache.getStore().put(key, new CacheEntry(statusCode, responseHeaders, varyRequestHeaders, new MemoryCachedBody(body), requestTime, now));
+			}
+		};
+		// Incomplete content is simply not stored
+		return recording(listener, recorder, store, () -> {});
+	}
+
+	/**
+	 * Wrap the given listener to record the content it receives, keeping its
+	 * listener type. The store callback runs after the body was completed,
+	 * the abandon callback when the listener is closed without that.
+	 */
+	static <T> BodyCompleteListener<T> recording(final BodyCompleteListener<T> listener, final BodyRecorder recorder, final Runnable store, final Runnable abandon) {
+		if (listener instanceof StreamingBodyCompleteListener) {
+			return new StreamingRecordingListener<>((StreamingBodyCompleteListener<T>) listener, recorder, store, abandon);
+		} else if (listener instanceof AsyncBodyCompleteListener) {
+			return new AsyncRecordingListener<>((AsyncBodyCompleteListener<T>) listener, recorder, store, abandon);
+		} else {
+			return new RecordingListener<>(listener, recorder, store, abandon);
+		}
+	}
+
+	private boolean isStorable(final int statusCode, final HttpHeaders responseHeaders) {
+		if (!CACHEABLE_STATUS_CODES.contains(statusCode)) {
+			return false;
+		}
+		final CacheControl cacheControl = CacheControl.parse(responseHeaders.allValues("Cache-Control"));
+		if (cacheControl.isNoStore()) {
+			return false;
+		}
+		// Without expiration or validators, the response could never be used
+		return cacheControl.getMaxAge() != -1
+				|| responseHeaders.firstValue("Expires").isPresent()
+				|| responseHeaders.firstValue("ETag").isPresent()
+				|| responseHeaders.firstValue("Last-Modified").isPresent();
+	}
+
+	public long getRequestTime() {
+		return requestTime;
+	}
+
+	public long getResponseTime() {
+		return responseTime;
+	}
+
+	/**
+	 * @return The headers of a 304 response or <code>null</code>
+	 */
+	public HttpHeaders getNotModifiedHeaders() {
+		return notModifiedHeaders;
+	}
+
+	/**
+	 * @return Whether the stored entry should be served because of a server
+	 *         error
+	 */
+	public boolean isStaleIfError() {
+		return staleIfError;
+	}
+
+	/**
+	 * @return Whether the caller's body handler was applied to the response
+	 */
+	public boolean isHandlerApplied() {
+		return handlerApplied;
+	}
+
+	private static class RecordingListener<T, L extends BodyCompleteListener<T>> implements BodyCompleteListener<T> {
+		protected final L delegate;
+		protected final BodyRecorder recorder;
+		protected final Runnable store;
+		protected final Runnable abandon;
+		private volatile boolean stored;
+
+		public RecordingListener(final L delegate, final BodyRecorder recorder, final Runnable store, final Runnable abandon) {
+			this.delegate = delegate;
+			this.recorder = recorder;
+			this.store = store;
+			this.abandon = abandon;
+		}
+
+		@Override
+		public void onNext(final ByteBuffer content) throws Exception {
+			recorder.record(content);
+			delegate.onNext(content);
+		}
+
+		@Override
+		public void onComplete() throws Exception {
+			delegate.onComplete();
+			store();
+		}
+
+		protected void store() {
+			stored = true;
+			store.run();
+		}
+
+		@Override
+		public T getBody() throws Exception {
+			return delegate.getBody();
+		}
+
+		@Override
+		public void close() throws Exception {
+			try {
+				if (!stored) {
+					abandon.run();
+				}
+			} finally {
+				delegate.close();
+			}
+		}
+	}
+
+	private static class AsyncRecordingListener<T, L extends AsyncBodyCompleteListener<T>> extends RecordingListener<T, L> implements AsyncBodyCompleteListener<T> {
+		public AsyncRecordingListener(final L delegate, final BodyRecorder recorder, final Runnable store, final Runnable abandon) {
+			super(delegate, recorder, store, abandon);
+		}
+
+		@Override
+		public CompletionStage<?> onNextAsync(final ByteBuffer content) throws Exception {
+			recorder.record(content);
+			return delegate.onNextAsync(content);
+		}
+
+		@Override
+		public CompletionStage<?> onCompleteAsync() throws Exception {
+			return delegate.onCompleteAsync().thenRun(this::store);
+		}
+	}
+
+	private static class StreamingRecordingListener<T> extends AsyncRecordingListener<T, StreamingBodyCompleteListener<T>> implements StreamingBodyCompleteListener<T> {
+		public StreamingRecordingListener(final StreamingBodyCompleteListener<T> delegate, final BodyRecorder recorder, final Runnable store, final Runnable abandon) {
+			super(delegate, recorder, store, abandon);
+		}
+
+		@Override
+		public void onError(final Throwable error) {
+			delegate.onError(error);
+		}
+
+		@Override
+		public void setAbortHandler(final Consumer<Throwable> abortHandler) {
+			delegate.setAbortHandler(abortHandler);
+		}
+	}
+}
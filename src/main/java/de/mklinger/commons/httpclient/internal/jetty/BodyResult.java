@@ -1,21 +1,21 @@
 package de.mklinger.commons.httpclient.internal.jetty;
 
-import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.api.Response;
 
 /**
  * @author Marc Klinger - mklinger[at]mklinger[dot]de
  */
 public class BodyResult<T> {
-	private final Result result;
+	private final Response response;
 	private final T body;
 
-	public BodyResult(final Result result, final T body) {
-		this.result = result;
+	public BodyResult(final Response response, final T body) {
+		this.response = response;
 		this.body = body;
 	}
 
-	public Result getResult() {
-		return result;
+	public Response getResponse() {
+		return response;
 	}
 
 	public T getBody() {
@@ -0,0 +1,107 @@
+package de.mklinger.commons.httpclient.internal.jetty;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.net.ssl.SSLEngine;
+
+import org.conscrypt.Conscrypt;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Selects the HTTP/2 or the HTTP/1.1 client per origin. Secure origins are
+ * tried with HTTP/2 first. The selector must be added as a bean to the
+ * HTTP/2 connector, so that it sees the outcome of the ALPN negotiation of
+ * every TLS handshake. Origins that do not select h2 are remembered, and
+ * requests to them use HTTP/1.1 from then on. Clear text origins use
+ * HTTP/1.1, unless they are configured for HTTP/2 with prior knowledge
+ * (h2c).
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class DynamicProtocolSelector implements SslHandshakeListener {
+	private static final Logger LOG = LoggerFactory.getLogger(DynamicProtocolSelector.class);
+
+	private final HttpClient http2Client;
+	private final HttpClient http11Client;
+	private final Set<String> priorKnowledgeOrigins;
+	private final Set<String> http11Origins = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param priorKnowledgeOrigins Clear text origins to use HTTP/2 for, as
+	 *        returned by {@link #origin(URI)}
+	 */
+	public DynamicProtocolSelector(final HttpClient http2Client, final HttpClient http11Client, final Set<String> priorKnowledgeOrigins) {
+		this.http2Client = http2Client;
+		this.http11Client = http11Client;
+		this.priorKnowledgeOrigins = priorKnowledgeOrigins;
+	}
+
+	public HttpClient getHttp2Client() {
+		return http2Client;
+	}
+
+	public HttpClient getHttp11Client() {
+		return http11Client;
+	}
+
+	/**
+	 * @return The client to use for the given URI
+	 */
+	public HttpClient select(final URI uri) {
+		if (!HttpClient.isSchemeSecure(uri.getScheme())) {
+			return priorKnowledgeOrigins.contains(origin(uri)) ? http2Client : http11Client;
+		}
+		return isHttp11Origin(uri) ? http11Client : http2Client;
+	}
+
+	/**
+	 * @return Whether the given origin is known to not support HTTP/2
+	 */
+	public boolean isHttp11Origin(final URI uri) {
+		return http11Origins.contains(origin(uri));
+	}
+
+	/**
+	 * @return The host and port of the given URI, with the default port of
+	 *         the scheme if none is given
+	 */
+	public static String origin(final URI uri) {
+		final int port = uri.getPort() == -1 ? HttpClient.normalizePort(uri.getScheme(), -1) : uri.getPort();
+		return origin(uri.getHost(), port);
+	}
+
+	private static String origin(final String host, final int port) {
+		return (host == null ? "" : host.toLowerCase(Locale.ROOT)) + ":" + port;
+	}
+
+	@Override
+	public void handshakeSucceeded(final Event event) {
+		final SSLEngine sslEngine = event.getSSLEngine();
+		final String protocol = Conscrypt.isConscrypt(sslEngine) ? Conscrypt.getApplicationProtocol(sslEngine) : null;
+		if (protocol == null || !protocol.startsWith("h2")) {
+			addHttp11Origin(sslEngine, protocol);
+		}
+	}
+
+	@Override
+	public void handshakeFailed(final Event event, final Throwable failure) {
+		// Servers may also reject the handshake if they support no offered protocol
+		final String message = String.valueOf(failure.getMessage()).toLowerCase(Locale.ROOT);
+		if (message.contains("no_application_protocol")) {
+			addHttp11Origin(event.getSSLEngine(), null);
+		}
+	}
+
+	private void addHttp11Origin(final SSLEngine sslEngine, final String protocol) {
+		final String origin = origin(sslEngine.getPeerHost(), sslEngine.getPeerPort());
+		if (http11Origins.add(origin)) {
+			LOG.debug("Origin {} selected protocol {} instead of h2, using HTTP/1.1", origin, protocol);
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package de.mklinger.commons.httpclient.internal.jetty;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Response.Listener;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.util.Callback;
+
+import de.mklinger.commons.httpclient.EventListener;
+import de.mklinger.commons.httpclient.HttpRequest;
+
+/**
+ * Response listener that reports response events to an
+ * {@link EventListener}. Only installed if an event listener is registered.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class EventResponseListener extends ResponseListenerWrapper {
+	private final EventListener eventListener;
+	private final HttpRequest request;
+	// Response events of a single exchange are not called concurrently
+	private boolean firstByteReceived;
+
+	public EventResponseListener(final Listener delegate, final EventListener eventListener, final HttpRequest request) {
+		super(delegate);
+		this.eventListener = eventListener;
+		this.request = request;
+	}
+
+	@Override
+	public void onHeaders(final Response response) {
+		eventListener.responseHeadersReceived(request, response.getStatus(), System.nanoTime());
+		super.onHeaders(response);
+	}
+
+	@Override
+	public void onContent(final Response response, final ByteBuffer content) {
+		firstByte();
+		super.onContent(response, content);
+	}
+
+	@Override
+	public void onContent(final Response response, final ByteBuffer content, final Callback callback) {
+		firstByte();
+		super.onContent(response, content, callback);
+	}
+
+	private void firstByte() {
+		if (!firstByteReceived) {
+			firstByteReceived = true;
+			eventListener.responseFirstByte(request, System.nanoTime());
+		}
+	}
+
+	@Override
+	public void onComplete(final Result result) {
+		try {
+			super.onComplete(result);
+		} finally {
+			eventListener.requestCompleted(request, result.getFailure(), System.nanoTime());
+		}
+	}
+}
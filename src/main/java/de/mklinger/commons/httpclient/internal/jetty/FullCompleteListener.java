@@ -1,18 +1,28 @@
 package de.mklinger.commons.httpclient.internal.jetty;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
+import java.util.zip.ZipException;
 
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Response.Listener;
 import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.util.Callback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.mklinger.commons.httpclient.HttpHeaders;
 import de.mklinger.commons.httpclient.HttpResponse;
+import de.mklinger.commons.httpclient.HttpResponse.AsyncBodyCompleteListener;
 import de.mklinger.commons.httpclient.HttpResponse.BodyCompleteListener;
+import de.mklinger.commons.httpclient.internal.HttpHeadersImpl;
+import de.mklinger.commons.httpclient.internal.InflatingContentDecoder;
+import de.mklinger.commons.httpclient.internal.RawBodyHandler;
+import de.mklinger.commons.httpclient.internal.StreamingBodyCompleteListener;
 
 /**
  * @author Marc Klinger - mklinger[at]mklinger[dot]de
@@ -22,75 +32,245 @@ public class FullCompleteListener<T> extends Listener.Adapter {
 
 	private final Executor completionExecutor;
 	private final CompletableFuture<BodyResult<T>> result;
+	private final CompletableFuture<Void> exchangeResult;
 	private final HttpResponse.BodyHandler<T> responseBodyHandler;
+	private final boolean decompression;
 
 	private volatile BodyCompleteListener<T> bodyCompleteListener;
+	private final Object decoderLock = new Object();
+	private volatile InflatingContentDecoder decoder;
 
 	public FullCompleteListener(final Executor completionExecutor, final HttpResponse.BodyHandler<T> responseBodyHandler) {
+		this(completionExecutor, responseBodyHandler, false);
+	}
+
+	/**
+	 * @param decompression Whether to decode gzip and deflate encoded bodies
+	 *        before passing them to the body handler
+	 */
+	public FullCompleteListener(final Executor completionExecutor, final HttpResponse.BodyHandler<T> responseBodyHandler, final boolean decompression) {
 		this.completionExecutor = completionExecutor;
 		this.result = new CompletableFuture<>();
+		this.exchangeResult = new CompletableFuture<>();
 		this.responseBodyHandler = responseBodyHandler;
+		this.decompression = decompression && !(responseBodyHandler instanceof RawBodyHandler);
 	}
 
 	@Override
 	public void onHeaders(final Response response) {
 		final int statusCode = response.getStatus();
-		final HttpHeaders responseHeaders = HeadersTransformation.toHttpHeaders(response.getHeaders());
+		HttpHeaders responseHeaders = HeadersTransformation.toHttpHeaders(response.getHeaders());
 
 		LOG.debug("Response: Have headers, setting up body handling");
 		LOG.debug("Headers: {}", responseHeaders.map());
 
 		try {
+			if (decompression) {
+				decoder = InflatingContentDecoder.forContentEncoding(response.getHeaders().get(HttpHeader.CONTENT_ENCODING));
+				if (decoder != null) {
+					LOG.debug("Decoding body with content encoding {}", response.getHeaders().get(HttpHeader.CONTENT_ENCODING));
+					responseHeaders = toDecodedHeaders((HttpHeadersImpl) responseHeaders);
+				}
+			}
 			bodyCompleteListener = responseBodyHandler.apply(statusCode, responseHeaders);
+			if (bodyCompleteListener instanceof StreamingBodyCompleteListener) {
+				LOG.debug("Streaming body, completing response early");
+				((StreamingBodyCompleteListener<T>) bodyCompleteListener).setAbortHandler(response::abort);
+				complete(new BodyResult<>(response, bodyCompleteListener.getBody()));
+			}
 		} catch (final Throwable e) {
 			handleError(response, e);
 		}
 	}
 
+	private static HttpHeaders toDecodedHeaders(final HttpHeadersImpl responseHeaders) {
+		// Both refer to the encoded content
+		responseHeaders.removeHeader(HttpHeader.CONTENT_ENCODING.asString());
+		responseHeaders.removeHeader(HttpHeader.CONTENT_LENGTH.asString());
+		return responseHeaders;
+	}
+
 	@Override
 	public void onContent(final Response response, final ByteBuffer content) {
 		try {
-			bodyCompleteListener.onNext(content);
+			final InflatingContentDecoder d = decoder;
+			if (d == null) {
+				bodyCompleteListener.onNext(content);
+			} else {
+				setInput(d, content);
+				ByteBuffer decoded;
+				while ((decoded = nextOutput(d)) != null) {
+					bodyCompleteListener.onNext(decoded);
+				}
+			}
 		} catch (final Throwable e) {
 			handleError(response, e);
 		}
 	}
 
 	@Override
-	public void onComplete(final Result result) {
+	public void onContent(final Response response, final ByteBuffer content, final Callback callback) {
+		final BodyCompleteListener<T> l = bodyCompleteListener;
+		if (!(l instanceof AsyncBodyCompleteListener)) {
+			// Content is consumed when onNext() returns
+			super.onContent(response, content, callback);
+			return;
+		}
+
+		// Demand more content only after the listener is done with this chunk
 		try {
+			onNextAsync((AsyncBodyCompleteListener<T>) l, content).whenComplete((unused, e) -> {
+				if (e == null) {
+					callback.succeeded();
+				} else {
+					handleError(response, e);
+					callback.failed(e);
+				}
+			});
+		} catch (final Throwable e) {
+			handleError(response, e);
+			callback.failed(e);
+		}
+	}
+
+	private CompletionStage<?> onNextAsync(final AsyncBodyCompleteListener<T> l, final ByteBuffer content) throws ZipException {
+		final InflatingContentDecoder d = decoder;
+		if (d == null) {
+			return l.onNextAsync(content);
+		}
+		setInput(d, content);
+		return onNextDecodedAsync(l, d);
+	}
+
+	private CompletableFuture<Void> onNextDecodedAsync(final AsyncBodyCompleteListener<T> l, final InflatingContentDecoder d) throws ZipException {
+		ByteBuffer decoded;
+		while ((decoded = nextOutput(d)) != null) {
+			final CompletableFuture<?> stage = l.onNextAsync(decoded).toCompletableFuture();
+			if (!stage.isDone() || stage.isCompletedExceptionally()) {
+				// Continue decoding only after the listener is done with this chunk
+				return stage.thenCompose(unused -> {
+					try {
+						return onNextDecodedAsync(l, d);
+					} catch (final ZipException e) {
+						final CompletableFuture<Void> failed = new CompletableFuture<>();
+						failed.completeExceptionally(e);
+						return failed;
+					}
+				});
+			}
+		}
+		return CompletableFuture.completedFuture(null);
+	}
+
+	private void setInput(final InflatingContentDecoder d, final ByteBuffer content) {
+		synchronized (decoderLock) {
+			checkDecoder(d);
+			d.setInput(content);
+		}
+	}
+
+	/**
+	 * Decoding continues on the thread that completed the previous chunk,
+	 * while the exchange may fail concurrently. Use and close of the decoder
+	 * are serialized, so that its inflater is not returned to the pool while
+	 * still inflating.
+	 */
+	private ByteBuffer nextOutput(final InflatingContentDecoder d) throws ZipException {
+		synchronized (decoderLock) {
+			checkDecoder(d);
+			return d.nextOutput();
+		}
+	}
 
-			final Throwable resultFailure = result.getFailure();
-			if (resultFailure != null) {
-				handleError(null, resultFailure);
+	private void finishDecoder(final InflatingContentDecoder d) throws ZipException {
+		synchronized (decoderLock) {
+			checkDecoder(d);
+			d.finish();
+		}
+	}
+
+	private void checkDecoder(final InflatingContentDecoder d) {
+		if (decoder != d) {
+			throw new CancellationException("Content decoding was aborted");
+		}
+	}
+
+	@Override
+	public void onComplete(final Result result) {
+		final Throwable failure = result.getFailure();
+		if (failure != null) {
+			handleError(null, failure);
+			finish(failure);
+			return;
+		}
+
+		final BodyCompleteListener<T> l = bodyCompleteListener;
+		try {
+			final InflatingContentDecoder d = decoder;
+			if (d != null) {
+				finishDecoder(d);
+			}
+			if (l instanceof AsyncBodyCompleteListener) {
+				((AsyncBodyCompleteListener<T>) l).onCompleteAsync().whenComplete((unused, e) -> {
+					if (e == null) {
+						completeBody(result.getResponse(), l);
+					} else {
+						handleError(null, e);
+						finish(e);
+					}
+				});
 			} else {
-				try {
-					bodyCompleteListener.onComplete();
-					complete(new BodyResult<>(result, bodyCompleteListener.getBody()));
-				} catch (final Throwable e) {
-					handleError(null, e);
-				}
+				l.onComplete();
+				completeBody(result.getResponse(), l);
 			}
+		} catch (final Throwable e) {
+			handleError(null, e);
+			finish(e);
+		}
+	}
 
-		} finally {
+	private void completeBody(final Response response, final BodyCompleteListener<T> l) {
+		Throwable failure = null;
+		try {
+			complete(new BodyResult<>(response, l.getBody()));
+		} catch (final Throwable e) {
+			failure = e;
+			handleError(null, e);
+		}
+		finish(failure);
+	}
 
-			final BodyCompleteListener<T> l = bodyCompleteListener;
-			bodyCompleteListener = null;
-			if (l != null) {
-				try {
-					l.close();
-				} catch (final Throwable e) {
-					// TODO call handleError() from here?
-					completeExceptionally(e);
-				}
+	private void finish(final Throwable failure) {
+		closeDecoder();
+		final BodyCompleteListener<T> l = bodyCompleteListener;
+		bodyCompleteListener = null;
+		if (l != null) {
+			try {
+				l.close();
+			} catch (final Throwable e) {
+				// TODO call handleError() from here?
+				completeExceptionally(e);
 			}
+		}
 
+		if (failure != null) {
+			exchangeResult.completeExceptionally(failure);
+		} else {
+			exchangeResult.complete(null);
 		}
 	}
 
 	private void handleError(final Response response, final Throwable e) {
+		closeDecoder();
 		final BodyCompleteListener<T> l = bodyCompleteListener;
 		bodyCompleteListener = null;
+		if (l instanceof StreamingBodyCompleteListener) {
+			try {
+				((StreamingBodyCompleteListener<T>) l).onError(e);
+			} catch (final Throwable suppressed) {
+				e.addSuppressed(suppressed);
+			}
+		}
 		if (l != null) {
 			try {
 				l.close();
@@ -116,6 +296,16 @@ public class FullCompleteListener<T> extends Listener.Adapter {
 		LOG.debug("Error in complete listener", e);
 	}
 
+	private void closeDecoder() {
+		synchronized (decoderLock) {
+			final InflatingContentDecoder d = decoder;
+			decoder = null;
+			if (d != null) {
+				d.close();
+			}
+		}
+	}
+
 	private void complete(final BodyResult<T> bodyResult) {
 		completionExecutor.execute(() -> this.result.complete(bodyResult));
 	}
@@ -124,7 +314,19 @@ public class FullCompleteListener<T> extends Listener.Adapter {
 		completionExecutor.execute(() -> this.result.completeExceptionally(e));
 	}
 
+	/**
+	 * Get the result future. For streaming bodies, this completes when the
+	 * response headers are received.
+	 */
 	public CompletableFuture<BodyResult<T>> getResult() {
 		return result;
 	}
+
+	/**
+	 * Get a future that completes inline when the exchange is complete,
+	 * including the response body.
+	 */
+	public CompletableFuture<Void> getExchangeResult() {
+		return exchangeResult;
+	}
 }
@@ -0,0 +1,274 @@
+package de.mklinger.commons.httpclient.internal.jetty;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.client.DuplexConnectionPool;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http2.HTTP2Session;
+
+import de.mklinger.commons.httpclient.HttpClientMetrics;
+import de.mklinger.commons.httpclient.internal.LatencyRecorder;
+import de.mklinger.commons.httpclient.internal.TlsSessionSslContextFactory;
+
+/**
+ * Metrics of a single {@link JettyHttpClient}. Recording is lock-free;
+ * gauges are computed when taking a snapshot.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class JettyClientMetrics {
+	private final Set<HTTP2Session> openSessions = ConcurrentHashMap.newKeySet();
+	private final LongAdder requestsStarted = new LongAdder();
+	private final LongAdder requestsSucceeded = new LongAdder();
+	private final LongAdder requestsFailed = new LongAdder();
+	private final LongAdder requestsTimedOut = new LongAdder();
+	private final LongAdder http11Responses = new LongAdder();
+	private final LongAdder http2Responses = new LongAdder();
+	private final LongAdder bytesSent = new LongAdder();
+	private final LongAdder bytesReceived = new LongAdder();
+	private final LatencyRecorder responseHeadersLatency = new LatencyRecorder();
+	private final LatencyRecorder requestLatency = new LatencyRecorder();
+
+	public void sessionOpened(final HTTP2Session session) {
+		openSessions.add(session);
+	}
+
+	public void sessionClosed(final HTTP2Session session) {
+		openSessions.remove(session);
+	}
+
+	public void requestStarted() {
+		requestsStarted.increment();
+	}
+
+	public void responseHeadersReceived(final long startNanos, final HttpVersion version) {
+		responseHeadersLatency.record(System.nanoTime() - startNanos);
+		if (version == HttpVersion.HTTP_2) {
+			http2Responses.increment();
+		} else {
+			http11Responses.increment();
+		}
+	}
+
+	public void requestCompleted(final long startNanos, final Throwable failure) {
+		requestLatency.record(System.nanoTime() - startNanos);
+		if (failure == null) {
+			requestsSucceeded.increment();
+		} else {
+			requestsFailed.increment();
+			if (isTimeout(failure)) {
+				requestsTimedOut.increment();
+			}
+		}
+	}
+
+	private static boolean isTimeout(final Throwable failure) {
+		for (Throwable t = failure; t != null; t = t.getCause()) {
+			if (t instanceof TimeoutException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void bytesSent(final int bytes) {
+		bytesSent.add(bytes);
+	}
+
+	public void bytesReceived(final int bytes) {
+		bytesReceived.add(bytes);
+	}
+
+	/**
+	 * @param http11Client The additional HTTP/1.1 client or <code>null</code>
+	 */
+	public HttpClientMetrics snapshot(final org.eclipse.jetty.client.HttpClient jettyClient, final org.eclipse.jetty.client.HttpClient http11Client) {
+		long activeStreams = 0;
+		for (final HTTP2Session session : openSessions) {
+			activeStreams += session.getStreams().size();
+		}
+
+		long queuedRequests = queuedRequests(jettyClient);
+		long openHttp11Connections = openHttp11Connections(jettyClient);
+		if (http11Client != null) {
+			queuedRequests += queuedRequests(http11Client);
+			openHttp11Connections += openHttp11Connections(http11Client);
+		}
+
+		// Both clients share the SSL context factory
+		long tlsSessionsResumed = 0;
+		long tlsFullHandshakes = 0;
+		if (jettyClient.getSslContextFactory() instanceof TlsSessionSslContextFactory) {
+			final TlsSessionSslContextFactory sslContextFactory = (TlsSessionSslContextFactory) jettyClient.getSslContextFactory();
+			tlsSessionsResumed = sslContextFactory.getResumedHandshakes();
+			tlsFullHandshakes = sslContextFactory.getFullHandshakes();
+		}
+
+		return new Snapshot(
+				openSessions.size(),
+				activeStreams,
+				openHttp11Connections,
+				queuedRequests,
+				requestsStarted.sum(),
+				requestsSucceeded.sum(),
+				requestsFailed.sum(),
+				requestsTimedOut.sum(),
+				http11Responses.sum(),
+				http2Responses.sum(),
+				tlsSessionsResumed,
+				tlsFullHandshakes,
+				bytesSent.sum(),
+				bytesReceived.sum(),
+				responseHeadersLatency.snapshot(),
+				requestLatency.snapshot());
+	}
+
+	private static long queuedRequests(final org.eclipse.jetty.client.HttpClient jettyClient) {
+		long queuedRequests = 0;
+		for (final Destination destination : jettyClient.getDestinations()) {
+			if (destination instanceof HttpDestination) {
+				queuedRequests += ((HttpDestination) destination).getQueuedRequestCount();
+			}
+		}
+		return queuedRequests;
+	}
+
+	private static long openHttp11Connections(final org.eclipse.jetty.client.HttpClient jettyClient) {
+		long connections = 0;
+		for (final Destination destination : jettyClient.getDestinations()) {
+			if (destination instanceof HttpDestination && ((HttpDestination) destination).getConnectionPool() instanceof DuplexConnectionPool) {
+				connections += ((DuplexConnectionPool) ((HttpDestination) destination).getConnectionPool()).getConnectionCount();
+			}
+		}
+		return connections;
+	}
+
+	private static class Snapshot implements HttpClientMetrics {
+		private final long openSessions;
+		private final long activeStreams;
+		private final long openHttp11Connections;
+		private final long queuedRequests;
+		private final long requestsStarted;
+		private final long requestsSucceeded;
+		private final long requestsFailed;
+		private final long requestsTimedOut;
+		private final long http11Responses;
+		private final long http2Responses;
+		private final long tlsSessionsResumed;
+		private final long tlsFullHandshakes;
+		private final long bytesSent;
+		private final long bytesReceived;
+		private final Histogram responseHeadersLatency;
+		private final Histogram requestLatency;
+
+		public Snapshot(final long openSessions, final long activeStreams, final long openHttp11Connections, final long queuedRequests,
+				final long requestsStarted, final long requestsSucceeded, final long requestsFailed, final long requestsTimedOut,
+				final long http11Responses, final long http2Responses, final long tlsSessionsResumed, final long tlsFullHandshakes,
+				final long bytesSent, final long bytesReceived,
+				final Histogram responseHeadersLatency, final Histogram requestLatency) {
+			this.openSessions = openSessions;
+			this.activeStreams = activeStreams;
+			this.openHttp11Connections = openHttp11Connections;
+			this.queuedRequests = queuedRequests;
+			this.requestsStarted = requestsStarted;
+			this.requestsSucceeded = requestsSucceeded;
+			this.requestsFailed = requestsFailed;
+			this.requestsTimedOut = requestsTimedOut;
+			this.http11Responses = http11Responses;
+			this.http2Responses = http2Responses;
+			this.tlsSessionsResumed = tlsSessionsResumed;
+			this.tlsFullHandshakes = tlsFullHandshakes;
+			this.bytesSent = bytesSent;
+			this.bytesReceived = bytesReceived;
+			this.responseHeadersLatency = responseHeadersLatency;
+			this.requestLatency = requestLatency;
+		}
+
+		@Override
+		public long openSessions() {
+			return openSessions;
+		}
+
+		@Override
+		public long activeStreams() {
+			return activeStreams;
+		}
+
+		@Override
+		public long openHttp11Connections() {
+			return openHttp11Connections;
+		}
+
+		@Override
+		public long queuedRequests() {
+			return queuedRequests;
+		}
+
+		@Override
+		public long requestsStarted() {
+			return requestsStarted;
+		}
+
+		@Override
+		public long requestsSucceeded() {
+			return requestsSucceeded;
+		}
+
+		@Override
+		public long requestsFailed() {
+			return requestsFailed;
+		}
+
+		@Override
+		public long requestsTimedOut() {
+			return requestsTimedOut;
+		}
+
+		@Override
+		public long responsesReceived(final de.mklinger.commons.httpclient.HttpVersion version) {
+			switch (version) {
+			case HTTP_1_1:
+				return http11Responses;
+			case HTTP_2:
+				return http2Responses;
+			default:
+				throw new IllegalArgumentException(version.name());
+			}
+		}
+
+		@Override
+		public long tlsSessionsResumed() {
+			return tlsSessionsResumed;
+		}
+
+		@Override
+		public long tlsFullHandshakes() {
+			return tlsFullHandshakes;
+		}
+
+		@Override
+		public long bytesSent() {
+			return bytesSent;
+		}
+
+		@Override
+		public long bytesReceived() {
+			return bytesReceived;
+		}
+
+		@Override
+		public Histogram responseHeadersLatency() {
+			return responseHeadersLatency;
+		}
+
+		@Override
+		public Histogram requestLatency() {
+			return requestLatency;
+		}
+	}
+}
@@ -1,49 +1,92 @@
 package de.mklinger.commons.httpclient.internal.jetty;
 
+import java.net.URI;
 import java.time.Duration;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.eclipse.jetty.client.HttpDestination;
 import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.api.Request;
-import org.eclipse.jetty.client.api.Response.CompleteListener;
+import org.eclipse.jetty.client.api.Response.Listener;
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http2.HTTP2Session;
 import org.eclipse.jetty.util.component.Container;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.mklinger.commons.httpclient.EventListener;
 import de.mklinger.commons.httpclient.HttpClient;
+import de.mklinger.commons.httpclient.HttpClientMetrics;
 import de.mklinger.commons.httpclient.HttpRequest;
 import de.mklinger.commons.httpclient.HttpRequest.BodyProvider;
 import de.mklinger.commons.httpclient.HttpResponse;
 import de.mklinger.commons.httpclient.HttpResponse.BodyHandler;
+import de.mklinger.commons.httpclient.internal.AbstractHttpClient;
+import de.mklinger.commons.httpclient.internal.AsyncBodyProvider;
+import de.mklinger.commons.httpclient.internal.EncodedBodyProvider;
 import de.mklinger.commons.httpclient.internal.NoBodyProvider;
 
 /**
  * @author Marc Klinger - mklinger[at]mklinger[dot]de
  */
-public class JettyHttpClient implements HttpClient {
+public class JettyHttpClient extends AbstractHttpClient {
 	private static final Logger LOG = LoggerFactory.getLogger(JettyHttpClient.class);
 
 	private final org.eclipse.jetty.client.HttpClient jettyClient;
+	private final DynamicProtocolSelector protocolSelector;
+	private final Executor completionExecutor;
+	private final JettyClientMetrics metrics;
+	private final EventListener eventListener;
+	private final boolean decompression;
+	private final int warmUpConnections;
 	private volatile boolean closed = false;
 
-	public JettyHttpClient(final org.eclipse.jetty.client.HttpClient jettyClient) {
+	/**
+	 * @param eventListener The event listener or <code>null</code>
+	 * @param decompression Whether to request and decode compressed response
+	 *        bodies. Jetty's own content decoders must be removed in this case.
+	 * @param warmUpConnections The number of connections to open per origin
+	 *        on {@link #warmUp(URI...)}
+	 */
+	public JettyHttpClient(final org.eclipse.jetty.client.HttpClient jettyClient, final Executor completionExecutor, final EventListener eventListener, final boolean decompression, final int warmUpConnections) {
+		this(jettyClient, null, completionExecutor, eventListener, decompression, warmUpConnections);
+	}
+
+	/**
+	 * Create a client that selects the HTTP/2 or HTTP/1.1 client of the given
+	 * selector per origin.
+	 */
+	public JettyHttpClient(final DynamicProtocolSelector protocolSelector, final Executor completionExecutor, final EventListener eventListener, final boolean decompression, final int warmUpConnections) {
+		this(protocolSelector.getHttp2Client(), protocolSelector, completionExecutor, eventListener, decompression, warmUpConnections);
+	}
+
+	private JettyHttpClient(final org.eclipse.jetty.client.HttpClient jettyClient, final DynamicProtocolSelector protocolSelector, final Executor completionExecutor, final EventListener eventListener, final boolean decompression, final int warmUpConnections) {
 		this.jettyClient = jettyClient;
+		this.protocolSelector = protocolSelector;
+		this.completionExecutor = completionExecutor;
+		this.eventListener = eventListener;
+		this.decompression = decompression;
+		this.warmUpConnections = warmUpConnections;
+		this.metrics = new JettyClientMetrics();
 		this.jettyClient.addEventListener(new SessionCountListener());
 	}
 
-	// For gauge metrics
-	private static final AtomicLong openSessions = new AtomicLong();
-
-	private org.eclipse.jetty.client.HttpClient getJettyClient() {
+	private org.eclipse.jetty.client.HttpClient getJettyClient(final URI uri) {
 		if (closed) {
 			throw new IllegalStateException("Closed");
 		}
+		if (protocolSelector != null) {
+			return protocolSelector.select(uri);
+		}
 		return jettyClient;
 	}
 
@@ -53,7 +96,10 @@ public class JettyHttpClient implements HttpClient {
 			if (child instanceof HTTP2Session) {
 				final HTTP2Session session = (HTTP2Session) child;
 				LOG.debug("Opened HTTP/2 session: {}", session.getEndPoint().getRemoteAddress());
-				openSessions.incrementAndGet();
+				metrics.sessionOpened(session);
+				if (eventListener != null) {
+					eventListener.connectionOpened(session.getEndPoint().getRemoteAddress(), System.nanoTime());
+				}
 			}
 		}
 
@@ -62,35 +108,200 @@ public class JettyHttpClient implements HttpClient {
 			if (child instanceof HTTP2Session) {
 				final HTTP2Session session = (HTTP2Session) child;
 				LOG.debug("Closed HTTP/2 session: {}", session.getEndPoint().getRemoteAddress());
-				openSessions.decrementAndGet();
+				metrics.sessionClosed(session);
+				if (eventListener != null) {
+					eventListener.connectionClosed(session.getEndPoint().getRemoteAddress(), System.nanoTime());
+				}
 			}
 		}
 	}
 
 	@Override
 	public <T> CompletableFuture<HttpResponse<T>> sendAsync(final HttpRequest request, final BodyHandler<T> responseBodyHandler) {
+		final org.eclipse.jetty.client.HttpClient client;
+		try {
+			client = getJettyClient(request.uri());
+		} catch (final Throwable e) {
+			discardBody(request);
+			final CompletableFuture<HttpResponse<T>> errorResult = new CompletableFuture<>();
+			errorResult.completeExceptionally(e);
+			return errorResult;
+		}
+
+		if (protocolSelector == null || client != protocolSelector.getHttp2Client()) {
+			return sendAsync(client, request, responseBodyHandler);
+		}
+		final boolean http11Origin = protocolSelector.isHttp11Origin(request.uri());
+		final AtomicBoolean requestBegun = new AtomicBoolean(false);
+		final CompletableFuture<HttpResponse<T>> response = sendAsync(client, request, responseBodyHandler, requestBegun);
+		return withHttp11Fallback(response, request, responseBodyHandler, http11Origin, requestBegun);
+	}
+
+	/**
+	 * Resend the request over HTTP/1.1 if it failed because its own
+	 * connection did not select HTTP/2. The request is only resent if it
+	 * never got a connection, so no request bytes were sent and the body
+	 * handler was not applied. Failures of requests to origins already known
+	 * to only speak HTTP/1.1 are not retried.
+	 */
+	private <T> CompletableFuture<HttpResponse<T>> withHttp11Fallback(final CompletableFuture<HttpResponse<T>> response, final HttpRequest request, final BodyHandler<T> responseBodyHandler,
+			final boolean http11Origin, final AtomicBoolean requestBegun) {
+		final CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+		response.whenComplete((r, e) -> {
+			if (e != null && !result.isDone() && isNoHttp2Failure(e, request, http11Origin, requestBegun)) {
+				LOG.debug("Retrying request over HTTP/1.1");
+				final CompletableFuture<HttpResponse<T>> retry = sendAsync(protocolSelector.getHttp11Client(), request, responseBodyHandler);
+				result.whenComplete((unused, retryError) -> {
+					if (retryError instanceof CancellationException) {
+						retry.cancel(true);
+					}
+				});
+				retry.whenComplete((retryResponse, retryError) -> complete(result, retryResponse, retryError));
+			} else {
+				if (e != null) {
+					// Not done by the attempt itself, as it may be retried
+					discardBody(request);
+				}
+				complete(result, r, e);
+			}
+		});
+		result.whenComplete((unused, e) -> {
+			if (e instanceof CancellationException) {
+				response.cancel(true);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Whether the exchange failed because its connection did not select h2.
+	 * Queued exchanges fail with the failure of the connection they wait
+	 * for. If the origin was found to not select h2 in the meantime and the
+	 * exchange never got a connection, no request bytes were sent and the
+	 * failure is the one of the negotiation.
+	 */
+	private boolean isNoHttp2Failure(final Throwable failure, final HttpRequest request, final boolean http11Origin, final AtomicBoolean requestBegun) {
+		final Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+		if (cause instanceof CancellationException || cause instanceof TimeoutException) {
+			return false;
+		}
+		return !requestBegun.get() && !http11Origin && protocolSelector.isHttp11Origin(request.uri());
+	}
+
+	@Override
+	public CompletableFuture<Void> warmUp(final URI... origins) {
+		final CompletableFuture<?>[] futures = new CompletableFuture<?>[origins.length];
+		for (int i = 0; i < origins.length; i++) {
+			futures[i] = warmUp(origins[i]);
+		}
+		return CompletableFuture.allOf(futures);
+	}
+
+	private CompletableFuture<Void> warmUp(final URI origin) {
+		final org.eclipse.jetty.client.HttpClient client;
+		final boolean http11Origin;
+		final CompletableFuture<Void> connections;
+		try {
+			if (origin.getScheme() == null || origin.getHost() == null) {
+				throw new IllegalArgumentException("Not an absolute URI with host: " + origin);
+			}
+			client = getJettyClient(origin);
+			http11Origin = protocolSelector != null && protocolSelector.isHttp11Origin(origin);
+			connections = preCreateConnections(client, origin);
+		} catch (final Throwable e) {
+			final CompletableFuture<Void> errorResult = new CompletableFuture<>();
+			errorResult.completeExceptionally(e);
+			return errorResult;
+		}
+
+		if (protocolSelector == null || client != protocolSelector.getHttp2Client()) {
+			return connections;
+		}
+		// Same as for requests, origins that did not select HTTP/2 for these connections get HTTP/1.1 connections
+		final CompletableFuture<Void> result = new CompletableFuture<>();
+		connections.whenComplete((unused, e) -> {
+			if (e != null && !http11Origin && protocolSelector.isHttp11Origin(origin)) {
+				LOG.debug("Warming up HTTP/1.1 connections instead");
+				try {
+					final CompletableFuture<Void> retry = preCreateConnections(protocolSelector.getHttp11Client(), origin);
+					retry.whenComplete((retryUnused, retryError) -> complete(result, null, retryError));
+				} catch (final Throwable retryError) {
+					result.completeExceptionally(retryError);
+				}
+			} else {
+				complete(result, null, e);
+			}
+		});
+		return result;
+	}
+
+	private CompletableFuture<Void> preCreateConnections(final org.eclipse.jetty.client.HttpClient client, final URI origin) {
+		final String scheme = origin.getScheme().toLowerCase(Locale.ROOT);
+		final int port = org.eclipse.jetty.client.HttpClient.normalizePort(scheme, origin.getPort());
+		final HttpDestination destination = (HttpDestination) client.getDestination(scheme, origin.getHost(), port);
+		LOG.debug("Warming up {} connections to {}", warmUpConnections, destination);
+		return destination.getConnectionPool().preCreateConnections(warmUpConnections);
+	}
+
+	private static <T> void complete(final CompletableFuture<T> result, final T value, final Throwable failure) {
+		if (failure == null) {
+			result.complete(value);
+		} else if (failure instanceof CompletionException && failure.getCause() != null) {
+			result.completeExceptionally(failure.getCause());
+		} else {
+			result.completeExceptionally(failure);
+		}
+	}
+
+	private <T> CompletableFuture<HttpResponse<T>> sendAsync(final org.eclipse.jetty.client.HttpClient client, final HttpRequest request, final BodyHandler<T> responseBodyHandler) {
+		return sendAsync(client, request, responseBodyHandler, null);
+	}
+
+	/**
+	 * @param requestBegun Set when the request got a connection and starts
+	 *        to be sent, may be <code>null</code>. If set, the request may be
+	 *        retried and the caller discards the body on failure.
+	 */
+	private <T> CompletableFuture<HttpResponse<T>> sendAsync(final org.eclipse.jetty.client.HttpClient client, final HttpRequest request, final BodyHandler<T> responseBodyHandler, final AtomicBoolean requestBegun) {
 		try {
 
-			final Request jettyRequest = getJettyClient().newRequest(request.uri())
+			final Request jettyRequest = client.newRequest(request.uri())
 					.method(request.method());
+			if (requestBegun != null) {
+				jettyRequest.onRequestBegin(unused -> requestBegun.set(true));
+			}
 
 			applyTimeout(request, jettyRequest);
 			applyHeaders(request, jettyRequest);
-			applyBody(request, jettyRequest);
+			applyBody(request, jettyRequest, requestBegun == null);
 
-			//final Executor completionExecutor = getJettyClient().getExecutor();
-			final Executor completionExecutor = ForkJoinPool.commonPool();
-			final FullCompleteListener<T> fullCompleteListener = new FullCompleteListener<>(completionExecutor, responseBodyHandler);
+			final Executor completionExecutor = request.completionExecutor().orElse(this.completionExecutor);
+			final FullCompleteListener<T> fullCompleteListener = new FullCompleteListener<>(completionExecutor, responseBodyHandler, decompression);
 
-			final CompleteListener possibleTimeoutCompleteListener = applyTimeout(request, jettyRequest, fullCompleteListener);
+			final Listener possibleTimeoutCompleteListener = applyTimeout(client, request, jettyRequest, fullCompleteListener);
+
+			applyMetrics(jettyRequest, fullCompleteListener);
+
+			final Listener possibleEventListener = applyEvents(request, jettyRequest, possibleTimeoutCompleteListener);
 
 			LOG.debug("Sending jetty request");
-			jettyRequest.send(possibleTimeoutCompleteListener);
+			jettyRequest.send(possibleEventListener);
 
-			return fullCompleteListener.getResult()
+			final CompletableFuture<HttpResponse<T>> response = fullCompleteListener.getResult()
 					.thenApply(this::toHttpResponse);
 
+			response.whenComplete((unused, e) -> {
+				if (e instanceof CancellationException) {
+					jettyRequest.abort(e);
+				}
+			});
+
+			return response;
+
 		} catch (final Throwable e) {
+			if (requestBegun == null) {
+				discardBody(request);
+			}
 			// TODO is this a good pattern? Better directly throw?
 			final CompletableFuture<HttpResponse<T>> errorResult = new CompletableFuture<>();
 			errorResult.completeExceptionally(e);
@@ -113,7 +324,7 @@ public class JettyHttpClient implements HttpClient {
 		}
 	}
 
-	private <T> CompleteListener applyTimeout(final HttpRequest request, final Request jettyRequest, final FullCompleteListener<T> fullCompleteListener) {
+	private <T> Listener applyTimeout(final org.eclipse.jetty.client.HttpClient client, final HttpRequest request, final Request jettyRequest, final FullCompleteListener<T> fullCompleteListener) {
 		if (request.timeout().isPresent()) {
 			// TODO underlying implementation supports more than millis
 			return new TimeoutResponseListener(
@@ -121,19 +332,43 @@ public class JettyHttpClient implements HttpClient {
 					jettyRequest,
 					request.timeout().get().toMillis(),
 					TimeUnit.MILLISECONDS,
-					getJettyClient().getScheduler());
+					client.getScheduler());
 		} else {
 			return fullCompleteListener;
 		}
 	}
 
+	private void applyMetrics(final Request jettyRequest, final FullCompleteListener<?> fullCompleteListener) {
+		final long startNanos = System.nanoTime();
+		metrics.requestStarted();
+		jettyRequest.onRequestContent((unused, content) -> metrics.bytesSent(content.remaining()));
+		jettyRequest.onResponseHeaders(response -> metrics.responseHeadersReceived(startNanos, response.getVersion()));
+		jettyRequest.onResponseContent((unused, content) -> metrics.bytesReceived(content.remaining()));
+		fullCompleteListener.getExchangeResult().whenComplete((unused, failure) -> metrics.requestCompleted(startNanos, failure));
+	}
+
+	private Listener applyEvents(final HttpRequest request, final Request jettyRequest, final Listener listener) {
+		if (eventListener == null) {
+			return listener;
+		}
+		jettyRequest.onRequestQueued(unused -> eventListener.requestQueued(request, System.nanoTime()));
+		jettyRequest.onRequestBegin(unused -> eventListener.requestBegin(request, System.nanoTime()));
+		jettyRequest.onRequestCommit(unused -> eventListener.requestHeadersSent(request, System.nanoTime()));
+		jettyRequest.onRequestSuccess(unused -> eventListener.requestSent(request, System.nanoTime()));
+		return new EventResponseListener(listener, eventListener, request);
+	}
+
 	private void applyHeaders(final HttpRequest request, final Request jettyRequest) {
 		request.headers().map().forEach(
 				(name, values) -> values.forEach(
 						value -> jettyRequest.header(name, value)));
+
+		if (decompression && !request.headers().firstValue(HttpHeader.ACCEPT_ENCODING.asString()).isPresent()) {
+			jettyRequest.header(HttpHeader.ACCEPT_ENCODING, "gzip, deflate");
+		}
 	}
 
-	private void applyBody(final HttpRequest request, final Request jettyRequest) {
+	private void applyBody(final HttpRequest request, final Request jettyRequest, final boolean discardOnFailure) {
 		final Optional<BodyProvider> optionalBodyProvider = request.bodyProvider();
 		if (!optionalBodyProvider.isPresent()) {
 			return;
@@ -141,170 +376,74 @@ public class JettyHttpClient implements HttpClient {
 
 		final BodyProvider bodyProvider = optionalBodyProvider.get();
 
-		//		final long contentLength = getContentLength(bodyProvider);
-		//		if (contentLength == 0) {
-		//			return;
-		//		}
-		if (!(bodyProvider instanceof NoBodyProvider)) {
+		if (bodyProvider instanceof EncodedBodyProvider && !request.headers().firstValue(HttpHeader.CONTENT_ENCODING.asString()).isPresent()) {
+			jettyRequest.header(HttpHeader.CONTENT_ENCODING, ((EncodedBodyProvider) bodyProvider).getContentEncoding());
+		}
+
+		if (bodyProvider instanceof AsyncBodyProvider) {
+			applyAsyncBody((AsyncBodyProvider) bodyProvider, jettyRequest, discardOnFailure);
+		} else if (!(bodyProvider instanceof NoBodyProvider)) {
 			jettyRequest.content((ContentProvider) bodyProvider);
 		}
+	}
+
+	private void applyAsyncBody(final AsyncBodyProvider bodyProvider, final Request jettyRequest, final boolean discardOnFailure) {
+		final long contentLength = bodyProvider.getContentLength();
+		final DeferredContentProvider deferredContentProvider = new DeferredContentProvider() {
+			@Override
+			public long getLength() {
+				return contentLength;
+			}
+		};
+
+		if (bodyProvider.getContentType() != null) {
+			jettyRequest.content(deferredContentProvider, bodyProvider.getContentType());
+		} else {
+			jettyRequest.content(deferredContentProvider);
+		}
 
-		//		final Optional<String> bodyProviderContentType = bodyProvider.contentType();
-		//		if (bodyProviderContentType.isPresent() && jettyRequest.getHeaders().get("Content-Type") == null) {
-		//			jettyRequest.header("Content-Type", bodyProviderContentType.get());
-		//		}
-		//
-		//		final DeferredContentProvider deferredContentProvider = new DeferredContentProvider() {
-		//			@Override
-		//			public long getLength() {
-		//				return contentLength;
-		//			}
-		//		};
-		//
-		//		final RequestBodyFiller requestBodyFiller = new RequestBodyFiller(bodyProvider.iterator(), deferredContentProvider, jettyRequest);
-		//		requestBodyFiller.start();
-		//
-		//		jettyRequest.content(deferredContentProvider);
+		// Do not consume the source while the request is queued
+		jettyRequest.onRequestBegin(unused -> bodyProvider.start(deferredContentProvider, jettyRequest));
+		if (discardOnFailure) {
+			// Requests can fail before they begin, e.g. when connecting fails
+			jettyRequest.onRequestFailure((unused, failure) -> bodyProvider.discard());
+		}
 	}
 
-	//	private static class RequestBodyFiller {
-	//		private final Iterator<CompletableFuture<ByteBuffer>> chunkFutureIterator;
-	//		private final DeferredContentProvider deferredContentProvider;
-	//		private final Request jettyRequest;
-	//		private final AtomicReference<Throwable> error = new AtomicReference<>();
-	//
-	//		private final Object pendingLock = new Object();
-	//		private long pendingOffers = 0L;
-	//		private boolean pendingRead = false;
-	//
-	//		private final static long MAX_PENDING_OFFERS = 5;
-	//
-	//		private final Callback offerCallback = new Callback() {
-	//			@Override
-	//			public void succeeded() {
-	//				synchronized (pendingLock) {
-	//					pendingOffers--;
-	//					fillIfPossible();
-	//				}
-	//			}
-	//
-	//			@Override
-	//			public void failed(final Throwable e) {
-	//				synchronized (pendingLock) {
-	//					pendingOffers--;
-	//				}
-	//				error(e);
-	//			}
-	//		};
-	//
-	//		public RequestBodyFiller(final Iterator<CompletableFuture<ByteBuffer>> chunkFutureIterator, final DeferredContentProvider deferredContentProvider, final Request jettyRequest) {
-	//			this.chunkFutureIterator = chunkFutureIterator;
-	//			this.deferredContentProvider = deferredContentProvider;
-	//			this.jettyRequest = jettyRequest;
-	//		}
-	//
-	//		private void fillIfPossible() {
-	//			if (!Thread.holdsLock(pendingLock)) {
-	//				throw new IllegalStateException();
-	//			}
-	//			if (pendingOffers < MAX_PENDING_OFFERS && !pendingRead) {
-	//				LOG.debug("Filling with {} pending offers", pendingOffers);
-	//				fill();
-	//			}
-	//		}
-	//
-	//		public void start() {
-	//			synchronized (pendingLock) {
-	//				fill();
-	//			}
-	//		}
-	//
-	//		private void fill() {
-	//			if (isError()) {
-	//				return;
-	//			}
-	//			try {
-	//
-	//				if (!Thread.holdsLock(pendingLock)) {
-	//					throw new IllegalStateException();
-	//				}
-	//				if (pendingRead) {
-	//					throw new IllegalStateException();
-	//				}
-	//				pendingRead = true;
-	//
-	//				if (chunkFutureIterator.hasNext()) {
-	//					chunkFutureIterator.next().whenComplete(this::chunkFutureComplete);
-	//				} else {
-	//					done();
-	//				}
-	//			} catch (final Throwable e) {
-	//				error(e);
-	//			}
-	//		}
-	//
-	//
-	//		private void chunkFutureComplete(final ByteBuffer byteBuffer, final Throwable error) {
-	//			if (error != null) {
-	//				error(error);
-	//				return;
-	//			}
-	//
-	//			LOG.debug("Offering byte buffer with {} bytes", byteBuffer.remaining());
-	//
-	//			final boolean success = deferredContentProvider.offer(byteBuffer, offerCallback);
-	//			if (!success) {
-	//				error(new RuntimeException("Failed to offer content to deferred content provider"));
-	//			}
-	//
-	//			synchronized (pendingLock) {
-	//				pendingOffers++;
-	//				pendingRead = false;
-	//				fillIfPossible();
-	//			}
-	//		}
-	//
-	//		private void done() {
-	//			LOG.debug("Done");
-	//			deferredContentProvider.close();
-	//		}
-	//
-	//		public void error(final Throwable error) {
-	//			LOG.debug("Error", error);
-	//			final boolean set = this.error.compareAndSet(null, error);
-	//			if (!set && this.error.get() != error) {
-	//				this.error.get().addSuppressed(error);
-	//			}
-	//			jettyRequest.abort(this.error.get());
-	//			deferredContentProvider.close();
-	//		}
-	//
-	//		public boolean isError() {
-	//			return error.get() != null;
-	//		}
-	//	}
-
-	//	private long getContentLength(final BodyProvider bodyProvider) {
-	//		final long contentLength = bodyProvider.contentLength();
-	//		if (contentLength >= 0) {
-	//			return contentLength;
-	//		}
-	//		return -1;
-	//	}
+	/**
+	 * Release the source of an asynchronous body that may never have been
+	 * started.
+	 */
+	private static void discardBody(final HttpRequest request) {
+		request.bodyProvider()
+				.filter(AsyncBodyProvider.class::isInstance)
+				.ifPresent(bodyProvider -> ((AsyncBodyProvider) bodyProvider).discard());
+	}
 
 	private <T> HttpResponse<T> toHttpResponse(final BodyResult<T> result) {
 		LOG.debug("Building final HttpResponse");
 		return new JettyHttpResponse<>(
-				result.getResult().getResponse().getStatus(),
-				new JettyHttpRequest(result.getResult().getRequest()),
-				HeadersTransformation.toHttpHeaders(result.getResult().getResponse().getHeaders()),
+				result.getResponse().getStatus(),
+				new JettyHttpRequest(result.getResponse().getRequest()),
+				HeadersTransformation.toHttpHeaders(result.getResponse().getHeaders()),
 				result.getBody());
 	}
 
+	@Override
+	public HttpClientMetrics metrics() {
+		if (protocolSelector != null) {
+			return metrics.snapshot(jettyClient, protocolSelector.getHttp11Client());
+		}
+		return metrics.snapshot(jettyClient, null);
+	}
+
 	@Override
 	public void close() {
 		closed = true;
 		try {
+			if (protocolSelector != null) {
+				protocolSelector.getHttp11Client().stop();
+			}
 			jettyClient.stop();
 		} catch (final Exception e) {
 			throw new RuntimeException(e);
@@ -3,6 +3,7 @@ package de.mklinger.commons.httpclient.internal.jetty;
 import java.net.URI;
 import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 
 import org.eclipse.jetty.client.api.Request;
 
@@ -44,4 +45,9 @@ public class JettyHttpRequest implements HttpRequest {
 		return HeadersTransformation.toHttpHeaders(jettyRequest.getHeaders());
 	}
 
+	@Override
+	public Optional<Executor> completionExecutor() {
+		return Optional.empty();
+	}
+
 }
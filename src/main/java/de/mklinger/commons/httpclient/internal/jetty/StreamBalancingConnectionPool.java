@@ -0,0 +1,268 @@
+package de.mklinger.commons.httpclient.internal.jetty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.jetty.client.ConnectionPool;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.api.Connection;
+import org.eclipse.jetty.http2.HTTP2Session;
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.client.http.HttpConnectionOverHTTP2;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connection pool for HTTP/2 that spreads streams over several sessions to
+ * the same destination. Every request goes to the session with the fewest
+ * active streams. An additional session is opened when the least loaded
+ * session reaches the given fraction of the stream limit announced by the
+ * server, as long as the maximum number of connections is not reached.
+ *
+ * <p>Jetty's {@code MultiplexConnectionPool} fills up one session before
+ * it opens the next, so that a single TCP connection limits the throughput
+ * until the server's {@code MAX_CONCURRENT_STREAMS} is reached.
+ *
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class StreamBalancingConnectionPool implements ConnectionPool, ConnectionPool.Multiplexable {
+	private static final Logger LOG = LoggerFactory.getLogger(StreamBalancingConnectionPool.class);
+
+	private final HttpDestination destination;
+	private final int maxConnections;
+	private final double loadFactor;
+	private final Callback requester;
+	private final List<Entry> entries = new ArrayList<>();
+	private int maxMultiplex;
+	private int pendingConnections;
+	private boolean closed;
+
+	/**
+	 * @param maxMultiplex Stream limit for sessions that have not received
+	 *        a limit from the server
+	 * @param loadFactor Fraction of the stream limit of a session at which
+	 *        an additional session is opened, in the range (0, 1]
+	 */
+	public StreamBalancingConnectionPool(final HttpDestination destination, final int maxConnections, final Callback requester, final int maxMultiplex, final double loadFactor) {
+		this.destination = destination;
+		this.maxConnections = maxConnections;
+		this.requester = requester;
+		this.maxMultiplex = maxMultiplex;
+		this.loadFactor = loadFactor;
+	}
+
+	private static class Entry {
+		private final Connection connection;
+		private int activeStreams;
+
+		public Entry(final Connection connection) {
+			this.connection = connection;
+		}
+	}
+
+	@Override
+	public synchronized int getMaxMultiplex() {
+		return maxMultiplex;
+	}
+
+	@Override
+	public synchronized void setMaxMultiplex(final int maxMultiplex) {
+		this.maxMultiplex = maxMultiplex;
+	}
+
+	public synchronized int getConnectionCount() {
+		return entries.size() + pendingConnections;
+	}
+
+	@Override
+	public Connection acquire() {
+		final Entry entry;
+		final boolean create;
+		synchronized (this) {
+			if (closed) {
+				return null;
+			}
+			entry = leastLoaded();
+			create = shouldCreate(entry);
+			if (create) {
+				pendingConnections++;
+			}
+			if (entry != null) {
+				entry.activeStreams++;
+			}
+		}
+		if (create) {
+			create();
+		}
+		return entry == null ? null : entry.connection;
+	}
+
+	/**
+	 * @return The entry with the fewest active streams below its limit or
+	 *         <code>null</code>
+	 */
+	private Entry leastLoaded() {
+		Entry best = null;
+		for (final Entry entry : entries) {
+			if (entry.activeStreams < maxStreams(entry) && (best == null || entry.activeStreams < best.activeStreams)) {
+				best = entry;
+			}
+		}
+		return best;
+	}
+
+	private boolean shouldCreate(final Entry leastLoaded) {
+		if (entries.size() + pendingConnections >= maxConnections) {
+			return false;
+		}
+		if (leastLoaded == null) {
+			// Open enough sessions for the queued requests
+			final int queuedRequests = Math.max(1, destination.getQueuedRequestCount());
+			final int maxPending = (queuedRequests + maxMultiplex - 1) / maxMultiplex;
+			return pendingConnections < maxPending;
+		}
+		// One session at a time is enough while the existing ones still take streams
+		return pendingConnections == 0 && leastLoaded.activeStreams >= loadFactor * maxStreams(leastLoaded);
+	}
+
+	private int maxStreams(final Entry entry) {
+		if (entry.connection instanceof HttpConnectionOverHTTP2) {
+			final Session session = ((HttpConnectionOverHTTP2) entry.connection).getSession();
+			if (session instanceof HTTP2Session) {
+				// Set from MAX_CONCURRENT_STREAMS of the server's SETTINGS frame
+				final int maxLocalStreams = ((HTTP2Session) session).getMaxLocalStreams();
+				if (maxLocalStreams > 0) {
+					return maxLocalStreams;
+				}
+			}
+		}
+		return maxMultiplex;
+	}
+
+	@Override
+	public CompletableFuture<Void> preCreateConnections(final int connectionCount) {
+		final int count;
+		synchronized (this) {
+			if (closed) {
+				final CompletableFuture<Void> errorResult = new CompletableFuture<>();
+				errorResult.completeExceptionally(new IllegalStateException("Closed"));
+				return errorResult;
+			}
+			count = Math.min(connectionCount, maxConnections) - entries.size() - pendingConnections;
+			if (count > 0) {
+				pendingConnections += count;
+			}
+		}
+		final CompletableFuture<?>[] connections = new CompletableFuture<?>[Math.max(0, count)];
+		for (int i = 0; i < connections.length; i++) {
+			connections[i] = create();
+		}
+		return CompletableFuture.allOf(connections);
+	}
+
+	/**
+	 * Open a connection that was counted as pending.
+	 *
+	 * @return A future that completes when the connection is in the pool
+	 */
+	private CompletableFuture<Void> create() {
+		LOG.debug("Opening new connection to {}", destination);
+		final CompletableFuture<Void> result = new CompletableFuture<>();
+		destination.newConnection(new Promise<Connection>() {
+			@Override
+			public void succeeded(final Connection connection) {
+				final boolean added;
+				synchronized (StreamBalancingConnectionPool.this) {
+					pendingConnections--;
+					added = !closed;
+					if (added) {
+						entries.add(new Entry(connection));
+					}
+				}
+				if (added) {
+					result.complete(null);
+					requester.succeeded();
+				} else {
+					connection.close();
+					result.completeExceptionally(new IllegalStateException("Closed"));
+				}
+			}
+
+			@Override
+			public void failed(final Throwable x) {
+				synchronized (StreamBalancingConnectionPool.this) {
+					pendingConnections--;
+				}
+				result.completeExceptionally(x);
+				requester.failed(x);
+			}
+		});
+		return result;
+	}
+
+	@Override
+	public synchronized boolean isActive(final Connection connection) {
+		final Entry entry = find(connection);
+		return entry != null && entry.activeStreams > 0;
+	}
+
+	@Override
+	public synchronized boolean release(final Connection connection) {
+		final Entry entry = find(connection);
+		if (entry == null) {
+			return false;
+		}
+		entry.activeStreams--;
+		return true;
+	}
+
+	@Override
+	public synchronized boolean remove(final Connection connection) {
+		final Entry entry = find(connection);
+		if (entry == null) {
+			return false;
+		}
+		entries.remove(entry);
+		return true;
+	}
+
+	private Entry find(final Connection connection) {
+		for (final Entry entry : entries) {
+			if (entry.connection == connection) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public synchronized boolean isEmpty() {
+		return entries.isEmpty() && pendingConnections == 0;
+	}
+
+	@Override
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public void close() {
+		final List<Entry> toClose;
+		synchronized (this) {
+			closed = true;
+			toClose = new ArrayList<>(entries);
+			entries.clear();
+		}
+		for (final Entry entry : toClose) {
+			entry.connection.close();
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%s@%x[c=%d/%d,p=%d]", getClass().getSimpleName(), hashCode(), entries.size(), maxConnections, pendingConnections);
+	}
+}
@@ -0,0 +1,145 @@
+package de.mklinger.commons.httpclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+import de.mklinger.commons.httpclient.HttpResponse.AsyncBodyCompleteListener;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class AsyncBodyCompleteListenerTest extends ClientServerTestBase {
+	private static final int BODY_SIZE = 1024 * 1024;
+
+	@Override
+	protected Class<? extends Servlet> getServletClass() {
+		return TestServlet.class;
+	}
+
+	@SuppressWarnings("serial")
+	public static class TestServlet extends HttpServlet {
+		@Override
+		protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+			resp.setContentType("application/octet-stream");
+			try (OutputStream out = resp.getOutputStream()) {
+				final byte[] buf = new byte[8192];
+				for (int written = 0; written < BODY_SIZE; written += buf.length) {
+					out.write(buf);
+				}
+			}
+		}
+	}
+
+	private static class SlowCountingListener implements AsyncBodyCompleteListener<Long> {
+		private final ScheduledExecutorService scheduler;
+		private final AtomicBoolean pending = new AtomicBoolean(false);
+		private volatile boolean overlapping = false;
+		private volatile long count;
+
+		public SlowCountingListener(final ScheduledExecutorService scheduler) {
+			this.scheduler = scheduler;
+		}
+
+		@Override
+		public CompletionStage<?> onNextAsync(final ByteBuffer content) {
+			if (!pending.compareAndSet(false, true)) {
+				overlapping = true;
+			}
+			final CompletableFuture<Void> done = new CompletableFuture<>();
+			scheduler.schedule(() -> {
+				count += content.remaining();
+				content.position(content.limit());
+				pending.set(false);
+				done.complete(null);
+			}, 1, TimeUnit.MILLISECONDS);
+			return done;
+		}
+
+		@Override
+		public void onComplete() {
+			// Do nothing
+		}
+
+		@Override
+		public Long getBody() {
+			return count;
+		}
+
+		@Override
+		public void close() {
+			// Do nothing
+		}
+	}
+
+	@Test
+	public void test() throws Throwable {
+		final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		try (final HttpClient httpClient = newHttpClient()) {
+			final SlowCountingListener listener = new SlowCountingListener(scheduler);
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri()).build();
+
+			final HttpResponse<Long> response = httpClient.sendAsync(request, requireSuccess((statusCode, headers) -> listener))
+					.get(30, TimeUnit.SECONDS);
+
+			assertEquals(BODY_SIZE, response.body().longValue());
+			assertFalse("Content delivered before previous chunk was processed", listener.overlapping);
+		} finally {
+			scheduler.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testFailure() throws Throwable {
+		try (final HttpClient httpClient = newHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri()).build();
+			final AsyncBodyCompleteListener<Void> listener = new AsyncBodyCompleteListener<Void>() {
+				@Override
+				public CompletionStage<?> onNextAsync(final ByteBuffer content) {
+					final CompletableFuture<Void> failed = new CompletableFuture<>();
+					failed.completeExceptionally(new IllegalStateException("Expected"));
+					return failed;
+				}
+
+				@Override
+				public void onComplete() {
+				}
+
+				@Override
+				public Void getBody() {
+					return null;
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+
+			final CompletableFuture<HttpResponse<Void>> response = httpClient.sendAsync(request, (statusCode, headers) -> listener);
+			try {
+				response.get(5, TimeUnit.SECONDS);
+				throw new AssertionError("Expected failure");
+			} catch (final ExecutionException e) {
+				assertEquals("Expected", e.getCause().getMessage());
+			}
+		}
+	}
+}
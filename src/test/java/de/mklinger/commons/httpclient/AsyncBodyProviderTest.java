@@ -0,0 +1,315 @@
+package de.mklinger.commons.httpclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class AsyncBodyProviderTest extends ClientServerTestBase {
+	private static final int CHUNK_COUNT = 100;
+	private static final int CHUNK_SIZE = 10_000;
+
+	@Override
+	protected Class<? extends Servlet> getServletClass() {
+		return TestServlet.class;
+	}
+
+	@SuppressWarnings("serial")
+	public static class TestServlet extends HttpServlet {
+		@Override
+		protected void doPost(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+			long count = 0;
+			long sum = 0;
+			try (InputStream in = req.getInputStream()) {
+				int b;
+				while ((b = in.read()) != -1) {
+					count++;
+					sum += b;
+				}
+			}
+			resp.setContentType("text/plain;charset=UTF-8");
+			resp.getWriter().print(count + " " + sum);
+		}
+	}
+
+	private static List<CompletableFuture<ByteBuffer>> newChunks() {
+		final List<CompletableFuture<ByteBuffer>> chunks = new ArrayList<>();
+		for (int i = 0; i < CHUNK_COUNT; i++) {
+			final int index = i;
+			chunks.add(CompletableFuture.supplyAsync(() -> newChunk(index)));
+		}
+		return chunks;
+	}
+
+	private static ByteBuffer newChunk(final int index) {
+		final byte[] chunk = new byte[CHUNK_SIZE];
+		Arrays.fill(chunk, (byte) index);
+		return ByteBuffer.wrap(chunk);
+	}
+
+	/**
+	 * Publishes the chunks on demand, optionally failing at a given chunk or
+	 * subscribing after a delay.
+	 */
+	private static class ChunkPublisher implements Publisher<ByteBuffer> {
+		private final int failAt;
+		private final long subscribeDelayMillis;
+		private final CompletableFuture<Void> cancelled = new CompletableFuture<>();
+
+		public ChunkPublisher(final int failAt, final long subscribeDelayMillis) {
+			this.failAt = failAt;
+			this.subscribeDelayMillis = subscribeDelayMillis;
+		}
+
+		@Override
+		public void subscribe(final Subscriber<? super ByteBuffer> subscriber) {
+			final Subscription subscription = new ChunkSubscription(subscriber);
+			if (subscribeDelayMillis <= 0) {
+				subscriber.onSubscribe(subscription);
+				return;
+			}
+			new Thread(() -> {
+				try {
+					Thread.sleep(subscribeDelayMillis);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				subscriber.onSubscribe(subscription);
+			}).start();
+		}
+
+		private class ChunkSubscription implements Subscription {
+			private final Subscriber<? super ByteBuffer> subscriber;
+			private long demand;
+			private int next;
+			private boolean emitting;
+			private boolean done;
+
+			public ChunkSubscription(final Subscriber<? super ByteBuffer> subscriber) {
+				this.subscriber = subscriber;
+			}
+
+			@Override
+			public void request(final long n) {
+				synchronized (this) {
+					demand += n;
+					if (emitting) {
+						// Reentrant call from onNext, the running loop emits
+						return;
+					}
+					emitting = true;
+				}
+				while (true) {
+					final int index;
+					synchronized (this) {
+						if (done || next < CHUNK_COUNT && demand == 0) {
+							emitting = false;
+							return;
+						}
+						if (next == CHUNK_COUNT) {
+							done = true;
+						} else {
+							demand--;
+						}
+						index = next++;
+					}
+					if (index == CHUNK_COUNT) {
+						subscriber.onComplete();
+						return;
+					}
+					if (index == failAt) {
+						synchronized (this) {
+							done = true;
+						}
+						subscriber.onError(new IllegalStateException("Expected"));
+						return;
+					}
+					subscriber.onNext(newChunk(index));
+				}
+			}
+
+			@Override
+			public void cancel() {
+				synchronized (this) {
+					done = true;
+				}
+				cancelled.complete(null);
+			}
+		}
+	}
+
+	private static String expectedResult() {
+		long sum = 0;
+		for (int i = 0; i < CHUNK_COUNT; i++) {
+			sum += ((byte) i & 0xff) * (long) CHUNK_SIZE;
+		}
+		return (CHUNK_COUNT * CHUNK_SIZE) + " " + sum;
+	}
+
+	@Test
+	public void testChunks() throws Throwable {
+		try (final HttpClient httpClient = newHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri())
+					.POST(BodyProviders.fromChunks(newChunks().iterator()))
+					.build();
+
+			final HttpResponse<String> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString()))
+					.get(10, TimeUnit.SECONDS);
+			assertEquals(expectedResult(), response.body());
+		}
+	}
+
+	@Test
+	public void testChunksWithContentLength() throws Throwable {
+		try (final HttpClient httpClient = newHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri())
+					.POST(BodyProviders.fromChunks("application/octet-stream", CHUNK_COUNT * CHUNK_SIZE, 2, newChunks().iterator()))
+					.build();
+
+			final HttpResponse<String> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString()))
+					.get(10, TimeUnit.SECONDS);
+			assertEquals(expectedResult(), response.body());
+		}
+	}
+
+	@Test
+	public void testInputStream() throws Throwable {
+		final byte[] data = new byte[CHUNK_COUNT * CHUNK_SIZE];
+		for (int i = 0; i < CHUNK_COUNT; i++) {
+			Arrays.fill(data, i * CHUNK_SIZE, (i + 1) * CHUNK_SIZE, (byte) i);
+		}
+
+		try (final HttpClient httpClient = newHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri())
+					.POST(BodyProviders.fromInputStreamAsync(new ByteArrayInputStream(data)))
+					.build();
+
+			final HttpResponse<String> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString()))
+					.get(10, TimeUnit.SECONDS);
+			assertEquals(expectedResult(), response.body());
+		}
+	}
+
+	@Test
+	public void testInputStreamClosedOnConnectFailure() throws Throwable {
+		final CompletableFuture<Void> closed = new CompletableFuture<>();
+		final InputStream in = new ByteArrayInputStream(new byte[CHUNK_SIZE]) {
+			@Override
+			public void close() {
+				closed.complete(null);
+			}
+		};
+
+		try (final HttpClient httpClient = newHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(URI.create("https://localhost:1"))
+					.POST(BodyProviders.fromInputStreamAsync(in))
+					.build();
+
+			try {
+				httpClient.sendAsync(request, BodyHandlers.asString()).get(10, TimeUnit.SECONDS);
+				fail("Expected failure");
+			} catch (final ExecutionException e) {
+				// Connection refused
+			}
+
+			// The request never began, so the body provider was never started
+			closed.get(5, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void testFailedChunk() throws Throwable {
+		try (final HttpClient httpClient = newHttpClient()) {
+			final List<CompletableFuture<ByteBuffer>> chunks = newChunks();
+			final CompletableFuture<ByteBuffer> failed = new CompletableFuture<>();
+			failed.completeExceptionally(new IllegalStateException("Expected"));
+			chunks.add(CHUNK_COUNT / 2, failed);
+
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri())
+					.POST(BodyProviders.fromChunks(chunks.iterator()))
+					.build();
+
+			try {
+				httpClient.sendAsync(request, BodyHandlers.asString()).get(10, TimeUnit.SECONDS);
+				fail("Expected failure");
+			} catch (final ExecutionException e) {
+				assertEquals("Expected", e.getCause().getMessage());
+			}
+		}
+	}
+
+	@Test
+	public void testPublisher() throws Throwable {
+		try (final HttpClient httpClient = newHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri())
+					.POST(BodyProviders.fromPublisher(new ChunkPublisher(-1, 0)))
+					.build();
+
+			final HttpResponse<String> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString()))
+					.get(10, TimeUnit.SECONDS);
+			assertEquals(expectedResult(), response.body());
+		}
+	}
+
+	@Test
+	public void testPublisherError() throws Throwable {
+		try (final HttpClient httpClient = newHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri())
+					.POST(BodyProviders.fromPublisher(new ChunkPublisher(CHUNK_COUNT / 2, 0)))
+					.build();
+
+			try {
+				httpClient.sendAsync(request, BodyHandlers.asString()).get(10, TimeUnit.SECONDS);
+				fail("Expected failure");
+			} catch (final ExecutionException e) {
+				assertEquals("Expected", e.getCause().getMessage());
+			}
+		}
+	}
+
+	@Test
+	public void testPublisherAbortBeforeSubscribe() throws Throwable {
+		final ChunkPublisher publisher = new ChunkPublisher(-1, 1000);
+		try (final HttpClient httpClient = newHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri())
+					.POST(BodyProviders.fromPublisher(publisher))
+					.timeout(Duration.ofMillis(200))
+					.build();
+
+			try {
+				httpClient.sendAsync(request, BodyHandlers.asString()).get(10, TimeUnit.SECONDS);
+				fail("Expected failure");
+			} catch (final ExecutionException e) {
+				// Timed out while waiting for the publisher
+			}
+
+			// The subscription arriving after the abort is cancelled right away
+			publisher.cancelled.get(5, TimeUnit.SECONDS);
+		}
+	}
+}
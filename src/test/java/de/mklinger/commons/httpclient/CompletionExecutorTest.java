@@ -0,0 +1,106 @@
+package de.mklinger.commons.httpclient;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class CompletionExecutorTest extends ClientServerTestBase {
+	@Override
+	protected Class<? extends Servlet> getServletClass() {
+		return TestServlet.class;
+	}
+
+	@SuppressWarnings("serial")
+	public static class TestServlet extends HttpServlet {
+		@Override
+		protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+			resp.setContentType("text/plain;charset=UTF-8");
+			resp.getWriter().print("Ok");
+		}
+	}
+
+	private static class CountingExecutor implements Executor {
+		private final AtomicInteger executions = new AtomicInteger();
+
+		@Override
+		public void execute(final Runnable command) {
+			executions.incrementAndGet();
+			command.run();
+		}
+
+		public int getExecutions() {
+			return executions.get();
+		}
+	}
+
+	@Test
+	public void testClientExecutor() throws Throwable {
+		final CountingExecutor clientExecutor = new CountingExecutor();
+
+		try (final HttpClient httpClient = HttpClient.newBuilder()
+				.trustStore(getClientTrustStore())
+				.keyStore(getClientKeyStore(), getClientKeyPassword())
+				.completionExecutor(clientExecutor)
+				.build()) {
+
+			final HttpResponse<String> response = httpClient.sendAsync(HttpRequest.newBuilder(getBaseUri()).build(), BodyHandlers.asString())
+					.get(5, TimeUnit.SECONDS);
+
+			assertEquals("Ok", response.body());
+			assertEquals(1, clientExecutor.getExecutions());
+		}
+	}
+
+	@Test
+	public void testRequestExecutor() throws Throwable {
+		final CountingExecutor clientExecutor = new CountingExecutor();
+		final CountingExecutor requestExecutor = new CountingExecutor();
+
+		try (final HttpClient httpClient = HttpClient.newBuilder()
+				.trustStore(getClientTrustStore())
+				.keyStore(getClientKeyStore(), getClientKeyPassword())
+				.completionExecutor(clientExecutor)
+				.build()) {
+
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri())
+					.completionExecutor(requestExecutor)
+					.build();
+
+			final HttpResponse<String> response = httpClient.sendAsync(request, BodyHandlers.asString())
+					.get(5, TimeUnit.SECONDS);
+
+			assertEquals("Ok", response.body());
+			assertEquals(0, clientExecutor.getExecutions());
+			assertEquals(1, requestExecutor.getExecutions());
+		}
+	}
+
+	@Test
+	public void testInlineExecutor() throws Throwable {
+		try (final HttpClient httpClient = HttpClient.newBuilder()
+				.trustStore(getClientTrustStore())
+				.keyStore(getClientKeyStore(), getClientKeyPassword())
+				.completionExecutor(HttpClient.inlineExecutor())
+				.build()) {
+
+			final HttpResponse<String> response = httpClient.sendAsync(HttpRequest.newBuilder(getBaseUri()).build(), BodyHandlers.asString())
+					.get(5, TimeUnit.SECONDS);
+
+			assertEquals("Ok", response.body());
+		}
+	}
+}
@@ -38,6 +38,7 @@ import org.apache.commons.io.IOUtils;
 import org.conscrypt.OpenSSLProvider;
 import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
 import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
 import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
@@ -59,6 +60,14 @@ public class ConscryptHTTP2Server
 	}
 
 	public static Server newServer(final int port, final Class<? extends Servlet> servletClass, final Map<String, String> initParameters) {
+		return newServer(port, servletClass, initParameters, true);
+	}
+
+	/**
+	 * @param http2 Whether to support HTTP/2. Otherwise the server only speaks
+	 *        HTTP/1.1 and ignores ALPN.
+	 */
+	public static Server newServer(final int port, final Class<? extends Servlet> servletClass, final Map<String, String> initParameters, final boolean http2) {
 		Security.addProvider(new OpenSSLProvider());
 
 		final Server server = new Server();
@@ -80,6 +89,14 @@ public class ConscryptHTTP2Server
 		sslContextFactory.setTrustStorePassword(Settings.get("server.ssl.trust-store-password"));
 
 		final HttpConnectionFactory http = new HttpConnectionFactory(httpsConfig);
+		if (!http2) {
+			final ServerConnector http11Connector = new ServerConnector(server, new SslConnectionFactory(sslContextFactory, http.getProtocol()), http);
+			http11Connector.setPort(port);
+			server.addConnector(http11Connector);
+			server.setHandler(createServletHandler(servletClass, initParameters));
+			return server;
+		}
+
 		final HTTP2ServerConnectionFactory h2 = new HTTP2ServerConnectionFactory(httpsConfig);
 		final ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory();
 		alpn.setDefaultProtocol(http.getProtocol());
@@ -93,6 +110,22 @@ public class ConscryptHTTP2Server
 		return server;
 	}
 
+	/**
+	 * Create a server without TLS that speaks HTTP/1.1 and HTTP/2 with prior
+	 * knowledge (h2c).
+	 */
+	public static Server newClearTextServer(final int port, final Class<? extends Servlet> servletClass, final Map<String, String> initParameters) {
+		final Server server = new Server();
+
+		final HttpConfiguration httpConfig = new HttpConfiguration();
+		final ServerConnector connector = new ServerConnector(server, new HttpConnectionFactory(httpConfig), new HTTP2CServerConnectionFactory(httpConfig));
+		connector.setPort(port);
+		server.addConnector(connector);
+
+		server.setHandler(createServletHandler(servletClass, initParameters));
+		return server;
+	}
+
 	private static ServletContextHandler createServletHandler(final Class<? extends Servlet> servletClass, final Map<String, String> initParameters) {
 		final ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
 		context.setContextPath("/");
@@ -0,0 +1,166 @@
+package de.mklinger.commons.httpclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class DecompressionTest extends ClientServerTestBase {
+	private static final String BODY = newBody();
+
+	private static String newBody() {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 50_000; i++) {
+			sb.append("line ").append(i).append('\n');
+		}
+		return sb.toString();
+	}
+
+	@Override
+	protected Class<? extends Servlet> getServletClass() {
+		return TestServlet.class;
+	}
+
+	@SuppressWarnings("serial")
+	public static class TestServlet extends HttpServlet {
+		@Override
+		protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+			final String acceptEncoding = req.getHeader("Accept-Encoding");
+			resp.setContentType("text/plain");
+			resp.setHeader("X-Accept-Encoding", String.valueOf(acceptEncoding));
+			if (acceptEncoding == null || acceptEncoding.equals("identity")) {
+				try (OutputStream out = resp.getOutputStream()) {
+					out.write(BODY.getBytes(StandardCharsets.UTF_8));
+				}
+				return;
+			}
+			final String encoding = acceptEncoding.startsWith("deflate") ? "deflate" : "gzip";
+			resp.setHeader("Content-Encoding", encoding);
+			final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			try (OutputStream out = encoding.equals("gzip") ? new GZIPOutputStream(compressed) : new DeflaterOutputStream(compressed)) {
+				out.write(BODY.getBytes(StandardCharsets.UTF_8));
+			}
+			resp.setContentLength(compressed.size());
+			try (OutputStream out = resp.getOutputStream()) {
+				compressed.writeTo(out);
+			}
+		}
+	}
+
+	private HttpClient newDecompressingHttpClient() throws Exception {
+		return HttpClient.newBuilder()
+				.trustStore(getClientTrustStore())
+				.keyStore(getClientKeyStore(), getClientKeyPassword())
+				.decompression(true)
+				.build();
+	}
+
+	@Test
+	public void testGzip() throws Exception {
+		try (final HttpClient httpClient = newDecompressingHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri()).build();
+
+			final HttpResponse<String> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString()))
+					.get(5, TimeUnit.SECONDS);
+
+			assertThat(response.headers().firstValue("X-Accept-Encoding").get(), is("gzip, deflate"));
+			assertThat(response.body(), is(BODY));
+		}
+	}
+
+	@Test
+	public void testDeflateStreaming() throws Exception {
+		try (final HttpClient httpClient = newDecompressingHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri())
+					.header("Accept-Encoding", "deflate")
+					.build();
+
+			final HttpResponse<InputStream> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asInputStream(2)))
+					.get(5, TimeUnit.SECONDS);
+
+			final ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try (InputStream in = response.body()) {
+				final byte[] buf = new byte[1000];
+				int n;
+				while ((n = in.read(buf)) != -1) {
+					body.write(buf, 0, n);
+				}
+			}
+			assertThat(new String(body.toByteArray(), StandardCharsets.UTF_8), is(BODY));
+		}
+	}
+
+	@Test
+	public void testRaw() throws Exception {
+		try (final HttpClient httpClient = newDecompressingHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri()).build();
+
+			final HttpResponse<byte[]> response = httpClient.sendAsync(request, BodyHandlers.raw(requireSuccess(BodyHandlers.asByteArray())))
+					.get(5, TimeUnit.SECONDS);
+
+			assertThat(response.headers().firstValue("Content-Encoding").get(), is("gzip"));
+			final ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+				final byte[] buf = new byte[1000];
+				int n;
+				while ((n = in.read(buf)) != -1) {
+					body.write(buf, 0, n);
+				}
+			}
+			assertThat(new String(body.toByteArray(), StandardCharsets.UTF_8), is(BODY));
+		}
+	}
+
+	@Test
+	public void testRawWithDefaultClient() throws Exception {
+		try (final HttpClient httpClient = newHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri()).build();
+
+			final HttpResponse<byte[]> response = httpClient.sendAsync(request, BodyHandlers.raw(requireSuccess(BodyHandlers.asByteArray())))
+					.get(5, TimeUnit.SECONDS);
+
+			assertThat(response.headers().firstValue("Content-Encoding").get(), is("gzip"));
+			try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+				assertThat(in.read(), is((int) BODY.charAt(0)));
+			}
+		}
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		try (final HttpClient httpClient = HttpClient.newBuilder()
+				.trustStore(getClientTrustStore())
+				.keyStore(getClientKeyStore(), getClientKeyPassword())
+				.decompression(false)
+				.build()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri()).build();
+
+			final HttpResponse<String> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString()))
+					.get(5, TimeUnit.SECONDS);
+
+			// Not even Jetty's own gzip support asks for compression
+			assertThat(response.headers().firstValue("X-Accept-Encoding").get(), is("null"));
+			assertThat(response.body(), is(BODY));
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package de.mklinger.commons.httpclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItems;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class EventListenerTest extends ClientServerTestBase {
+	@Override
+	protected Class<? extends Servlet> getServletClass() {
+		return TestServlet.class;
+	}
+
+	@SuppressWarnings("serial")
+	public static class TestServlet extends HttpServlet {
+		@Override
+		protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+			resp.setContentType("text/plain;charset=UTF-8");
+			resp.getWriter().print("Ok");
+		}
+	}
+
+	private static class RecordingEventListener implements EventListener {
+		private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public void tlsHandshakeStart(final String peerHost, final int peerPort, final long nanoTime) {
+			events.add("tlsHandshakeStart");
+		}
+
+		@Override
+		public void tlsHandshakeEnd(final String peerHost, final int peerPort, final Throwable failure, final long nanoTime) {
+			events.add("tlsHandshakeEnd");
+		}
+
+		@Override
+		public void connectionOpened(final SocketAddress remoteAddress, final long nanoTime) {
+			events.add("connectionOpened");
+		}
+
+		@Override
+		public void requestBegin(final HttpRequest request, final long nanoTime) {
+			events.add("requestBegin");
+		}
+
+		@Override
+		public void requestHeadersSent(final HttpRequest request, final long nanoTime) {
+			events.add("requestHeadersSent");
+		}
+
+		@Override
+		public void responseHeadersReceived(final HttpRequest request, final int statusCode, final long nanoTime) {
+			events.add("responseHeadersReceived " + statusCode);
+		}
+
+		@Override
+		public void responseFirstByte(final HttpRequest request, final long nanoTime) {
+			events.add("responseFirstByte");
+		}
+
+		@Override
+		public void requestCompleted(final HttpRequest request, final Throwable failure, final long nanoTime) {
+			events.add("requestCompleted " + failure);
+		}
+
+		public List<String> awaitRequestCompleted() throws InterruptedException {
+			// The event is reported concurrently to completing the response future
+			final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (!events.contains("requestCompleted null") && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			synchronized (events) {
+				return new ArrayList<>(events);
+			}
+		}
+	}
+
+	@Test
+	public void test() throws Throwable {
+		final RecordingEventListener eventListener = new RecordingEventListener();
+		try (final HttpClient httpClient = HttpClient.newBuilder()
+				.trustStore(getClientTrustStore())
+				.keyStore(getClientKeyStore(), getClientKeyPassword())
+				.eventListener(eventListener)
+				.build()) {
+
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri()).build();
+
+			final HttpResponse<String> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString()))
+					.get(5, TimeUnit.SECONDS);
+			assertEquals("Ok", response.body());
+
+			final List<String> events = eventListener.awaitRequestCompleted();
+			assertThat(events, hasItems("tlsHandshakeStart", "tlsHandshakeEnd", "connectionOpened"));
+
+			final List<String> requestEvents = new ArrayList<>(events);
+			requestEvents.removeIf(event -> event.startsWith("tls") || event.startsWith("connection"));
+			assertThat(requestEvents, contains(
+					"requestBegin",
+					"requestHeadersSent",
+					"responseHeadersReceived 200",
+					"responseFirstByte",
+					"requestCompleted null"));
+		}
+	}
+
+	@Test
+	public void testDnsFailure() throws Throwable {
+		final CompletableFuture<List<InetSocketAddress>> dnsEnd = new CompletableFuture<>();
+		try (final HttpClient httpClient = HttpClient.newBuilder()
+				.trustStore(getClientTrustStore())
+				.keyStore(getClientKeyStore(), getClientKeyPassword())
+				.eventListener(new EventListener() {
+					@Override
+					public void dnsEnd(final String host, final List<InetSocketAddress> addresses, final Throwable failure, final long nanoTime) {
+						if (failure != null) {
+							dnsEnd.complete(addresses);
+						}
+					}
+				})
+				.build()) {
+
+			final HttpRequest request = HttpRequest.newBuilder(URI.create("https://unknown-host.invalid/")).build();
+			try {
+				httpClient.sendAsync(request, BodyHandlers.asString()).get(5, TimeUnit.SECONDS);
+				fail("Expected failure");
+			} catch (final ExecutionException e) {
+				// expected
+			}
+
+			assertThat(dnsEnd.get(5, TimeUnit.SECONDS), empty());
+		}
+	}
+
+	@Test
+	public void testFailingListener() throws Throwable {
+		try (final HttpClient httpClient = HttpClient.newBuilder()
+				.trustStore(getClientTrustStore())
+				.keyStore(getClientKeyStore(), getClientKeyPassword())
+				.eventListener(new EventListener() {
+					@Override
+					public void responseHeadersReceived(final HttpRequest request, final int statusCode, final long nanoTime) {
+						throw new IllegalStateException("Expected");
+					}
+				})
+				.build()) {
+
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri()).build();
+
+			final HttpResponse<String> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString()))
+					.get(5, TimeUnit.SECONDS);
+			assertEquals("Ok", response.body());
+		}
+	}
+}
@@ -9,8 +9,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.servlet.Servlet;
@@ -101,6 +103,28 @@ public class FileUploadTest extends ClientServerTestBase {
 		}
 	}
 
+	@Test
+	public void testMappedRange() throws Throwable {
+		try (final HttpClient httpClient = newHttpClient()) {
+			final Path inputFile = createInputFile();
+			final long size = Files.size(inputFile);
+			final long offset = size / 3;
+			final long length = size / 2;
+
+			final HttpRequest request = HttpRequest.newBuilder()
+					.uri(URI.create(getBaseUrl()))
+					.POST(BodyProviders.fromFileMapped("application/octet-stream", inputFile, offset, length, 10_000))
+					.build();
+
+			final HttpResponse<String> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString()))
+					.get(30, TimeUnit.SECONDS);
+
+			final byte[] clientBytes = Arrays.copyOfRange(Files.readAllBytes(inputFile), (int) offset, (int) (offset + length));
+			final byte[] serverBytes = Files.readAllBytes(Paths.get(response.body()));
+			Assert.assertArrayEquals(clientBytes, serverBytes);
+		}
+	}
+
 	public Path createInputFile() throws IOException {
 		final Path inputFile = tmp.newFile().toPath();
 		final Random random = new Random();
@@ -0,0 +1,127 @@
+package de.mklinger.commons.httpclient;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.junit.Test;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class HttpVersionTest extends ClientServerTestBase {
+	@Override
+	protected Class<? extends Servlet> getServletClass() {
+		return TestServlet.class;
+	}
+
+	@SuppressWarnings("serial")
+	public static class TestServlet extends HttpServlet {
+		@Override
+		protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+			resp.setContentType("text/plain;charset=UTF-8");
+			resp.getWriter().print(req.getProtocol());
+		}
+	}
+
+	@Test
+	public void testDynamicHttp2() throws Throwable {
+		try (final HttpClient httpClient = newHttpClient(HttpVersion.HTTP_1_1, HttpVersion.HTTP_2)) {
+			assertEquals("HTTP/2.0", get(httpClient, getBaseUri()));
+
+			final HttpClientMetrics metrics = httpClient.metrics();
+			assertEquals(1, metrics.responsesReceived(HttpVersion.HTTP_2));
+			assertEquals(0, metrics.responsesReceived(HttpVersion.HTTP_1_1));
+			assertEquals(1, metrics.openSessions());
+		}
+	}
+
+	@Test
+	public void testDynamicHttp11Fallback() throws Throwable {
+		final Server http11Server = newServer(false);
+		try (final HttpClient httpClient = newHttpClient(HttpVersion.HTTP_1_1, HttpVersion.HTTP_2)) {
+			assertEquals("HTTP/1.1", get(httpClient, getBaseUri(http11Server)));
+			assertEquals("HTTP/1.1", get(httpClient, getBaseUri(http11Server)));
+			// Other origins still use HTTP/2
+			assertEquals("HTTP/2.0", get(httpClient, getBaseUri()));
+
+			final HttpClientMetrics metrics = httpClient.metrics();
+			assertEquals(2, metrics.responsesReceived(HttpVersion.HTTP_1_1));
+			assertEquals(1, metrics.responsesReceived(HttpVersion.HTTP_2));
+			assertEquals(1, metrics.openHttp11Connections());
+		}
+	}
+
+	@Test
+	public void testHttp11Only() throws Throwable {
+		try (final HttpClient httpClient = newHttpClient(HttpVersion.HTTP_1_1)) {
+			assertEquals("HTTP/1.1", get(httpClient, getBaseUri()));
+			assertEquals(1, httpClient.metrics().responsesReceived(HttpVersion.HTTP_1_1));
+			assertEquals(0, httpClient.metrics().openSessions());
+		}
+	}
+
+	@Test
+	public void testClearTextDynamic() throws Throwable {
+		final Server clearTextServer = newClearTextServer();
+		try (final HttpClient httpClient = newHttpClient(HttpVersion.HTTP_1_1, HttpVersion.HTTP_2)) {
+			assertEquals("HTTP/1.1", get(httpClient, getBaseUri(clearTextServer)));
+		}
+	}
+
+	@Test
+	public void testClearTextPriorKnowledge() throws Throwable {
+		final Server clearTextServer = newClearTextServer();
+		try (final HttpClient httpClient = newHttpClientBuilder(HttpVersion.HTTP_1_1, HttpVersion.HTTP_2)
+				.http2PriorKnowledge(getBaseUri(clearTextServer))
+				.build()) {
+			assertEquals("HTTP/2.0", get(httpClient, getBaseUri(clearTextServer)));
+			// TLS origins are not affected
+			assertEquals("HTTP/2.0", get(httpClient, getBaseUri()));
+			assertEquals(2, httpClient.metrics().openSessions());
+		}
+	}
+
+	@Test
+	public void testClearTextHttp2Only() throws Throwable {
+		final Server clearTextServer = newClearTextServer();
+		try (final HttpClient httpClient = newHttpClient(HttpVersion.HTTP_2)) {
+			assertEquals("HTTP/2.0", get(httpClient, getBaseUri(clearTextServer)));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPriorKnowledgeForSecureOrigin() throws Throwable {
+		HttpClient.newBuilder().http2PriorKnowledge(getBaseUri());
+	}
+
+	private HttpClient newHttpClient(final HttpVersion... versions) throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+		return newHttpClientBuilder(versions).build();
+	}
+
+	private HttpClient.Builder newHttpClientBuilder(final HttpVersion... versions) throws KeyStoreException, IOException, NoSuchAlgorithmException, CertificateException {
+		return HttpClient.newBuilder()
+				.trustStore(getClientTrustStore())
+				.keyStore(getClientKeyStore(), getClientKeyPassword())
+				.httpVersions(versions);
+	}
+
+	private static String get(final HttpClient httpClient, final URI uri) throws Exception {
+		final HttpRequest request = HttpRequest.newBuilder(uri).build();
+		return httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString()))
+				.get(5, TimeUnit.SECONDS)
+				.body();
+	}
+}
@@ -0,0 +1,142 @@
+package de.mklinger.commons.httpclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class InputStreamTest extends ClientServerTestBase {
+	private static final int BODY_SIZE = 1024 * 1024;
+
+	private static volatile CountDownLatch stallLatch = new CountDownLatch(0);
+
+	@Override
+	protected Class<? extends Servlet> getServletClass() {
+		return TestServlet.class;
+	}
+
+	@SuppressWarnings("serial")
+	public static class TestServlet extends HttpServlet {
+		@Override
+		protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+			resp.setContentType("application/octet-stream");
+			try (OutputStream out = resp.getOutputStream()) {
+				final byte[] buf = new byte[8192];
+				for (int i = 0; i < buf.length; i++) {
+					buf[i] = (byte) i;
+				}
+				if (req.getParameter("stall") != null) {
+					stall(out, buf);
+					return;
+				}
+				for (int written = 0; written < BODY_SIZE; written += buf.length) {
+					out.write(buf);
+				}
+			}
+		}
+
+		private void stall(final OutputStream out, final byte[] buf) throws IOException {
+			out.write(buf);
+			out.flush();
+			try {
+				stallLatch.await(10, TimeUnit.SECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@After
+	public void releaseStall() {
+		stallLatch.countDown();
+	}
+
+	@Test
+	public void test() throws Throwable {
+		try (final HttpClient httpClient = newHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri()).build();
+
+			final HttpResponse<InputStream> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asInputStream(2)))
+					.get(5, TimeUnit.SECONDS);
+
+			long count = 0;
+			try (InputStream in = response.body()) {
+				final byte[] buf = new byte[1000];
+				int n;
+				while ((n = in.read(buf)) != -1) {
+					for (int i = 0; i < n; i++) {
+						assertEquals((byte) (count + i), buf[i]);
+					}
+					count += n;
+				}
+			}
+			assertEquals(BODY_SIZE, count);
+		}
+	}
+
+	@Test
+	public void testCloseEarly() throws Throwable {
+		try (final HttpClient httpClient = newHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri()).build();
+
+			final HttpResponse<InputStream> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asInputStream(2)))
+					.get(5, TimeUnit.SECONDS);
+
+			try (InputStream in = response.body()) {
+				assertEquals(0, in.read());
+			}
+
+			// The client must still be usable
+			final HttpResponse<byte[]> second = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asByteArray()))
+					.get(5, TimeUnit.SECONDS);
+			assertEquals(BODY_SIZE, second.body().length);
+		}
+	}
+
+	@Test
+	public void testCloseEarlyWhileStalled() throws Throwable {
+		stallLatch = new CountDownLatch(1);
+		final CompletableFuture<Throwable> requestFailure = new CompletableFuture<>();
+		try (final HttpClient httpClient = HttpClient.newBuilder()
+				.trustStore(getClientTrustStore())
+				.keyStore(getClientKeyStore(), getClientKeyPassword())
+				.eventListener(new EventListener() {
+					@Override
+					public void requestCompleted(final HttpRequest request, final Throwable failure, final long nanoTime) {
+						requestFailure.complete(failure);
+					}
+				})
+				.build()) {
+			final HttpRequest request = HttpRequest.newBuilder(URI.create(getBaseUrl() + "/?stall=true")).build();
+
+			final HttpResponse<InputStream> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asInputStream(4)))
+					.get(5, TimeUnit.SECONDS);
+
+			// The queue is not full, so no demand is pending when closing
+			try (InputStream in = response.body()) {
+				assertEquals(0, in.read());
+			}
+
+			// The server sends nothing more for 10 seconds unless the exchange is aborted
+			assertNotNull(requestFailure.get(5, TimeUnit.SECONDS));
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package de.mklinger.commons.httpclient;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class MetricsTest extends ClientServerTestBase {
+	@Override
+	protected Class<? extends Servlet> getServletClass() {
+		return TestServlet.class;
+	}
+
+	@SuppressWarnings("serial")
+	public static class TestServlet extends HttpServlet {
+		@Override
+		protected void doPost(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+			resp.setContentType("text/plain;charset=UTF-8");
+			resp.getWriter().print("Ok");
+		}
+	}
+
+	@Test
+	public void test() throws Throwable {
+		try (final HttpClient httpClient = newHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri())
+					.POST(BodyProviders.fromByteArray(new byte[100]))
+					.build();
+
+			final HttpResponse<String> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString()))
+					.get(5, TimeUnit.SECONDS);
+			assertEquals("Ok", response.body());
+
+			final HttpClientMetrics metrics = awaitCompletedRequests(httpClient, 1);
+			assertEquals(1, metrics.requestsStarted());
+			assertEquals(1, metrics.requestsSucceeded());
+			assertEquals(0, metrics.requestsFailed());
+			assertEquals(1, metrics.openSessions());
+			assertEquals(100, metrics.bytesSent());
+			assertEquals(2, metrics.bytesReceived());
+			assertEquals(1, metrics.responseHeadersLatency().count());
+		}
+	}
+
+	private static HttpClientMetrics awaitCompletedRequests(final HttpClient httpClient, final long count) throws InterruptedException {
+		// Metrics are recorded concurrently to completing the response future
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		HttpClientMetrics metrics = httpClient.metrics();
+		while (metrics.requestLatency().count() < count && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+			metrics = httpClient.metrics();
+		}
+		assertEquals(count, metrics.requestLatency().count());
+		return metrics;
+	}
+}
@@ -0,0 +1,171 @@
+package de.mklinger.commons.httpclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class PublisherTest extends ClientServerTestBase {
+	private static final int BODY_SIZE = 1024 * 1024;
+
+	@Override
+	protected Class<? extends Servlet> getServletClass() {
+		return TestServlet.class;
+	}
+
+	@SuppressWarnings("serial")
+	public static class TestServlet extends HttpServlet {
+		@Override
+		protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+			resp.setContentType("application/octet-stream");
+			try (OutputStream out = resp.getOutputStream()) {
+				final byte[] buf = new byte[8192];
+				for (int i = 0; i < buf.length; i++) {
+					buf[i] = (byte) i;
+				}
+				if (req.getParameter("slow") != null) {
+					writeSlowly(out, buf);
+					return;
+				}
+				for (int written = 0; written < BODY_SIZE; written += buf.length) {
+					out.write(buf);
+				}
+			}
+		}
+
+		private void writeSlowly(final OutputStream out, final byte[] buf) throws IOException {
+			// Fails as soon as the client resets the stream
+			for (int i = 0; i < 100; i++) {
+				out.write(buf);
+				out.flush();
+				try {
+					Thread.sleep(100);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	private static class CountingSubscriber implements Subscriber<List<ByteBuffer>> {
+		private final CompletableFuture<Long> result = new CompletableFuture<>();
+		private Subscription subscription;
+		private long count;
+
+		@Override
+		public void onSubscribe(final Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(1);
+		}
+
+		@Override
+		public void onNext(final List<ByteBuffer> item) {
+			for (final ByteBuffer buffer : item) {
+				while (buffer.hasRemaining()) {
+					if (buffer.get() != (byte) count) {
+						result.completeExceptionally(new AssertionError("Unexpected content at " + count));
+					}
+					count++;
+				}
+			}
+			subscription.request(1);
+		}
+
+		@Override
+		public void onError(final Throwable throwable) {
+			result.completeExceptionally(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			result.complete(count);
+		}
+	}
+
+	@Test
+	public void test() throws Throwable {
+		try (final HttpClient httpClient = newHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri()).build();
+
+			final HttpResponse<Publisher<List<ByteBuffer>>> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.ofPublisher()))
+					.get(5, TimeUnit.SECONDS);
+
+			final CountingSubscriber subscriber = new CountingSubscriber();
+			response.body().subscribe(subscriber);
+
+			assertEquals(BODY_SIZE, subscriber.result.get(30, TimeUnit.SECONDS).longValue());
+		}
+	}
+
+	@Test
+	public void testCancelMidStream() throws Throwable {
+		final CompletableFuture<Throwable> requestFailure = new CompletableFuture<>();
+		try (final HttpClient httpClient = HttpClient.newBuilder()
+				.trustStore(getClientTrustStore())
+				.keyStore(getClientKeyStore(), getClientKeyPassword())
+				.eventListener(new EventListener() {
+					@Override
+					public void requestCompleted(final HttpRequest request, final Throwable failure, final long nanoTime) {
+						requestFailure.complete(failure);
+					}
+				})
+				.build()) {
+			final HttpRequest request = HttpRequest.newBuilder(URI.create(getBaseUrl() + "/?slow=true")).build();
+
+			final HttpResponse<Publisher<List<ByteBuffer>>> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.ofPublisher()))
+					.get(5, TimeUnit.SECONDS);
+
+			final CountDownLatch received = new CountDownLatch(1);
+			response.body().subscribe(new Subscriber<List<ByteBuffer>>() {
+				private Subscription subscription;
+
+				@Override
+				public void onSubscribe(final Subscription subscription) {
+					this.subscription = subscription;
+					subscription.request(1);
+				}
+
+				@Override
+				public void onNext(final List<ByteBuffer> item) {
+					// No further demand, so no chunk is pending when cancelling
+					subscription.cancel();
+					received.countDown();
+				}
+
+				@Override
+				public void onError(final Throwable throwable) {
+				}
+
+				@Override
+				public void onComplete() {
+				}
+			});
+
+			received.await(5, TimeUnit.SECONDS);
+			// The server sends for 10 seconds unless the exchange is aborted
+			assertNotNull(requestFailure.get(5, TimeUnit.SECONDS));
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package de.mklinger.commons.httpclient;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class RequestCompressionTest extends ClientServerTestBase {
+	private static final int CHUNK_COUNT = 100;
+	private static final int CHUNK_SIZE = 10_000;
+
+	@Override
+	protected Class<? extends Servlet> getServletClass() {
+		return TestServlet.class;
+	}
+
+	@SuppressWarnings("serial")
+	public static class TestServlet extends HttpServlet {
+		@Override
+		protected void doPost(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+			final String contentEncoding = req.getHeader("Content-Encoding");
+			long count = 0;
+			long sum = 0;
+			try (InputStream in = "gzip".equals(contentEncoding) ? new GZIPInputStream(req.getInputStream()) : req.getInputStream()) {
+				int b;
+				while ((b = in.read()) != -1) {
+					count++;
+					sum += b;
+				}
+			}
+			resp.setContentType("text/plain;charset=UTF-8");
+			resp.getWriter().print(contentEncoding + " " + count + " " + sum);
+		}
+	}
+
+	private static byte[] newBody() {
+		final byte[] body = new byte[CHUNK_COUNT * CHUNK_SIZE];
+		for (int i = 0; i < body.length; i++) {
+			body[i] = (byte) (i / CHUNK_SIZE);
+		}
+		return body;
+	}
+
+	private static String expectedResult() {
+		long sum = 0;
+		for (int i = 0; i < CHUNK_COUNT; i++) {
+			sum += ((byte) i & 0xff) * (long) CHUNK_SIZE;
+		}
+		return "gzip " + (CHUNK_COUNT * CHUNK_SIZE) + " " + sum;
+	}
+
+	@Test
+	public void testByteArray() throws Throwable {
+		try (final HttpClient httpClient = newHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri())
+					.POST(BodyProviders.gzip(BodyProviders.fromByteArray(newBody())))
+					.build();
+
+			final HttpResponse<String> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString()))
+					.get(5, TimeUnit.SECONDS);
+
+			assertEquals(expectedResult(), response.body());
+		}
+	}
+
+	@Test
+	public void testChunks() throws Throwable {
+		final byte[] body = newBody();
+		final List<CompletableFuture<ByteBuffer>> chunks = new ArrayList<>();
+		for (int i = 0; i < CHUNK_COUNT; i++) {
+			chunks.add(CompletableFuture.completedFuture(ByteBuffer.wrap(body, i * CHUNK_SIZE, CHUNK_SIZE)));
+		}
+
+		try (final HttpClient httpClient = newHttpClient()) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri())
+					.POST(BodyProviders.gzip(BodyProviders.fromChunks(chunks.iterator())))
+					.build();
+
+			final HttpResponse<String> response = httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString()))
+					.get(5, TimeUnit.SECONDS);
+
+			assertEquals(expectedResult(), response.body());
+		}
+	}
+}
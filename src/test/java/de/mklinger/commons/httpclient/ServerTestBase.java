@@ -17,6 +17,7 @@ import javax.servlet.Servlet;
 
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -38,15 +39,37 @@ public abstract class ServerTestBase {
 	}
 
 	protected Server newServer() throws IOException, Exception {
+		return newServer(true);
+	}
+
+	protected Server newServer(final boolean http2) throws IOException, Exception {
 		try (ServerSocket ss = new ServerSocket(0)) {
 			port = ss.getLocalPort();
 		}
 
 		final Server server = ConscryptHTTP2Server.newServer(
+				port,
+				getServletClass(),
+				singletonMap("tmpDir", tmp.newFolder().getAbsolutePath()),
+				http2);
+
+		return start(server);
+	}
+
+	protected Server newClearTextServer() throws IOException, Exception {
+		try (ServerSocket ss = new ServerSocket(0)) {
+			port = ss.getLocalPort();
+		}
+
+		final Server server = ConscryptHTTP2Server.newClearTextServer(
 				port,
 				getServletClass(),
 				singletonMap("tmpDir", tmp.newFolder().getAbsolutePath()));
 
+		return start(server);
+	}
+
+	private Server start(final Server server) throws Exception {
 		servers.add(server);
 
 		server.start();
@@ -65,8 +88,9 @@ public abstract class ServerTestBase {
 	}
 
 	protected String getBaseUrl(Server server) {
-		final int port = ((ServerConnector)server.getConnectors()[0]).getPort();
-		return "https://localhost:" + port;
+		final ServerConnector connector = (ServerConnector)server.getConnectors()[0];
+		final String scheme = connector.getConnectionFactory(SslConnectionFactory.class) != null ? "https" : "http";
+		return scheme + "://localhost:" + connector.getPort();
 	}
 
 	protected URI getBaseUri() {
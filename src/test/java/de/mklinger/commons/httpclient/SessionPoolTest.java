@@ -0,0 +1,163 @@
+package de.mklinger.commons.httpclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class SessionPoolTest extends ClientServerTestBase {
+	private static final int REQUESTS = 40;
+
+	private static volatile CountDownLatch responseLatch = new CountDownLatch(0);
+	private static final AtomicInteger receivedRequests = new AtomicInteger();
+
+	@Override
+	protected Class<? extends Servlet> getServletClass() {
+		return TestServlet.class;
+	}
+
+	@SuppressWarnings("serial")
+	public static class TestServlet extends HttpServlet {
+		@Override
+		protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+			receivedRequests.incrementAndGet();
+			try {
+				responseLatch.await(10, TimeUnit.SECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+			resp.setContentType("text/plain;charset=UTF-8");
+			resp.getWriter().print("Ok");
+		}
+	}
+
+	@After
+	public void releaseResponses() {
+		responseLatch.countDown();
+	}
+
+	@Test
+	public void testSessionsOpenedUnderLoad() throws Throwable {
+		try (final HttpClient httpClient = newHttpClientBuilder()
+				.maxConnectionsPerDestination(3)
+				.http2SessionLoadFactor(0.05)
+				.build()) {
+			final long openSessions = sendConcurrently(httpClient, 2);
+			assertTrue("Expected 2 or 3 sessions, got " + openSessions, openSessions >= 2 && openSessions <= 3);
+		}
+	}
+
+	@Test
+	public void testMaxConnectionsPerDestination() throws Throwable {
+		try (final HttpClient httpClient = newHttpClientBuilder()
+				.maxConnectionsPerDestination(1)
+				.http2SessionLoadFactor(0.05)
+				.build()) {
+			assertEquals(1, sendConcurrently(httpClient, 1));
+		}
+	}
+
+	@Test
+	public void testFullLoadFactor() throws Throwable {
+		final int maxStreams = 4;
+		getServers().get(0).getConnectors()[0].getConnectionFactory(HTTP2ServerConnectionFactory.class).setMaxConcurrentStreams(maxStreams);
+		try (final HttpClient httpClient = newHttpClientBuilder()
+				.maxConnectionsPerDestination(2)
+				.http2SessionLoadFactor(1.0)
+				.build()) {
+			responseLatch = new CountDownLatch(1);
+			receivedRequests.set(0);
+			final List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+
+			// The stream that fills the session does not open another one
+			sendAndAwait(httpClient, responses, maxStreams);
+			assertEquals(1, httpClient.metrics().openSessions());
+
+			// The stream that does not fit opens another one
+			sendAndAwait(httpClient, responses, 1);
+			assertEquals(2, httpClient.metrics().openSessions());
+
+			responseLatch.countDown();
+			for (final CompletableFuture<HttpResponse<String>> response : responses) {
+				assertEquals("Ok", response.get(10, TimeUnit.SECONDS).body());
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLoadFactor() {
+		HttpClient.newBuilder().http2SessionLoadFactor(0);
+	}
+
+	/**
+	 * Send requests that are held by the server until the given number of
+	 * sessions is open or a timeout expires.
+	 *
+	 * @return The number of open sessions while the requests were active
+	 */
+	private long sendConcurrently(final HttpClient httpClient, final long expectedSessions) throws Exception {
+		responseLatch = new CountDownLatch(1);
+		final List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+		for (int i = 0; i < REQUESTS; i++) {
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri()).build();
+			responses.add(httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString())));
+		}
+
+		// Additional sessions are opened concurrently
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		long openSessions = httpClient.metrics().openSessions();
+		while (openSessions < expectedSessions && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+			openSessions = httpClient.metrics().openSessions();
+		}
+
+		responseLatch.countDown();
+		for (final CompletableFuture<HttpResponse<String>> response : responses) {
+			assertEquals("Ok", response.get(10, TimeUnit.SECONDS).body());
+		}
+		return openSessions;
+	}
+
+	/**
+	 * Send requests one by one, each after the previous one arrived at the
+	 * server.
+	 */
+	private void sendAndAwait(final HttpClient httpClient, final List<CompletableFuture<HttpResponse<String>>> responses, final int count) throws Exception {
+		for (int i = 0; i < count; i++) {
+			final int expectedRequests = receivedRequests.get() + 1;
+			final HttpRequest request = HttpRequest.newBuilder(getBaseUri()).build();
+			responses.add(httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString())));
+			final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (receivedRequests.get() < expectedRequests && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(expectedRequests, receivedRequests.get());
+		}
+	}
+
+	private HttpClient.Builder newHttpClientBuilder() throws Exception {
+		return HttpClient.newBuilder()
+				.trustStore(getClientTrustStore())
+				.keyStore(getClientKeyStore(), getClientKeyPassword());
+	}
+}
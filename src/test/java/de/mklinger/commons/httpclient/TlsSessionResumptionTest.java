@@ -0,0 +1,65 @@
+package de.mklinger.commons.httpclient;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.junit.Test;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class TlsSessionResumptionTest extends ClientServerTestBase {
+	@Override
+	protected Class<? extends Servlet> getServletClass() {
+		return TestServlet.class;
+	}
+
+	@SuppressWarnings("serial")
+	public static class TestServlet extends HttpServlet {
+		@Override
+		protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+			// Every request needs a new connection and handshake
+			resp.setHeader("Connection", "close");
+			resp.setContentType("text/plain;charset=UTF-8");
+			resp.getWriter().print("Ok");
+		}
+	}
+
+	@Test
+	public void testResumption() throws Throwable {
+		final Server http11Server = newServer(false);
+		try (final HttpClient httpClient = HttpClient.newBuilder()
+				.trustStore(getClientTrustStore())
+				.keyStore(getClientKeyStore(), getClientKeyPassword())
+				.httpVersions(HttpVersion.HTTP_1_1)
+				.tlsSessionCacheSize(100)
+				.tlsSessionTimeout(Duration.ofMinutes(5))
+				.build()) {
+			for (int i = 0; i < 3; i++) {
+				final HttpRequest request = HttpRequest.newBuilder(getBaseUri(http11Server)).build();
+				assertEquals("Ok", httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString()))
+						.get(5, TimeUnit.SECONDS)
+						.body());
+			}
+
+			final HttpClientMetrics metrics = httpClient.metrics();
+			assertEquals(1, metrics.tlsFullHandshakes());
+			assertEquals(2, metrics.tlsSessionsResumed());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTimeout() {
+		HttpClient.newBuilder().tlsSessionTimeout(Duration.ofMillis(500));
+	}
+}
@@ -0,0 +1,49 @@
+package de.mklinger.commons.httpclient;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class VirtualThreadsTest extends ClientServerTestBase {
+	@Override
+	protected Class<? extends Servlet> getServletClass() {
+		return TestServlet.class;
+	}
+
+	@SuppressWarnings("serial")
+	public static class TestServlet extends HttpServlet {
+		@Override
+		protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+			resp.setContentType("text/plain;charset=UTF-8");
+			resp.getWriter().print("Ok");
+		}
+	}
+
+	@Test
+	public void testSend() throws Throwable {
+		// Falls back to platform threads if virtual threads are not usable
+		try (final HttpClient httpClient = newVirtualThreadsClient()) {
+			final HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(getBaseUri()).build(), requireSuccess(BodyHandlers.asString()));
+			assertEquals("Ok", response.body());
+		}
+	}
+
+	private HttpClient newVirtualThreadsClient() throws Exception {
+		return HttpClient.newBuilder()
+				.trustStore(getClientTrustStore())
+				.keyStore(getClientKeyStore(), getClientKeyPassword())
+				.virtualThreads(true)
+				.build();
+	}
+}
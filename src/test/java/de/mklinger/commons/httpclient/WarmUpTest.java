@@ -0,0 +1,83 @@
+package de.mklinger.commons.httpclient;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.junit.Test;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class WarmUpTest extends ClientServerTestBase {
+	@Override
+	protected Class<? extends Servlet> getServletClass() {
+		return TestServlet.class;
+	}
+
+	@SuppressWarnings("serial")
+	public static class TestServlet extends HttpServlet {
+		@Override
+		protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
+			resp.setContentType("text/plain;charset=UTF-8");
+			resp.getWriter().print("Ok");
+		}
+	}
+
+	@Test
+	public void testWarmUp() throws Throwable {
+		try (final HttpClient httpClient = newHttpClientBuilder()
+				.warmUpConnections(2)
+				.build()) {
+			httpClient.warmUp(getBaseUri()).get(5, TimeUnit.SECONDS);
+			assertEquals(2, httpClient.metrics().openSessions());
+
+			// Already open connections are reused
+			httpClient.warmUp(getBaseUri()).get(5, TimeUnit.SECONDS);
+			get(httpClient);
+			assertEquals(2, httpClient.metrics().openSessions());
+		}
+	}
+
+	@Test
+	public void testWarmUpHttp11Fallback() throws Throwable {
+		final Server http11Server = newServer(false);
+		try (final HttpClient httpClient = newHttpClientBuilder()
+				.httpVersions(HttpVersion.HTTP_1_1, HttpVersion.HTTP_2)
+				.warmUpConnections(2)
+				.build()) {
+			httpClient.warmUp(getBaseUri(http11Server)).get(5, TimeUnit.SECONDS);
+			assertEquals(2, httpClient.metrics().openHttp11Connections());
+		}
+	}
+
+	@Test(expected = ExecutionException.class)
+	public void testWarmUpUnreachable() throws Throwable {
+		try (final HttpClient httpClient = newHttpClientBuilder().build()) {
+			httpClient.warmUp(getBaseUri(), URI.create("https://localhost:1")).get(5, TimeUnit.SECONDS);
+		}
+	}
+
+	private void get(final HttpClient httpClient) throws Exception {
+		final HttpRequest request = HttpRequest.newBuilder(getBaseUri()).build();
+		assertEquals("Ok", httpClient.sendAsync(request, requireSuccess(BodyHandlers.asString()))
+				.get(5, TimeUnit.SECONDS)
+				.body());
+	}
+
+	private HttpClient.Builder newHttpClientBuilder() throws Exception {
+		return HttpClient.newBuilder()
+				.trustStore(getClientTrustStore())
+				.keyStore(getClientKeyStore(), getClientKeyPassword());
+	}
+}
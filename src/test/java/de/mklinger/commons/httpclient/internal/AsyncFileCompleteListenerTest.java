@@ -0,0 +1,70 @@
+package de.mklinger.commons.httpclient.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.mklinger.commons.httpclient.FileSinkOption;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class AsyncFileCompleteListenerTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void test() throws Exception {
+		final byte[] data = randomBytes(100_000);
+		final Path file = tmp.getRoot().toPath().resolve("test.bin");
+		write(new AsyncFileCompleteListener(file, -1, StandardOpenOption.CREATE, StandardOpenOption.WRITE), data);
+		assertThat(Files.readAllBytes(file), is(data));
+	}
+
+	@Test
+	public void testPreallocateAndFsync() throws Exception {
+		final byte[] data = randomBytes(100_000);
+		final Path file = tmp.getRoot().toPath().resolve("test.bin");
+		write(new AsyncFileCompleteListener(file, data.length, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				FileSinkOption.PREALLOCATE, FileSinkOption.FSYNC_ON_COMPLETE), data);
+		assertThat(Files.readAllBytes(file), is(data));
+	}
+
+	@Test
+	public void testPreallocateTooLarge() throws Exception {
+		final byte[] data = randomBytes(100_000);
+		final Path file = tmp.getRoot().toPath().resolve("test.bin");
+		write(new AsyncFileCompleteListener(file, data.length * 2, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				FileSinkOption.PREALLOCATE), data);
+		assertThat(Files.readAllBytes(file), is(data));
+	}
+
+	private static void write(final AsyncFileCompleteListener listener, final byte[] data) throws Exception {
+		try {
+			for (int offset = 0; offset < data.length; offset += 7_000) {
+				final ByteBuffer chunk = ByteBuffer.wrap(data, offset, Math.min(7_000, data.length - offset));
+				listener.onNextAsync(chunk).toCompletableFuture().get(5, TimeUnit.SECONDS);
+				assertThat(chunk.hasRemaining(), is(false));
+			}
+			listener.onCompleteAsync().toCompletableFuture().get(5, TimeUnit.SECONDS);
+		} finally {
+			listener.close();
+		}
+	}
+
+	private static byte[] randomBytes(final int length) {
+		final byte[] data = new byte[length];
+		new Random(1).nextBytes(data);
+		return data;
+	}
+}
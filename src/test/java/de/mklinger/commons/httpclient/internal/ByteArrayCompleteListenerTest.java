@@ -0,0 +1,56 @@
+package de.mklinger.commons.httpclient.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class ByteArrayCompleteListenerTest {
+	@Test
+	public void testKnownLength() throws Exception {
+		final byte[] data = randomBytes(50_000);
+		assertThat(collect(new ByteArrayCompleteListener(data.length), data), is(data));
+	}
+
+	@Test
+	public void testUnknownLength() throws Exception {
+		final byte[] data = randomBytes(50_000);
+		assertThat(collect(new ByteArrayCompleteListener(), data), is(data));
+	}
+
+	@Test
+	public void testWrongLength() throws Exception {
+		final byte[] data = randomBytes(50_000);
+		assertThat(collect(new ByteArrayCompleteListener(10), data), is(data));
+		assertThat(collect(new ByteArrayCompleteListener(100_000), data), is(data));
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		assertThat(collect(new ByteArrayCompleteListener(100), new byte[0]), is(new byte[0]));
+	}
+
+	private static byte[] collect(final ByteArrayCompleteListener listener, final byte[] data) throws Exception {
+		try {
+			for (int offset = 0; offset < data.length; offset += 3_000) {
+				listener.onNext(ByteBuffer.wrap(data, offset, Math.min(3_000, data.length - offset)));
+			}
+			listener.onComplete();
+			return listener.getBody();
+		} finally {
+			listener.close();
+		}
+	}
+
+	private static byte[] randomBytes(final int length) {
+		final byte[] data = new byte[length];
+		new Random(1).nextBytes(data);
+		return data;
+	}
+}
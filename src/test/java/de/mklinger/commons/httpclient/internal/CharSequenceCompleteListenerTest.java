@@ -0,0 +1,72 @@
+package de.mklinger.commons.httpclient.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class CharSequenceCompleteListenerTest {
+	private static final String TEXT = "Plain ASCII, Umlaute \u00e4\u00f6\u00fc\u00df, Euro \u20ac, CJK \u6f22\u5b57, Emoji \ud83d\ude00 and more ASCII.";
+
+	@Test
+	public void testUtf8() throws Exception {
+		assertDecoding(TEXT.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testUtf16() throws Exception {
+		assertDecoding(TEXT.getBytes(StandardCharsets.UTF_16), StandardCharsets.UTF_16);
+	}
+
+	@Test
+	public void testLatin1() throws Exception {
+		final byte[] bytes = new byte[256];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		assertDecoding(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	@Test
+	public void testMalformed() throws Exception {
+		final byte[] utf8 = TEXT.getBytes(StandardCharsets.UTF_8);
+		// Truncate in the middle of the emoji and append garbage
+		final byte[] bytes = Arrays.copyOf(utf8, utf8.length + 2);
+		bytes[bytes.length - 2] = (byte) 0xff;
+		bytes[bytes.length - 1] = (byte) 0xf0;
+		assertDecoding(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testUnknownLength() throws Exception {
+		final byte[] bytes = TEXT.getBytes(StandardCharsets.UTF_8);
+		try (CharSequenceCompleteListener listener = new CharSequenceCompleteListener(StandardCharsets.UTF_8)) {
+			for (int i = 0; i < 1000; i++) {
+				listener.onNext(ByteBuffer.wrap(bytes));
+			}
+			listener.onComplete();
+			assertThat(listener.getBody().length(), is(TEXT.length() * 1000));
+		}
+	}
+
+	private static void assertDecoding(final byte[] bytes, final Charset charset) throws Exception {
+		final String expected = new String(bytes, charset);
+		for (int chunkSize = 1; chunkSize <= 8; chunkSize++) {
+			try (CharSequenceCompleteListener listener = new CharSequenceCompleteListener(charset, bytes.length)) {
+				for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+					listener.onNext(ByteBuffer.wrap(bytes, offset, Math.min(chunkSize, bytes.length - offset)));
+				}
+				listener.onComplete();
+				assertThat("Chunk size " + chunkSize, listener.getBody().toString(), is(expected));
+			}
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package de.mklinger.commons.httpclient.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class GzipEncoderTest {
+	@Test
+	public void testHeapBuffers() throws IOException {
+		final byte[] data = newData();
+		assertArrayEquals(data, gunzip(encode(data, 1000, false, Deflater.DEFAULT_COMPRESSION)));
+	}
+
+	@Test
+	public void testDirectBuffers() throws IOException {
+		final byte[] data = newData();
+		assertArrayEquals(data, gunzip(encode(data, 50_000, true, Deflater.BEST_SPEED)));
+	}
+
+	@Test
+	public void testIncompressible() throws IOException {
+		final byte[] data = new byte[100_000];
+		new Random(1).nextBytes(data);
+		assertArrayEquals(data, gunzip(encode(data, 30_000, false, Deflater.DEFAULT_COMPRESSION)));
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		assertArrayEquals(new byte[0], gunzip(encode(new byte[0], 1, false, Deflater.DEFAULT_COMPRESSION)));
+	}
+
+	private static byte[] newData() {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int i = 0; i < 50_000; i++) {
+			final byte[] line = ("line " + i + "\n").getBytes();
+			out.write(line, 0, line.length);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] encode(final byte[] data, final int chunkSize, final boolean direct, final int level) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (GzipEncoder encoder = new GzipEncoder(level)) {
+			for (int offset = 0; offset < data.length; offset += chunkSize) {
+				final int len = Math.min(chunkSize, data.length - offset);
+				ByteBuffer chunk = ByteBuffer.wrap(data, offset, len);
+				if (direct) {
+					chunk = ByteBuffer.allocateDirect(len).put(chunk);
+					chunk.flip();
+				}
+				write(out, encoder.encode(chunk));
+			}
+			write(out, encoder.finish());
+		}
+		return out.toByteArray();
+	}
+
+	private static void write(final ByteArrayOutputStream out, final ByteBuffer buffer) {
+		out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+	}
+
+	private static byte[] gunzip(final byte[] compressed) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+			final byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				out.write(buf, 0, n);
+			}
+		}
+		return out.toByteArray();
+	}
+}
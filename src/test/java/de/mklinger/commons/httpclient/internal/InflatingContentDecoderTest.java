@@ -0,0 +1,156 @@
+package de.mklinger.commons.httpclient.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.Test;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class InflatingContentDecoderTest {
+	private static final byte[] DATA = newData();
+
+	private static byte[] newData() {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20_000; i++) {
+			sb.append("{\"id\":").append(i).append(",\"name\":\"Item ").append(i).append("\"}\n");
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testGzip() throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(DATA);
+		}
+		assertDecoding("gzip", out.toByteArray(), DATA);
+	}
+
+	@Test
+	public void testGzipWithOptionalHeaderFields() throws Exception {
+		// FHCRC, FEXTRA, FNAME and FCOMMENT set
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(new byte[] { 0x1f, (byte) 0x8b, 8, 0x1e, 0, 0, 0, 0, 0, (byte) 0xff });
+		out.write(new byte[] { 3, 0, 'a', 'b', 'c' });
+		out.write("name.json\0".getBytes(StandardCharsets.ISO_8859_1));
+		out.write("comment\0".getBytes(StandardCharsets.ISO_8859_1));
+		out.write(new byte[] { 0, 0 });
+		out.write(rawDeflate(DATA));
+		writeTrailer(out, DATA);
+		assertDecoding("gzip", out.toByteArray(), DATA);
+	}
+
+	@Test
+	public void testGzipMultipleMembers() throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int i = 0; i < 2; i++) {
+			try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+				@Override
+				public void close() throws IOException {
+					finish();
+				}
+			}) {
+				gzip.write(DATA);
+			}
+		}
+		final byte[] expected = new byte[DATA.length * 2];
+		System.arraycopy(DATA, 0, expected, 0, DATA.length);
+		System.arraycopy(DATA, 0, expected, DATA.length, DATA.length);
+		assertDecoding("x-gzip", out.toByteArray(), expected);
+	}
+
+	@Test
+	public void testDeflateZlib() throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (DeflaterOutputStream deflate = new DeflaterOutputStream(out)) {
+			deflate.write(DATA);
+		}
+		assertDecoding("deflate", out.toByteArray(), DATA);
+	}
+
+	@Test
+	public void testDeflateRaw() throws Exception {
+		assertDecoding("Deflate", rawDeflate(DATA), DATA);
+	}
+
+	@Test(expected = ZipException.class)
+	public void testTruncated() throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(DATA);
+		}
+		final byte[] compressed = out.toByteArray();
+		final byte[] truncated = new byte[compressed.length - 4];
+		System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+		decode("gzip", truncated, 1000);
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		assertThat(decode("gzip", new byte[0], 1000), is(new byte[0]));
+	}
+
+	@Test
+	public void testUnsupported() {
+		assertThat(InflatingContentDecoder.forContentEncoding("br") == null, is(true));
+		assertThat(InflatingContentDecoder.forContentEncoding("identity") == null, is(true));
+	}
+
+	private static void assertDecoding(final String contentEncoding, final byte[] compressed, final byte[] expected) throws Exception {
+		for (final int chunkSize : new int[] { 1, 7, 1000, compressed.length }) {
+			assertThat("Chunk size " + chunkSize, decode(contentEncoding, compressed, chunkSize), is(expected));
+		}
+	}
+
+	private static byte[] decode(final String contentEncoding, final byte[] compressed, final int chunkSize) throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InflatingContentDecoder decoder = InflatingContentDecoder.forContentEncoding(contentEncoding)) {
+			for (int offset = 0; offset < compressed.length; offset += chunkSize) {
+				decoder.setInput(ByteBuffer.wrap(compressed, offset, Math.min(chunkSize, compressed.length - offset)));
+				ByteBuffer output;
+				while ((output = decoder.nextOutput()) != null) {
+					out.write(output.array(), output.arrayOffset() + output.position(), output.remaining());
+				}
+			}
+			decoder.finish();
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] rawDeflate(final byte[] data) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+			deflate.write(data);
+		} finally {
+			deflater.end();
+		}
+		return out.toByteArray();
+	}
+
+	private static void writeTrailer(final ByteArrayOutputStream out, final byte[] data) {
+		final CRC32 crc = new CRC32();
+		crc.update(data);
+		writeInt(out, crc.getValue());
+		writeInt(out, data.length);
+	}
+
+	private static void writeInt(final ByteArrayOutputStream out, final long value) {
+		out.write((int) (value & 0xff));
+		out.write((int) ((value >> 8) & 0xff));
+		out.write((int) ((value >> 16) & 0xff));
+		out.write((int) ((value >> 24) & 0xff));
+	}
+}
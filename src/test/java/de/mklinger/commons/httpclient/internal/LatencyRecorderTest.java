@@ -0,0 +1,55 @@
+package de.mklinger.commons.httpclient.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import de.mklinger.commons.httpclient.HttpClientMetrics.Histogram;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class LatencyRecorderTest {
+	@Test
+	public void testBuckets() {
+		for (long micros = 0; micros < 1_000_000; micros++) {
+			final int index = LatencyRecorder.bucketIndex(micros);
+			assertThat(LatencyRecorder.bucketUpperBound(index), greaterThanOrEqualTo(micros));
+			assertThat(LatencyRecorder.bucketUpperBound(index - 1), lessThanOrEqualTo(micros - 1));
+		}
+	}
+
+	@Test
+	public void testEmpty() {
+		final Histogram histogram = new LatencyRecorder().snapshot();
+		assertThat(histogram.count(), is(0L));
+		assertThat(histogram.percentile(99), is(Duration.ZERO));
+		assertThat(histogram.mean(), is(Duration.ZERO));
+	}
+
+	@Test
+	public void testPercentiles() {
+		final LatencyRecorder recorder = new LatencyRecorder();
+		for (int millis = 1; millis <= 100; millis++) {
+			recorder.record(TimeUnit.MILLISECONDS.toNanos(millis));
+		}
+
+		final Histogram histogram = recorder.snapshot();
+		assertThat(histogram.count(), is(100L));
+		assertThat(histogram.max(), is(Duration.ofMillis(100)));
+		assertWithinError(histogram.percentile(50), Duration.ofMillis(50));
+		assertWithinError(histogram.percentile(99), Duration.ofMillis(99));
+		assertThat(histogram.percentile(100), is(Duration.ofMillis(100)));
+	}
+
+	private static void assertWithinError(final Duration actual, final Duration expected) {
+		assertThat(actual, greaterThanOrEqualTo(expected));
+		assertThat(actual.toNanos(), lessThanOrEqualTo(expected.toNanos() + expected.toNanos() / 8));
+	}
+}
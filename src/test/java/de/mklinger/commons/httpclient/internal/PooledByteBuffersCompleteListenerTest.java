@@ -0,0 +1,72 @@
+package de.mklinger.commons.httpclient.internal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.junit.Test;
+
+import de.mklinger.commons.httpclient.PooledByteBuffers;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class PooledByteBuffersCompleteListenerTest {
+	private static class CountingByteBufferPool implements ByteBufferPool {
+		private final ByteBufferPool delegate = new ArrayByteBufferPool();
+		private final AtomicInteger acquired = new AtomicInteger();
+
+		@Override
+		public ByteBuffer acquire(final int size, final boolean direct) {
+			acquired.incrementAndGet();
+			return delegate.acquire(size, direct);
+		}
+
+		@Override
+		public void release(final ByteBuffer buffer) {
+			acquired.decrementAndGet();
+			delegate.release(buffer);
+		}
+	}
+
+	@Test
+	public void test() throws Exception {
+		final CountingByteBufferPool pool = new CountingByteBufferPool();
+		final byte[] data = new byte[100_000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+
+		final PooledByteBuffers body;
+		try (PooledByteBuffersCompleteListener listener = new PooledByteBuffersCompleteListener(pool)) {
+			for (int offset = 0; offset < data.length; offset += 7_000) {
+				listener.onNext(ByteBuffer.wrap(data, offset, Math.min(7_000, data.length - offset)));
+			}
+			listener.onComplete();
+			body = listener.getBody();
+		}
+
+		assertThat(body.size(), is((long) data.length));
+
+		final ByteBuffer all = ByteBuffer.allocate(data.length);
+		body.buffers().forEach(all::put);
+		assertThat(all.array(), is(data));
+
+		body.close();
+		assertThat(pool.acquired.get(), is(0));
+	}
+
+	@Test
+	public void testCloseWithoutBody() throws Exception {
+		final CountingByteBufferPool pool = new CountingByteBufferPool();
+		try (PooledByteBuffersCompleteListener listener = new PooledByteBuffersCompleteListener(pool)) {
+			listener.onNext(ByteBuffer.wrap(new byte[50_000]));
+			assertThat(pool.acquired.get() > 0, is(true));
+		}
+		assertThat(pool.acquired.get(), is(0));
+	}
+}
@@ -18,4 +18,16 @@ public class ThreadContextClassLoaderQueuedThreadPoolTest {
 
 		assertThat(newThread.getContextClassLoader(), is(classLoader));
 	}
+
+	@Test
+	public void testThreadFactory() {
+		final URLClassLoader classLoader = new URLClassLoader(new URL[0]);
+
+		final ThreadContextClassLoaderQueuedThreadPool threadPool = new ThreadContextClassLoaderQueuedThreadPool(classLoader,
+				runnable -> new Thread(runnable, "factory-thread"));
+		final Thread newThread = threadPool.newThread(() -> {});
+
+		assertThat(newThread.getName(), is("factory-thread"));
+		assertThat(newThread.getContextClassLoader(), is(classLoader));
+	}
 }
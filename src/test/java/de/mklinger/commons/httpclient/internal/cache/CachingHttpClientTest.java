@@ -0,0 +1,235 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import de.mklinger.commons.httpclient.BodyHandlers;
+import de.mklinger.commons.httpclient.BodyProviders;
+import de.mklinger.commons.httpclient.HttpClient;
+import de.mklinger.commons.httpclient.HttpClientMetrics;
+import de.mklinger.commons.httpclient.HttpRequest;
+import de.mklinger.commons.httpclient.HttpResponse;
+import de.mklinger.commons.httpclient.HttpResponse.BodyCompleteListener;
+import de.mklinger.commons.httpclient.HttpResponse.BodyHandler;
+import de.mklinger.commons.httpclient.internal.HttpHeadersImpl;
+import de.mklinger.commons.httpclient.internal.InlineExecutor;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class CachingHttpClientTest {
+	private static final URI RESOURCE_URI = URI.create("https://localhost/resource");
+
+	private final FakeHttpClient delegate = new FakeHttpClient();
+	private final HttpCacheImpl cache = new HttpCacheImpl(new OffHeapCacheStore(1024 * 1024, 256 * 1024));
+	private final HttpClient client = new CachingHttpClient(delegate, cache, InlineExecutor.getInstance());
+
+	@Test
+	public void testFreshHit() throws Exception {
+		delegate.respond(200, "body 1", "Cache-Control", "max-age=60");
+
+		assertThat(get().body(), is("body 1"));
+		final HttpResponse<String> response = get();
+		assertThat(response.statusCode(), is(200));
+		assertThat(response.body(), is("body 1"));
+		assertThat(response.headers().firstValue("Age").isPresent(), is(true));
+
+		assertThat(delegate.requests.size(), is(1));
+		assertThat(cache.hitCount(), is(1L));
+		assertThat(cache.missCount(), is(1L));
+	}
+
+	@Test
+	public void testRevalidation() throws Exception {
+		delegate.respond(200, "body 1", "Cache-Control", "no-cache", "ETag", "\"v1\"");
+		delegate.respond(304, "", "ETag", "\"v1\"", "X-Revalidated", "true");
+
+		assertThat(get().body(), is("body 1"));
+		final HttpResponse<String> response = get();
+		assertThat(response.statusCode(), is(200));
+		assertThat(response.body(), is("body 1"));
+		assertThat(response.headers().firstValue("X-Revalidated").get(), is("true"));
+
+		assertThat(delegate.requests.size(), is(2));
+		assertThat(delegate.requests.get(1).headers().firstValue("If-None-Match").get(), is("\"v1\""));
+	}
+
+	@Test
+	public void testChangedOnRevalidation() throws Exception {
+		delegate.respond(200, "body 1", "Cache-Control", "max-age=0", "ETag", "\"v1\"");
+		delegate.respond(200, "body 2", "Cache-Control", "max-age=60", "ETag", "\"v2\"");
+
+		assertThat(get().body(), is("body 1"));
+		assertThat(get().body(), is("body 2"));
+		assertThat(get().body(), is("body 2"));
+		assertThat(delegate.requests.size(), is(2));
+	}
+
+	@Test
+	public void testStaleWhileRevalidate() throws Exception {
+		delegate.respond(200, "body 1", "Cache-Control", "max-age=0, stale-while-revalidate=60", "ETag", "\"v1\"");
+		delegate.respond(200, "body 2", "Cache-Control", "max-age=60", "ETag", "\"v2\"");
+
+		assertThat(get().body(), is("body 1"));
+		// Served stale, revalidated in the background
+		assertThat(get().body(), is("body 1"));
+		assertThat(delegate.requests.size(), is(2));
+		assertThat(get().body(), is("body 2"));
+		assertThat(delegate.requests.size(), is(2));
+	}
+
+	@Test
+	public void testStaleIfError() throws Exception {
+		delegate.respond(200, "body 1", "Cache-Control", "max-age=0, stale-if-error=60");
+		delegate.respond(503, "unavailable");
+		delegate.fail(new IOException("Connection refused"));
+
+		assertThat(get().body(), is("body 1"));
+		assertThat(get().body(), is("body 1"));
+		assertThat(get().body(), is("body 1"));
+		assertThat(delegate.requests.size(), is(3));
+	}
+
+	@Test(expected = IOException.class)
+	public void testErrorWithoutStaleIfError() throws Throwable {
+		delegate.respond(200, "body 1", "Cache-Control", "max-age=0");
+		delegate.fail(new IOException("Connection refused"));
+
+		get();
+		try {
+			get();
+		} catch (final ExecutionException e) {
+			throw e.getCause();
+		}
+	}
+
+	@Test
+	public void testNoStore() throws Exception {
+		delegate.respond(200, "body 1", "Cache-Control", "no-store, max-age=60");
+		delegate.respond(200, "body 2", "Cache-Control", "max-age=60");
+
+		assertThat(get().body(), is("body 1"));
+		assertThat(get().body(), is("body 2"));
+		assertThat(cache.entryCount(), is(1L));
+	}
+
+	@Test
+	public void testUnsafeMethodInvalidates() throws Exception {
+		delegate.respond(200, "body 1", "Cache-Control", "max-age=60");
+		delegate.respond(204, "");
+		delegate.respond(200, "body 2", "Cache-Control", "max-age=60");
+
+		assertThat(get().body(), is("body 1"));
+		client.sendAsync(HttpRequest.newBuilder(RESOURCE_URI).POST(BodyProviders.noBody()).build(), BodyHandlers.discard()).get(5, TimeUnit.SECONDS);
+		assertThat(get().body(), is("body 2"));
+	}
+
+	@Test
+	public void testVary() throws Exception {
+		delegate.respond(200, "en", "Cache-Control", "max-age=60", "Vary", "Accept-Language");
+		delegate.respond(200, "de", "Cache-Control", "max-age=60", "Vary", "Accept-Language");
+
+		assertThat(get("en").body(), is("en"));
+		assertThat(get("de").body(), is("de"));
+		assertThat(get("de").body(), is("de"));
+		assertThat(delegate.requests.size(), is(2));
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		final OffHeapCacheStore store = new OffHeapCacheStore(2000, 1000);
+		final List<ByteBuffer> body = new ArrayList<>();
+		body.add(ByteBuffer.allocateDirect(600));
+		final CacheEntry entry = new CacheEntry(200, new HttpHeadersImpl(), new TreeMap<>(), new MemoryCachedBody(body), 0, 0);
+
+		store.put("a", entry);
+		store.put("b", entry);
+		store.get("a");
+		store.put("c", entry);
+
+		assertThat(store.entryCount(), is(2L));
+		assertThat(store.get("a") != null, is(true));
+		assertThat(store.get("b") == null, is(true));
+	}
+
+	private HttpResponse<String> get() throws Exception {
+		return client.sendAsync(HttpRequest.newBuilder(RESOURCE_URI).build(), BodyHandlers.asString()).get(5, TimeUnit.SECONDS);
+	}
+
+	private HttpResponse<String> get(final String language) throws Exception {
+		return client.sendAsync(HttpRequest.newBuilder(RESOURCE_URI).header("Accept-Language", language).build(), BodyHandlers.asString()).get(5, TimeUnit.SECONDS);
+	}
+
+	private static class FakeHttpClient implements HttpClient {
+		private final Queue<Object> responses = new ArrayDeque<>();
+		private final List<HttpRequest> requests = new ArrayList<>();
+
+		public void respond(final int statusCode, final String body, final String... headers) {
+			final HttpHeadersImpl responseHeaders = new HttpHeadersImpl();
+			for (int i = 0; i < headers.length; i += 2) {
+				responseHeaders.addHeader(headers[i], headers[i + 1]);
+			}
+			responses.add(new Object[] { statusCode, responseHeaders, body.getBytes(StandardCharsets.UTF_8) });
+		}
+
+		public void fail(final Throwable failure) {
+			responses.add(failure);
+		}
+
+		@Override
+		public <T> CompletableFuture<HttpResponse<T>> sendAsync(final HttpRequest request, final BodyHandler<T> responseBodyHandler) {
+			requests.add(request);
+			final CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+			final Object response = responses.remove();
+			if (response instanceof Throwable) {
+				result.completeExceptionally((Throwable) response);
+				return result;
+			}
+			final Object[] r = (Object[]) response;
+			final int statusCode = (Integer) r[0];
+			final HttpHeadersImpl headers = (HttpHeadersImpl) r[1];
+			try (BodyCompleteListener<T> listener = responseBodyHandler.apply(statusCode, headers)) {
+				listener.onNext(ByteBuffer.wrap((byte[]) r[2]));
+				listener.onComplete();
+				result.complete(new CachedHttpResponse<>(statusCode, request, headers, listener.getBody()));
+			} catch (final Exception e) {
+				result.completeExceptionally(e);
+			}
+			return result;
+		}
+
+		@Override
+		public <T> HttpResponse<T> send(final HttpRequest request, final BodyHandler<T> responseBodyHandler) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CompletableFuture<Void> warmUp(final URI... origins) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public HttpClientMetrics metrics() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,262 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import de.mklinger.commons.httpclient.BodyHandlers;
+import de.mklinger.commons.httpclient.BodyProviders;
+import de.mklinger.commons.httpclient.HttpClient;
+import de.mklinger.commons.httpclient.HttpClientMetrics;
+import de.mklinger.commons.httpclient.HttpRequest;
+import de.mklinger.commons.httpclient.HttpResponse;
+import de.mklinger.commons.httpclient.HttpResponse.BodyCompleteListener;
+import de.mklinger.commons.httpclient.HttpResponse.BodyHandler;
+import de.mklinger.commons.httpclient.internal.HttpHeadersImpl;
+import de.mklinger.commons.httpclient.internal.InlineExecutor;
+import de.mklinger.commons.httpclient.internal.StringCompleteListener;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class CoalescingHttpClientTest {
+	private static final URI RESOURCE_URI = URI.create("https://localhost/resource");
+
+	private final PendingHttpClient delegate = new PendingHttpClient();
+	private final HttpClient client = new CoalescingHttpClient(delegate, Collections.singletonList("Accept"), InlineExecutor.getInstance());
+
+	@Test
+	public void testConcurrentRequestsShareExchange() throws Exception {
+		final CompletableFuture<HttpResponse<String>> response1 = get("text/plain");
+		final CompletableFuture<HttpResponse<String>> response2 = get("text/plain");
+		final CompletableFuture<HttpResponse<byte[]>> response3 = client.sendAsync(request("text/plain"), BodyHandlers.asByteArray());
+		assertThat(delegate.exchanges.size(), is(1));
+
+		delegate.respond(0, 200, "body");
+		assertThat(response1.get(5, TimeUnit.SECONDS).body(), is("body"));
+		assertThat(response2.get(5, TimeUnit.SECONDS).body(), is("body"));
+		assertThat(response2.get().statusCode(), is(200));
+		assertThat(response2.get().headers().firstValue("X-Test").get(), is("true"));
+		assertThat(new String(response3.get(5, TimeUnit.SECONDS).body(), StandardCharsets.UTF_8), is("body"));
+
+		// Requests after completion start a new exchange
+		get("text/plain");
+		assertThat(delegate.exchanges.size(), is(2));
+	}
+
+	@Test
+	public void testKeyHeaders() throws Exception {
+		get("text/plain");
+		get("application/json");
+		client.sendAsync(HttpRequest.newBuilder(RESOURCE_URI).header("Accept", "text/plain").header("X-Other", "1").build(), BodyHandlers.asString());
+		assertThat(delegate.exchanges.size(), is(2));
+	}
+
+	@Test
+	public void testCredentialHeaders() throws Exception {
+		client.sendAsync(HttpRequest.newBuilder(RESOURCE_URI).header("Authorization", "Bearer a").build(), BodyHandlers.asString());
+		client.sendAsync(HttpRequest.newBuilder(RESOURCE_URI).header("Authorization", "Bearer b").build(), BodyHandlers.asString());
+		client.sendAsync(HttpRequest.newBuilder(RESOURCE_URI).header("Cookie", "session=a").build(), BodyHandlers.asString());
+		client.sendAsync(HttpRequest.newBuilder(RESOURCE_URI).header("Proxy-Authorization", "Basic a").build(), BodyHandlers.asString());
+		client.sendAsync(HttpRequest.newBuilder(RESOURCE_URI).build(), BodyHandlers.asString());
+		assertThat(delegate.exchanges.size(), is(5));
+
+		// Same credentials still share the exchange
+		client.sendAsync(HttpRequest.newBuilder(RESOURCE_URI).header("Authorization", "Bearer a").build(), BodyHandlers.asString());
+		assertThat(delegate.exchanges.size(), is(5));
+	}
+
+	@Test
+	public void testNotCoalesced() throws Exception {
+		client.sendAsync(HttpRequest.newBuilder(RESOURCE_URI).POST(BodyProviders.fromByteArray(new byte[] { 1 })).build(), BodyHandlers.asString());
+		client.sendAsync(HttpRequest.newBuilder(RESOURCE_URI).POST(BodyProviders.fromByteArray(new byte[] { 1 })).build(), BodyHandlers.asString());
+		client.sendAsync(HttpRequest.newBuilder(RESOURCE_URI).header("If-None-Match", "\"v1\"").build(), BodyHandlers.asString());
+		client.sendAsync(HttpRequest.newBuilder(RESOURCE_URI).header("If-None-Match", "\"v1\"").build(), BodyHandlers.asString());
+		client.sendAsync(request(null), BodyHandlers.raw(BodyHandlers.asString()));
+		client.sendAsync(request(null), BodyHandlers.raw(BodyHandlers.asString()));
+		assertThat(delegate.exchanges.size(), is(6));
+	}
+
+	@Test
+	public void testFailureShared() throws Exception {
+		final CompletableFuture<HttpResponse<String>> response1 = get("text/plain");
+		final CompletableFuture<HttpResponse<String>> response2 = get("text/plain");
+		delegate.exchanges.get(0).future.completeExceptionally(new IOException("test"));
+
+		assertFailure(response1);
+		assertFailure(response2);
+	}
+
+	@Test
+	public void testCancellation() throws Exception {
+		final CompletableFuture<HttpResponse<String>> response1 = get("text/plain");
+		final CompletableFuture<HttpResponse<String>> response2 = get("text/plain");
+
+		response1.cancel(true);
+		assertThat(delegate.exchanges.get(0).future.isCancelled(), is(false));
+		delegate.respond(0, 200, "body");
+		assertThat(response2.get(5, TimeUnit.SECONDS).body(), is("body"));
+
+		final CompletableFuture<HttpResponse<String>> response3 = get("text/plain");
+		final CompletableFuture<HttpResponse<String>> response4 = get("text/plain");
+		response3.cancel(true);
+		response4.cancel(true);
+		assertThat(delegate.exchanges.get(1).future.isCancelled(), is(true));
+
+		get("text/plain");
+		assertThat(delegate.exchanges.size(), is(3));
+	}
+
+	@Test
+	public void testCancellationAfterFallback() throws Exception {
+		final CompletableFuture<HttpResponse<String>> response1 = get("text/plain");
+		final CompletableFuture<HttpResponse<String>> response2 = get("text/plain");
+
+		// Too large to share, so the joined request is sent on its own
+		final HttpHeadersImpl headers = new HttpHeadersImpl();
+		headers.addHeader("Content-Length", String.valueOf(CoalescingHttpClient.MAX_SHARED_BODY_SIZE + 1));
+		delegate.exchanges.get(0).respond(200, headers, "body");
+		assertThat(delegate.exchanges.size(), is(2));
+
+		// The leading request keeps its exchange
+		assertThat(response1.get(5, TimeUnit.SECONDS).body(), is("body"));
+
+		// Only the own request of the cancelled caller is cancelled
+		response2.cancel(true);
+		assertThat(delegate.exchanges.get(1).future.isCancelled(), is(true));
+	}
+
+	@Test
+	public void testSingleRequestNotRecorded() throws Exception {
+		final BodyCompleteListener<String> listener = new StringCompleteListener(StandardCharsets.UTF_8);
+		client.sendAsync(request("text/plain"), (statusCode, responseHeaders) -> listener);
+
+		// Nobody joined, so the body goes straight to the caller's listener
+		assertThat(delegate.exchanges.get(0).apply(200), sameInstance(listener));
+	}
+
+	@Test
+	public void testJoinUntilHeaders() throws Exception {
+		get("text/plain");
+		get("text/plain");
+		delegate.exchanges.get(0).apply(200);
+
+		// Requests after the headers do not get the body from the start
+		get("text/plain");
+		assertThat(delegate.exchanges.size(), is(2));
+	}
+
+	@Test
+	public void testFailureAfterHeaders() throws Exception {
+		final CompletableFuture<HttpResponse<String>> response1 = client.sendAsync(request("text/plain"), (statusCode, responseHeaders) -> {
+			throw new IllegalStateException("test");
+		});
+		final CompletableFuture<HttpResponse<String>> response2 = get("text/plain");
+
+		// The joined request does not depend on the leading request's body handler
+		delegate.respond(0, 200, "body");
+		assertFailure(response1);
+		assertThat(delegate.exchanges.size(), is(2));
+		delegate.respond(1, 200, "body");
+		assertThat(response2.get(5, TimeUnit.SECONDS).body(), is("body"));
+	}
+
+	private static void assertFailure(final CompletableFuture<?> response) throws InterruptedException {
+		try {
+			response.get();
+			throw new AssertionError("Expected failure");
+		} catch (final ExecutionException e) {
+			assertThat(e.getCause().getMessage(), is("test"));
+		}
+	}
+
+	private CompletableFuture<HttpResponse<String>> get(final String accept) {
+		return client.sendAsync(request(accept), BodyHandlers.asString());
+	}
+
+	private static HttpRequest request(final String accept) {
+		final HttpRequest.Builder builder = HttpRequest.newBuilder(RESOURCE_URI);
+		if (accept != null) {
+			builder.header("Accept", accept);
+		}
+		return builder.build();
+	}
+
+	private static class Exchange<T> {
+		private final HttpRequest request;
+		private final BodyHandler<T> handler;
+		private final CompletableFuture<HttpResponse<T>> future = new CompletableFuture<>();
+
+		public Exchange(final HttpRequest request, final BodyHandler<T> handler) {
+			this.request = request;
+			this.handler = handler;
+		}
+
+		public BodyCompleteListener<T> apply(final int statusCode) {
+			return handler.apply(statusCode, new HttpHeadersImpl());
+		}
+
+		public void respond(final int statusCode, final String body) {
+			final HttpHeadersImpl headers = new HttpHeadersImpl();
+			headers.addHeader("X-Test", "true");
+			respond(statusCode, headers, body);
+		}
+
+		public void respond(final int statusCode, final HttpHeadersImpl headers, final String body) {
+			try (BodyCompleteListener<T> listener = handler.apply(statusCode, headers)) {
+				listener.onNext(ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8)));
+				listener.onComplete();
+				future.complete(new CachedHttpResponse<>(statusCode, request, headers, listener.getBody()));
+			} catch (final Exception e) {
+				future.completeExceptionally(e);
+			}
+		}
+	}
+
+	private static class PendingHttpClient implements HttpClient {
+		private final List<Exchange<?>> exchanges = new ArrayList<>();
+
+		public void respond(final int index, final int statusCode, final String body) {
+			exchanges.get(index).respond(statusCode, body);
+		}
+
+		@Override
+		public <T> CompletableFuture<HttpResponse<T>> sendAsync(final HttpRequest request, final BodyHandler<T> responseBodyHandler) {
+			final Exchange<T> exchange = new Exchange<>(request, responseBodyHandler);
+			exchanges.add(exchange);
+			return exchange.future;
+		}
+
+		@Override
+		public <T> HttpResponse<T> send(final HttpRequest request, final BodyHandler<T> responseBodyHandler) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CompletableFuture<Void> warmUp(final URI... origins) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public HttpClientMetrics metrics() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package de.mklinger.commons.httpclient.internal.cache;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.mklinger.commons.httpclient.internal.FileCompleteListener;
+import de.mklinger.commons.httpclient.internal.HttpHeadersImpl;
+import de.mklinger.commons.httpclient.internal.InlineExecutor;
+
+/**
+ * @author Marc Klinger - mklinger[at]mklinger[dot]de
+ */
+public class DiskCacheStoreTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void testSurvivesRestart() throws Exception {
+		final Path directory = tmp.getRoot().toPath();
+		final DiskCacheStore store = newStore(directory, 1024 * 1024);
+		store.put("key", entry("body 1"));
+		assertThat(body(store.get("key")), is("body 1"));
+		assertThat(store.get("key").getBody() instanceof FileCachedBody, is(true));
+
+		final DiskCacheStore reopened = newStore(directory, 1024 * 1024);
+		final CacheEntry entry = reopened.get("key");
+		assertThat(entry.getStatusCode(), is(200));
+		assertThat(entry.getHeaders().firstValue("Cache-Control").get(), is("max-age=60"));
+		assertThat(entry.getVaryRequestHeaders().get("accept-language"), is(Collections.singletonList("de")));
+		assertThat(entry.getRequestTime(), is(1000L));
+		assertThat(body(entry), is("body 1"));
+		assertThat(reopened.entryCount(), is(1L));
+		assertThat(reopened.size(), is(store.size()));
+	}
+
+	@Test
+	public void testReplaceAndRemove() throws Exception {
+		final Path directory = tmp.getRoot().toPath();
+		final DiskCacheStore store = newStore(directory, 1024 * 1024);
+		store.put("key", entry("body 1"));
+		store.put("key", entry("body 2"));
+		assertThat(body(store.get("key")), is("body 2"));
+		assertThat(files(directory).size(), is(1));
+
+		store.remove("key");
+		assertThat(store.get("key"), is(nullValue()));
+		assertThat(files(directory).size(), is(0));
+		assertThat(newStore(directory, 1024 * 1024).entryCount(), is(0L));
+	}
+
+	@Test
+	public void testRevalidation() throws Exception {
+		final Path directory = tmp.getRoot().toPath();
+		final DiskCacheStore store = newStore(directory, 1024 * 1024);
+		store.put("key", entry("body 1"));
+		final CacheEntry stale = store.get("key");
+
+		// A 304 response updates the headers and keeps the stored body
+		final HttpHeadersImpl headers = new HttpHeadersImpl();
+		headers.addHeader("Cache-Control", "max-age=3600");
+		headers.addHeader("ETag", "\"some longer validator than before\"");
+		store.put("key", new CacheEntry(200, headers, stale.getVaryRequestHeaders(), stale.getBody(), 3000L, 4000L));
+
+		final CacheEntry revalidated = store.get("key");
+		assertThat(revalidated.getHeaders().firstValue("ETag").isPresent(), is(true));
+		assertThat(revalidated.getRequestTime(), is(3000L));
+		assertThat(body(revalidated), is("body 1"));
+		// The rewritten file has a different body offset
+		assertThat(body(stale), is("body 1"));
+		assertThat(files(directory).size(), is(1));
+		assertThat(body(newStore(directory, 1024 * 1024).get("key")), is("body 1"));
+	}
+
+	@Test
+	public void testReadAfterRemove() throws Exception {
+		final DiskCacheStore store = newStore(tmp.getRoot().toPath(), 1024 * 1024);
+		store.put("key", entry("body 1"));
+		final CacheEntry entry = store.get("key");
+		store.clear();
+		assertThat(body(entry), is("body 1"));
+	}
+
+	@Test
+	public void testTransferTo() throws Exception {
+		final DiskCacheStore store = newStore(tmp.getRoot().toPath(), 1024 * 1024);
+		store.put("key", entry("body 1"));
+		assertThat(transfer(store.get("key")), is("body 1"));
+	}
+
+	@Test
+	public void testTransferToAfterReplace() throws Exception {
+		final DiskCacheStore store = newStore(tmp.getRoot().toPath(), 1024 * 1024);
+		store.put("key", entry("body 1"));
+		final CacheEntry entry = store.get("key");
+		store.put("key", entry("body 2 with another length"));
+		assertThat(transfer(entry), is("body 1"));
+		store.remove("key");
+		assertThat(transfer(entry), is("body 1"));
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		final Path directory = tmp.getRoot().toPath();
+		final DiskCacheStore store = new DiskCacheStore(directory, 1000, 500, InlineExecutor.getInstance());
+		store.put("key 1", entry(repeat('a', 300)));
+		store.put("key 2", entry(repeat('b', 300)));
+		store.get("key 1");
+		store.put("key 3", entry(repeat('c', 300)));
+
+		assertThat(store.get("key 2"), is(nullValue()));
+		assertThat(body(store.get("key 1")), is(repeat('a', 300)));
+		assertThat(body(store.get("key 3")), is(repeat('c', 300)));
+		assertThat(files(directory).size(), is(2));
+	}
+
+	@Test
+	public void testTooLarge() throws Exception {
+		final DiskCacheStore store = newStore(tmp.getRoot().toPath(), 1024);
+		store.put("key", entry(repeat('a', 300)));
+		assertThat(store.get("key"), is(nullValue()));
+	}
+
+	@Test
+	public void testCleanupOnLoad() throws Exception {
+		final Path directory = tmp.getRoot().toPath();
+		newStore(directory, 1024 * 1024).put("key", entry("body 1"));
+		final Path file = files(directory).get(0);
+
+		final Path tempFile = directory.resolve(file.getFileName() + ".1.tmp");
+		Files.write(tempFile, new byte[] { 1, 2, 3 });
+		final Path corruptFile = directory.resolve("corrupt.entry");
+		Files.write(corruptFile, new byte[] { 1, 2, 3 });
+		final Path truncatedFile = directory.resolve("truncated.entry");
+		final byte[] content = Files.readAllBytes(file);
+		Files.write(truncatedFile, Arrays.copyOf(content, content.length - 1));
+
+		final DiskCacheStore store = newStore(directory, 1024 * 1024);
+		assertThat(store.entryCount(), is(1L));
+		assertThat(body(store.get("key")), is("body 1"));
+		assertThat(Files.exists(tempFile), is(false));
+		assertThat(Files.exists(corruptFile), is(false));
+		assertThat(Files.exists(truncatedFile), is(false));
+	}
+
+	private static DiskCacheStore newStore(final Path directory, final long maxSize) throws IOException {
+		return new DiskCacheStore(directory, maxSize, maxSize / 4, InlineExecutor.getInstance());
+	}
+
+	private static CacheEntry entry(final String body) {
+		final HttpHeadersImpl headers = new HttpHeadersImpl();
+		headers.addHeader("Cache-Control", "max-age=60");
+		final List<ByteBuffer> buffers = Collections.singletonList(
+				ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8)));
+		return new CacheEntry(200, headers, Collections.singletonMap("accept-language", Collections.singletonList("de")),
+				new MemoryCachedBody(buffers), 1000L, 2000L);
+	}
+
+	private static String body(final CacheEntry entry) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		for (final ByteBuffer buffer : entry.getBody().buffers()) {
+			sb.append(StandardCharsets.UTF_8.decode(buffer));
+		}
+		return sb.toString();
+	}
+
+	private String transfer(final CacheEntry entry) throws Exception {
+		final Path target = tmp.newFile().toPath();
+		final FileCompleteListener listener = new FileCompleteListener(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			((FileCachedBody) entry.getBody()).transferTo(listener);
+			listener.onComplete();
+		} finally {
+			listener.close();
+		}
+		return new String(Files.readAllBytes(target), StandardCharsets.UTF_8);
+	}
+
+	private static String repeat(final char c, final int count) {
+		final char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
+	private static List<Path> files(final Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.collect(Collectors.toList());
+		}
+	}
+}